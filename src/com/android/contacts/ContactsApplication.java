@@ -16,6 +16,7 @@
 
 package com.android.contacts;
 
+import android.app.Activity;
 import android.app.Application;
 import android.app.FragmentManager;
 import android.app.LoaderManager;
@@ -23,23 +24,37 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
+import android.content.res.Configuration;
+import android.os.Bundle;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
 import android.provider.ContactsContract.Contacts;
 import android.util.Log;
+import android.view.View;
 
 import com.android.contacts.common.ContactPhotoManager;
 import com.android.contacts.common.list.ContactListFilterController;
 import com.android.contacts.common.model.AccountTypeManager;
 import com.android.contacts.common.test.InjectedServices;
 import com.android.contacts.common.util.Constants;
+import com.android.contacts.list.ProviderStatusWatcher;
+import com.android.contacts.util.CollationKeyCache;
+import com.android.contacts.util.PhoneCapabilityTester;
+import com.android.contacts.util.SchedulingUtils;
+import com.android.contacts.util.StartupScheduler;
 import com.google.common.annotations.VisibleForTesting;
 
 public final class ContactsApplication extends Application {
     private static final boolean ENABLE_LOADER_LOG = false; // Don't submit with true
     private static final boolean ENABLE_FRAGMENT_LOG = false; // Don't submit with true
 
+    /** Names of the startup tasks, for {@link StartupScheduler.Task} dependencies. */
+    private static final String TASK_PREFERENCES = "preferences";
+    private static final String TASK_ACCOUNT_TYPES = "account-types";
+    private static final String TASK_CONTACTS_PROVIDER = "contacts-provider";
+    private static final String TASK_PHONE_CAPABILITIES = "phone-capabilities";
+    private static final String TASK_PRELOAD_PHOTOS = "preload-photos";
+
     private static InjectedServices sInjectedServices;
     /**
      * Log tag for enabling/disabling StrictMode violation log.
@@ -48,6 +63,60 @@ public final class ContactsApplication extends Application {
     public static final String STRICT_MODE_TAG = "ContactsStrictMode";
     private ContactPhotoManager mContactPhotoManager;
     private ContactListFilterController mContactListFilterController;
+    private StartupScheduler mStartupScheduler;
+
+    /**
+     * Reports the first frame drawn by any activity to the startup scheduler, so that its idle
+     * tasks don't start before an activity is up.  Activities that never draw, such as those
+     * that only forward an intent, are skipped by waiting for the next one.
+     */
+    private final ActivityLifecycleCallbacks mFirstFrameCallbacks =
+            new ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityResumed(Activity activity) {
+            if (mStartupScheduler.isFirstFrameDrawn()) {
+                unregisterActivityLifecycleCallbacks(this);
+                return;
+            }
+            final View decorView = activity.getWindow().getDecorView();
+            SchedulingUtils.doAfterDraw(decorView, new Runnable() {
+                @Override
+                public void run() {
+                    // Called just before the draw; let the frame go out first
+                    decorView.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mStartupScheduler.onFirstFrameDrawn();
+                        }
+                    });
+                }
+            });
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    };
 
     /**
      * Overrides the system services with mocks for testing.
@@ -97,7 +166,7 @@ public final class ContactsApplication extends Application {
             if (mContactPhotoManager == null) {
                 mContactPhotoManager = ContactPhotoManager.createContactPhotoManager(this);
                 registerComponentCallbacks(mContactPhotoManager);
-                mContactPhotoManager.preloadPhotosInBackground();
+                schedulePhotoPreloading(mContactPhotoManager);
             }
             return mContactPhotoManager;
         }
@@ -105,6 +174,12 @@ public final class ContactsApplication extends Application {
         return super.getSystemService(name);
     }
 
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        CollationKeyCache.getInstance().onLocaleChanged(newConfig.locale);
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -122,29 +197,70 @@ public final class ContactsApplication extends Application {
         }
 
         // Perform the initialization that doesn't have to finish immediately.
-        // We use an async task here just to avoid creating a new thread.
-        (new DelayedInitializer()).execute();
+        mStartupScheduler = new StartupScheduler();
+        scheduleStartupTasks();
+        registerActivityLifecycleCallbacks(mFirstFrameCallbacks);
 
         if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
             Log.d(Constants.PERFORMANCE_TAG, "ContactsApplication.onCreate finish");
         }
     }
 
-    private class DelayedInitializer extends AsyncTask<Void, Void, Void> {
-        @Override
-        protected Void doInBackground(Void... params) {
-            final Context context = ContactsApplication.this;
-
-            // Warm up the preferences, the account type manager and the contacts provider.
-            PreferenceManager.getDefaultSharedPreferences(context);
-            AccountTypeManager.getInstance(context);
-            getContentResolver().getType(ContentUris.withAppendedId(Contacts.CONTENT_URI, 1));
-            return null;
-        }
+    /**
+     * Warms up what the first activity needs for its first frame: the preferences and the
+     * provider status persisted in them, the account type manager and the contacts provider.
+     * Everything else waits until the first activity has drawn and the app is idle.
+     */
+    private void scheduleStartupTasks() {
+        final Context context = this;
+        mStartupScheduler.schedule(new StartupScheduler.Task(TASK_PREFERENCES,
+                StartupScheduler.PRIORITY_FIRST_FRAME, false, new Runnable() {
+            @Override
+            public void run() {
+                PreferenceManager.getDefaultSharedPreferences(context);
+                ProviderStatusWatcher.getInstance(context).preloadPersistedStatus();
+            }
+        }));
+        mStartupScheduler.schedule(new StartupScheduler.Task(TASK_ACCOUNT_TYPES,
+                StartupScheduler.PRIORITY_FIRST_FRAME, false, new Runnable() {
+            @Override
+            public void run() {
+                AccountTypeManager.getInstance(context);
+            }
+        }));
+        mStartupScheduler.schedule(new StartupScheduler.Task(TASK_CONTACTS_PROVIDER,
+                StartupScheduler.PRIORITY_FIRST_FRAME, false, new Runnable() {
+            @Override
+            public void run() {
+                getContentResolver().getType(
+                        ContentUris.withAppendedId(Contacts.CONTENT_URI, 1));
+            }
+        }));
+        mStartupScheduler.schedule(new StartupScheduler.Task(TASK_PHONE_CAPABILITIES,
+                StartupScheduler.PRIORITY_IDLE, false, new Runnable() {
+            @Override
+            public void run() {
+                PhoneCapabilityTester.initializeInBackground(context);
+            }
+        }));
+    }
 
-        public void execute() {
-            executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
-                    (Void[]) null);
+    /**
+     * Preloads the photos of the contact list once the app is idle, since the photos of the
+     * first screen are loaded on demand anyway.  Only done once something asked for the photo
+     * manager.
+     */
+    private void schedulePhotoPreloading(final ContactPhotoManager photoManager) {
+        if (mStartupScheduler == null) {
+            photoManager.preloadPhotosInBackground();
+            return;
         }
+        mStartupScheduler.schedule(new StartupScheduler.Task(TASK_PRELOAD_PHOTOS,
+                StartupScheduler.PRIORITY_IDLE, true, new Runnable() {
+            @Override
+            public void run() {
+                photoManager.preloadPhotosInBackground();
+            }
+        }, TASK_CONTACTS_PROVIDER));
     }
 }
@@ -15,9 +15,9 @@
  */
 package com.android.contacts;
 
+import android.content.AsyncTaskLoader;
 import android.content.Context;
-import android.content.CursorLoader;
-import android.net.Uri;
+import android.database.Cursor;
 import android.provider.ContactsContract.Groups;
 
 /**
@@ -25,10 +25,14 @@ import android.provider.ContactsContract.Groups;
  * and number of groups per account. This list is sorted by account type, account name, where the
  * group names are in alphabetical order. Note that the list excludes default, favorite, and deleted
  * groups.
+ *
+ * The list comes from the {@link GroupSummaryCache}: if it has one, it is delivered as soon as
+ * the loader starts, and refreshed in the background if it is out of date.
  */
-public final class GroupListLoader extends CursorLoader {
+public final class GroupListLoader extends AsyncTaskLoader<Cursor>
+        implements GroupSummaryCache.Listener {
 
-    private final static String[] COLUMNS = new String[] {
+    final static String[] COLUMNS = new String[] {
         Groups.ACCOUNT_NAME,
         Groups.ACCOUNT_TYPE,
         Groups.DATA_SET,
@@ -44,13 +48,80 @@ public final class GroupListLoader extends CursorLoader {
     public final static int TITLE = 4;
     public final static int MEMBER_COUNT = 5;
 
-    private static final Uri GROUP_LIST_URI = Groups.CONTENT_SUMMARY_URI;
+    private final GroupSummaryCache mCache;
+    private Cursor mCursor;
 
     public GroupListLoader(Context context) {
-        super(context, GROUP_LIST_URI, COLUMNS, Groups.ACCOUNT_TYPE + " NOT NULL AND "
-                + Groups.ACCOUNT_NAME + " NOT NULL AND " + Groups.AUTO_ADD + "=0 AND " +
-                Groups.FAVORITES + "=0 AND " + Groups.DELETED + "=0", null,
-                Groups.ACCOUNT_TYPE + ", " + Groups.ACCOUNT_NAME + ", " + Groups.DATA_SET + ", " +
-                Groups.TITLE + " COLLATE LOCALIZED ASC");
+        super(context);
+        mCache = GroupSummaryCache.getInstance(context);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        return mCache.refresh();
+    }
+
+    @Override
+    public void onGroupSummaryChanged() {
+        onContentChanged();
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isReset()) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+        final Cursor oldCursor = mCursor;
+        mCursor = cursor;
+
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+        if (oldCursor != null && oldCursor != cursor && !oldCursor.isClosed()) {
+            oldCursor.close();
+        }
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        if (cursor != null && !cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        mCache.registerListener(this);
+        if (mCursor != null) {
+            deliverResult(mCursor);
+        } else {
+            // Show the cached list, if any, while it is brought up to date
+            final Cursor cached = mCache.getCachedCursor();
+            if (cached != null) {
+                deliverResult(cached);
+            }
+        }
+        if (takeContentChanged() || mCursor == null || mCache.isDirty()) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mCache.unregisterListener(this);
+        if (mCursor != null && !mCursor.isClosed()) {
+            mCursor.close();
+        }
+        mCursor = null;
     }
 }
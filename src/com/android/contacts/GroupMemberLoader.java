@@ -50,25 +50,45 @@ public final class GroupMemberLoader extends CursorLoader {
         public static final int CONTACT_LOOKUP_KEY           = 4;
     }
 
+    /**
+     * Just what the member tiles need to show up. Presence and status are loaded separately with
+     * {@link GroupDetailPresenceQuery}, so that the tiles don't wait for the provider to join
+     * the presence and status update tables.
+     */
     public static class GroupDetailQuery {
         private static final String[] PROJECTION = new String[] {
             Data.CONTACT_ID,                        // 0
             Data.PHOTO_URI,                         // 1
             Data.LOOKUP_KEY,                        // 2
             Data.DISPLAY_NAME_PRIMARY,              // 3
-            Data.CONTACT_PRESENCE,                  // 4
-            Data.CONTACT_STATUS,                    // 5
         };
 
         public static final int CONTACT_ID                   = 0;
         public static final int CONTACT_PHOTO_URI            = 1;
         public static final int CONTACT_LOOKUP_KEY           = 2;
         public static final int CONTACT_DISPLAY_NAME_PRIMARY = 3;
-        public static final int CONTACT_PRESENCE_STATUS      = 4;
-        public static final int CONTACT_STATUS               = 5;
+    }
+
+    /**
+     * Presence and status of the members of a group that have any.
+     */
+    public static class GroupDetailPresenceQuery {
+        private static final String[] PROJECTION = new String[] {
+            Data.CONTACT_ID,                        // 0
+            Data.CONTACT_PRESENCE,                  // 1
+            Data.CONTACT_STATUS,                    // 2
+        };
+
+        private static final String SELECTION = Data.CONTACT_PRESENCE + " NOT NULL OR "
+                + Data.CONTACT_STATUS + " NOT NULL";
+
+        public static final int CONTACT_ID                   = 0;
+        public static final int CONTACT_PRESENCE_STATUS      = 1;
+        public static final int CONTACT_STATUS               = 2;
     }
 
     private final long mGroupId;
+    private final long[] mRawContactIds;
 
     /**
      * @return GroupMemberLoader object which can be used in group editor.
@@ -78,6 +98,16 @@ public final class GroupMemberLoader extends CursorLoader {
         return new GroupMemberLoader(context, groupId, GroupEditorQuery.PROJECTION);
     }
 
+    /**
+     * @return GroupMemberLoader object which loads the given raw contacts with the
+     *         {@link GroupEditorQuery} projection, whether they are in a group or not. A raw
+     *         contact may be returned once per data row.
+     */
+    public static GroupMemberLoader constructLoaderForGroupEditorQuery(
+            Context context, long[] rawContactIds) {
+        return new GroupMemberLoader(context, rawContactIds, GroupEditorQuery.PROJECTION);
+    }
+
     /**
      * @return GroupMemberLoader object used in group detail page.
      */
@@ -86,9 +116,33 @@ public final class GroupMemberLoader extends CursorLoader {
         return new GroupMemberLoader(context, groupId, GroupDetailQuery.PROJECTION);
     }
 
+    /**
+     * @return GroupMemberLoader object used for the presence of the members in the group detail
+     *         page.
+     */
+    public static GroupMemberLoader constructLoaderForGroupDetailPresenceQuery(
+            Context context, long groupId) {
+        final GroupMemberLoader loader = new GroupMemberLoader(context, groupId,
+                GroupDetailPresenceQuery.PROJECTION);
+        loader.setSelection(loader.getSelection()
+                + " AND (" + GroupDetailPresenceQuery.SELECTION + ")");
+        loader.setSortOrder(null);
+        return loader;
+    }
+
     private GroupMemberLoader(Context context, long groupId, String[] projection) {
+        this(context, groupId, null, projection);
+    }
+
+    private GroupMemberLoader(Context context, long[] rawContactIds, String[] projection) {
+        this(context, -1, rawContactIds, projection);
+    }
+
+    private GroupMemberLoader(Context context, long groupId, long[] rawContactIds,
+            String[] projection) {
         super(context);
         mGroupId = groupId;
+        mRawContactIds = rawContactIds;
         setUri(createUri());
         setProjection(projection);
         setSelection(createSelection());
@@ -102,6 +156,21 @@ public final class GroupMemberLoader extends CursorLoader {
         }
     }
 
+    /**
+     * @return the group this loader loads the members of, or -1 if it loads given raw contacts.
+     */
+    public long getGroupId() {
+        return mGroupId;
+    }
+
+    /**
+     * @return the raw contacts this loader was constructed for, or null if it loads the members
+     *         of a group.
+     */
+    public long[] getRawContactIds() {
+        return mRawContactIds;
+    }
+
     private Uri createUri() {
         Uri uri = Data.CONTENT_URI;
         uri = uri.buildUpon().appendQueryParameter(ContactsContract.DIRECTORY_PARAM_KEY,
@@ -111,11 +180,25 @@ public final class GroupMemberLoader extends CursorLoader {
 
     private String createSelection() {
         StringBuilder selection = new StringBuilder();
+        if (mRawContactIds != null) {
+            selection.append(Data.RAW_CONTACT_ID + " IN (");
+            for (int i = 0; i < mRawContactIds.length; i++) {
+                if (i > 0) {
+                    selection.append(',');
+                }
+                selection.append(mRawContactIds[i]);
+            }
+            selection.append(')');
+            return selection.toString();
+        }
         selection.append(Data.MIMETYPE + "=?" + " AND " + GroupMembership.GROUP_ROW_ID + "=?");
         return selection.toString();
     }
 
     private String[] createSelectionArgs() {
+        if (mRawContactIds != null) {
+            return null;
+        }
         List<String> selectionArgs = new ArrayList<String>();
         selectionArgs.add(GroupMembership.CONTENT_ITEM_TYPE);
         selectionArgs.add(String.valueOf(mGroupId));
@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts;
+
+import android.content.AsyncTaskLoader;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MergeCursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.Data;
+import android.provider.ContactsContract.Groups;
+import android.util.Log;
+
+import com.android.contacts.common.util.Constants;
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loads the members of a group a page at a time.  The query of a {@link GroupMemberLoader} is
+ * split into pages of {@link #PAGE_SIZE} rows using keyset pagination on its sort key, so that
+ * the first page can be shown as soon as it arrives and no single cursor window has to hold the
+ * whole group.  Further pages are loaded on request through {@link #loadNextPage}.
+ *
+ * The result is a {@link Pages} cursor over all the pages loaded so far, with the columns of the
+ * wrapped {@link GroupMemberLoader}; the columns used for paging are appended after those.
+ *
+ * The provider notifies every change, including presence and status updates, on
+ * {@link ContactsContract#AUTHORITY_URI}.  Before reloading the pages after a change, the loader
+ * checks whether the members loaded so far or their contacts were actually updated, and keeps
+ * the pages if they weren't.
+ */
+public class GroupMemberPageLoader extends AsyncTaskLoader<Cursor> {
+    private static final String TAG = "GroupMemberPageLoader";
+
+    public static final int PAGE_SIZE = 100;
+
+    private static final long FINGERPRINT_SEED = 17;
+
+    /**
+     * Cursor over the pages loaded so far.  Closing it closes all of them.
+     */
+    public static final class Pages extends MergeCursor {
+        private final Cursor[] mPages;
+        private final boolean mHasMore;
+        private final int mTotalCount;
+        private final String mLastSortKey;
+        private final long mLastDataId;
+
+        /** Hash of the data id and contact update time of every row, in order. */
+        private final long mFingerprint;
+
+        /** The content change generation of the loader that the pages are up to date with. */
+        private volatile int mGeneration;
+
+        private Pages(Cursor[] pages, boolean hasMore, int totalCount, String lastSortKey,
+                long lastDataId, long fingerprint, int generation) {
+            super(pages);
+            mPages = pages;
+            mHasMore = hasMore;
+            mTotalCount = totalCount;
+            mLastSortKey = lastSortKey;
+            mLastDataId = lastDataId;
+            mFingerprint = fingerprint;
+            mGeneration = generation;
+        }
+
+        /** Returns whether there are rows after the last page loaded. */
+        public boolean hasMore() {
+            return mHasMore;
+        }
+
+        /**
+         * Returns the number of members of the whole group, or -1 if it is not known.  Once all
+         * pages are loaded this is the same as {@link #getCount}.
+         */
+        public int getTotalCount() {
+            return mHasMore ? mTotalCount : getCount();
+        }
+
+        int getPageCount() {
+            return mPages.length;
+        }
+    }
+
+    private final GroupMemberLoader mQuery;
+    private final boolean mObserveChanges;
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final int mSortKeyColumn;
+    private final int mDataIdColumn;
+    private final int mUpdatedColumn;
+    private final String[] mProjection;
+
+    /** The pages delivered last; read on the loader thread. */
+    private volatile Pages mPages;
+    private boolean mObserverRegistered;
+
+    /** Number of pages the next load should end up with; read on the loader thread. */
+    private volatile int mRequestedPageCount = 1;
+    /** Whether the next load has to start over from the first page; read on the loader thread. */
+    private volatile boolean mReloadAll = true;
+    /** Incremented by every content change; read on the loader thread. */
+    private volatile int mGeneration;
+
+    /**
+     * @param query the query to page through, as returned by the factory methods of
+     *        {@link GroupMemberLoader}
+     * @param observeChanges whether to reload the pages loaded so far when the contacts change
+     */
+    public GroupMemberPageLoader(Context context, GroupMemberLoader query,
+            boolean observeChanges) {
+        super(context);
+        mQuery = query;
+        mObserveChanges = observeChanges;
+
+        final String[] projection = query.getProjection();
+        mSortKeyColumn = projection.length;
+        mDataIdColumn = projection.length + 1;
+        mUpdatedColumn = projection.length + 2;
+        mProjection = Arrays.copyOf(projection, projection.length + 3);
+        mProjection[mSortKeyColumn] = query.getSortOrder();
+        mProjection[mDataIdColumn] = Data._ID;
+        mProjection[mUpdatedColumn] = Data.CONTACT_LAST_UPDATED_TIMESTAMP;
+    }
+
+    /**
+     * Loads the page after the ones loaded so far, unless all pages are loaded or a load is
+     * already running.
+     */
+    public void loadNextPage() {
+        if (mPages == null || !mPages.hasMore()
+                || mRequestedPageCount > mPages.getPageCount()) {
+            return;
+        }
+        mRequestedPageCount = mPages.getPageCount() + 1;
+        forceLoad();
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        final long start = System.currentTimeMillis();
+        final Pages previous = mPages;
+        final List<Cursor> pages = Lists.newArrayList();
+        // Read before the flag, so that a change made while loading is never taken as covered
+        final int generation = mGeneration;
+        final boolean reloadAll = mReloadAll || previous == null;
+        if (!reloadAll) {
+            pages.addAll(Arrays.asList(previous.mPages));
+        }
+
+        final int requestedPageCount = Math.max(1, mRequestedPageCount);
+        final ContentResolver resolver = getContext().getContentResolver();
+        if (reloadAll && previous != null && requestedPageCount <= previous.getPageCount()
+                && queryFingerprint(resolver, previous) == previous.mFingerprint) {
+            // Only presence, status or other contacts changed; the pages are still up to date
+            if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+                Log.d(Constants.PERFORMANCE_TAG, TAG + " kept " + previous.getPageCount()
+                        + " unchanged pages in " + (System.currentTimeMillis() - start) + "ms");
+            }
+            previous.mGeneration = generation;
+            return previous;
+        }
+
+        boolean hasMore = true;
+        String lastSortKey = null;
+        long lastDataId = -1;
+        long fingerprint = FINGERPRINT_SEED;
+        if (!reloadAll) {
+            // The pages delivered before may be in use on the UI thread, so continue from the
+            // position recorded when they were loaded rather than reading them here
+            hasMore = previous.mHasMore;
+            lastSortKey = previous.mLastSortKey;
+            lastDataId = previous.mLastDataId;
+            fingerprint = previous.mFingerprint;
+        }
+        while (hasMore && pages.size() < requestedPageCount) {
+            final Cursor page = queryPage(resolver, pages.isEmpty(), lastSortKey, lastDataId);
+            if (page == null) {
+                break;
+            }
+            pages.add(page);
+            hasMore = page.getCount() == PAGE_SIZE;
+            fingerprint = addToFingerprint(fingerprint, page, mDataIdColumn, mUpdatedColumn);
+            if (page.moveToLast()) {
+                lastSortKey = page.getString(mSortKeyColumn);
+                lastDataId = page.getLong(mDataIdColumn);
+            }
+        }
+
+        int totalCount = -1;
+        if (hasMore) {
+            totalCount = reloadAll ? queryTotalCount(resolver) : previous.mTotalCount;
+        }
+
+        final Pages result = new Pages(pages.toArray(new Cursor[pages.size()]), hasMore,
+                totalCount, lastSortKey, lastDataId, fingerprint,
+                reloadAll ? generation : previous.mGeneration);
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, TAG + " loaded " + pages.size() + " pages ("
+                    + result.getCount() + " rows) in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+        return result;
+    }
+
+    private Cursor queryPage(ContentResolver resolver, boolean isFirstPage, String lastSortKey,
+            long lastDataId) {
+        final String sortKeyColumn = mQuery.getSortOrder();
+        final StringBuilder selection = new StringBuilder("(").append(mQuery.getSelection())
+                .append(')');
+        final ArrayList<String> selectionArgs = Lists.newArrayList();
+        if (mQuery.getSelectionArgs() != null) {
+            selectionArgs.addAll(Arrays.asList(mQuery.getSelectionArgs()));
+        }
+        if (!isFirstPage) {
+            // Rows come in (sort key, data id) order; rows without a sort key come first
+            if (lastSortKey == null) {
+                selection.append(" AND (" + sortKeyColumn + " NOT NULL OR " + Data._ID + ">?)");
+                selectionArgs.add(String.valueOf(lastDataId));
+            } else {
+                selection.append(" AND (" + sortKeyColumn + ">? OR (" + sortKeyColumn + "=? AND "
+                        + Data._ID + ">?))");
+                selectionArgs.add(lastSortKey);
+                selectionArgs.add(lastSortKey);
+                selectionArgs.add(String.valueOf(lastDataId));
+            }
+        }
+
+        final Uri uri = mQuery.getUri().buildUpon()
+                .appendQueryParameter(ContactsContract.LIMIT_PARAM_KEY, String.valueOf(PAGE_SIZE))
+                .build();
+        final Cursor cursor = resolver.query(uri, mProjection, selection.toString(),
+                selectionArgs.toArray(new String[selectionArgs.size()]),
+                sortKeyColumn + "," + Data._ID);
+        if (cursor != null) {
+            // Fill the window here rather than on the UI thread
+            cursor.getCount();
+        }
+        return cursor;
+    }
+
+    /**
+     * Returns the fingerprint of the rows currently in the range covered by {@code pages}, which
+     * is the same as the fingerprint of the pages if none of those rows changed.
+     */
+    private long queryFingerprint(ContentResolver resolver, Pages pages) {
+        final String sortKeyColumn = mQuery.getSortOrder();
+        final StringBuilder selection = new StringBuilder("(").append(mQuery.getSelection())
+                .append(')');
+        final ArrayList<String> selectionArgs = Lists.newArrayList();
+        if (mQuery.getSelectionArgs() != null) {
+            selectionArgs.addAll(Arrays.asList(mQuery.getSelectionArgs()));
+        }
+        if (pages.mHasMore) {
+            // Rows up to and including the last one loaded, in (sort key, data id) order
+            if (pages.mLastSortKey == null) {
+                selection.append(" AND (" + sortKeyColumn + " IS NULL AND " + Data._ID + "<=?)");
+                selectionArgs.add(String.valueOf(pages.mLastDataId));
+            } else {
+                selection.append(" AND (" + sortKeyColumn + " IS NULL OR " + sortKeyColumn
+                        + "<? OR (" + sortKeyColumn + "=? AND " + Data._ID + "<=?))");
+                selectionArgs.add(pages.mLastSortKey);
+                selectionArgs.add(pages.mLastSortKey);
+                selectionArgs.add(String.valueOf(pages.mLastDataId));
+            }
+        }
+
+        final Cursor cursor = resolver.query(mQuery.getUri(),
+                new String[] { Data._ID, Data.CONTACT_LAST_UPDATED_TIMESTAMP },
+                selection.toString(), selectionArgs.toArray(new String[selectionArgs.size()]),
+                sortKeyColumn + "," + Data._ID);
+        if (cursor == null) {
+            // Can't tell, so reload
+            return pages.mFingerprint + 1;
+        }
+        try {
+            return addToFingerprint(FINGERPRINT_SEED, cursor, 0, 1);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long addToFingerprint(long fingerprint, Cursor cursor, int dataIdColumn,
+            int updatedColumn) {
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            fingerprint = 31 * fingerprint + cursor.getLong(dataIdColumn);
+            fingerprint = 31 * fingerprint + cursor.getLong(updatedColumn);
+        }
+        return fingerprint;
+    }
+
+    private int queryTotalCount(ContentResolver resolver) {
+        final long groupId = mQuery.getGroupId();
+        if (groupId < 0) {
+            return -1;
+        }
+        final Cursor cursor = resolver.query(Groups.CONTENT_SUMMARY_URI,
+                new String[] { Groups.SUMMARY_COUNT }, Groups._ID + "=?",
+                new String[] { String.valueOf(groupId) }, null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        final Pages pages = (Pages) cursor;
+        if (isReset()) {
+            closeUnlessShared(pages, null);
+            return;
+        }
+        final Pages oldPages = mPages;
+        mPages = pages;
+        if (pages.mGeneration == mGeneration) {
+            // Only a load that started over after the last content change covers it
+            mReloadAll = false;
+        }
+        mRequestedPageCount = pages.getPageCount();
+
+        if (isStarted()) {
+            super.deliverResult(pages);
+        }
+        if (oldPages != null && oldPages != pages) {
+            closeUnlessShared(oldPages, pages);
+        }
+    }
+
+    /**
+     * Closes the pages of {@code pages} that are not part of {@code current}.
+     */
+    private static void closeUnlessShared(Pages pages, Pages current) {
+        if (pages == null) {
+            return;
+        }
+        final List<Cursor> shared = current == null ? null : Arrays.asList(current.mPages);
+        for (Cursor page : pages.mPages) {
+            if (shared == null || !shared.contains(page)) {
+                page.close();
+            }
+        }
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        closeUnlessShared((Pages) cursor, mPages);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mObserveChanges && !mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    ContactsContract.AUTHORITY_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mPages != null) {
+            // Redeliver without marking the pages as up to date, as they may predate a change
+            // made while the loader was stopped
+            super.deliverResult(mPages);
+        }
+        if (takeContentChanged() || mPages == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public void onContentChanged() {
+        // Reload as many pages as are loaded now
+        mGeneration++;
+        mReloadAll = true;
+        super.onContentChanged();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        closeUnlessShared(mPages, null);
+        mPages = null;
+        mRequestedPageCount = 1;
+        mReloadAll = true;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts;
+
+import android.database.Cursor;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The groups of a {@link GroupMetaDataLoader} cursor, indexed by account so that the groups of
+ * one account can be looked up without walking the whole cursor.
+ *
+ * Instances are immutable and don't reference the cursor they were built from.
+ */
+public final class GroupMetaDataIndex {
+
+    /**
+     * A group of an {@link AccountGroups} list.
+     */
+    public static final class Group {
+        private final long mGroupId;
+        private final String mTitle;
+        private final boolean mFavorites;
+        private final boolean mAutoAdd;
+
+        private Group(long groupId, String title, boolean favorites, boolean autoAdd) {
+            mGroupId = groupId;
+            mTitle = title;
+            mFavorites = favorites;
+            mAutoAdd = autoAdd;
+        }
+
+        public long getGroupId() {
+            return mGroupId;
+        }
+
+        public String getTitle() {
+            return mTitle;
+        }
+
+        public boolean isFavorites() {
+            return mFavorites;
+        }
+
+        public boolean isAutoAdd() {
+            return mAutoAdd;
+        }
+    }
+
+    /**
+     * The groups of a single account, in cursor order.
+     */
+    public static final class AccountGroups {
+        private final List<Group> mGroups = new ArrayList<Group>();
+        private long mFavoritesGroupId;
+        private long mDefaultGroupId;
+        private boolean mHasGroups;
+
+        private void add(Group group) {
+            mGroups.add(group);
+            if (group.isFavorites()) {
+                mFavoritesGroupId = group.getGroupId();
+            } else if (group.isAutoAdd()) {
+                mDefaultGroupId = group.getGroupId();
+            } else {
+                mHasGroups = true;
+            }
+        }
+
+        public List<Group> getGroups() {
+            return Collections.unmodifiableList(mGroups);
+        }
+
+        /** Returns the ID of the favorites group, or 0 if there is none. */
+        public long getFavoritesGroupId() {
+            return mFavoritesGroupId;
+        }
+
+        /** Returns the ID of the default (auto-add) group, or 0 if there is none. */
+        public long getDefaultGroupId() {
+            return mDefaultGroupId;
+        }
+
+        /** Returns whether the account has groups other than the favorites and default ones. */
+        public boolean hasGroups() {
+            return mHasGroups;
+        }
+    }
+
+    /**
+     * Account name, type and data set of a group.  Unlike {@link android.accounts.Account}, this
+     * accepts any value the provider may return.
+     */
+    private static final class AccountKey {
+        private final String mAccountName;
+        private final String mAccountType;
+        private final String mDataSet;
+        private final int mHashCode;
+
+        public AccountKey(String accountName, String accountType, String dataSet) {
+            mAccountName = accountName;
+            mAccountType = accountType;
+            mDataSet = dataSet;
+            mHashCode = Objects.hashCode(accountName, accountType, dataSet);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AccountKey)) {
+                return false;
+            }
+            final AccountKey other = (AccountKey) obj;
+            return Objects.equal(mAccountName, other.mAccountName)
+                    && Objects.equal(mAccountType, other.mAccountType)
+                    && Objects.equal(mDataSet, other.mDataSet);
+        }
+    }
+
+    private static final AccountGroups EMPTY_ACCOUNT_GROUPS = new AccountGroups();
+
+    /** Indexes built by {@link #forCursor}, shared by all the views bound to the same cursor. */
+    private static final Map<Cursor, GroupMetaDataIndex> sIndexes =
+            new WeakHashMap<Cursor, GroupMetaDataIndex>();
+
+    private final HashMap<AccountKey, AccountGroups> mAccountGroups = Maps.newHashMap();
+
+    private GroupMetaDataIndex() {
+    }
+
+    /**
+     * Returns the index of the given {@link GroupMetaDataLoader} cursor, which is built the first
+     * time it is requested for that cursor.  Returns null if the cursor is null or closed.
+     */
+    public static GroupMetaDataIndex forCursor(Cursor cursor) {
+        if (cursor == null || cursor.isClosed()) {
+            return null;
+        }
+        if (cursor instanceof GroupMetaDataRepository.SnapshotCursor) {
+            // Every cursor of the same snapshot shares its index
+            return ((GroupMetaDataRepository.SnapshotCursor) cursor).getSnapshot().getIndex();
+        }
+        synchronized (sIndexes) {
+            GroupMetaDataIndex index = sIndexes.get(cursor);
+            if (index == null) {
+                index = build(cursor);
+                sIndexes.put(cursor, index);
+            }
+            return index;
+        }
+    }
+
+    static GroupMetaDataIndex build(Cursor cursor) {
+        final GroupMetaDataIndex index = new GroupMetaDataIndex();
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            final AccountKey account = new AccountKey(
+                    cursor.getString(GroupMetaDataLoader.ACCOUNT_NAME),
+                    cursor.getString(GroupMetaDataLoader.ACCOUNT_TYPE),
+                    cursor.getString(GroupMetaDataLoader.DATA_SET));
+            AccountGroups accountGroups = index.mAccountGroups.get(account);
+            if (accountGroups == null) {
+                accountGroups = new AccountGroups();
+                index.mAccountGroups.put(account, accountGroups);
+            }
+            accountGroups.add(new Group(cursor.getLong(GroupMetaDataLoader.GROUP_ID),
+                    cursor.getString(GroupMetaDataLoader.TITLE),
+                    isSet(cursor, GroupMetaDataLoader.FAVORITES),
+                    isSet(cursor, GroupMetaDataLoader.AUTO_ADD)));
+        }
+        return index;
+    }
+
+    private static boolean isSet(Cursor cursor, int column) {
+        return !cursor.isNull(column) && cursor.getInt(column) != 0;
+    }
+
+    /**
+     * Returns the groups of the given account, which is empty if the account has no groups.
+     */
+    public AccountGroups getAccountGroups(String accountName, String accountType,
+            String dataSet) {
+        final AccountGroups accountGroups = mAccountGroups.get(
+                new AccountKey(accountName, accountType, dataSet));
+        return accountGroups != null ? accountGroups : EMPTY_ACCOUNT_GROUPS;
+    }
+}
@@ -15,18 +15,24 @@
  */
 package com.android.contacts;
 
+import android.content.AsyncTaskLoader;
+import android.content.ContentUris;
 import android.content.Context;
-import android.content.CursorLoader;
+import android.database.Cursor;
 import android.net.Uri;
 import android.provider.ContactsContract.Groups;
 
 /**
  * Group meta-data loader. Loads all groups or just a single group from the
  * database (if given a {@link Uri}).
+ *
+ * The groups are read from the {@link GroupMetaDataRepository}, so all the loaders share a
+ * single query and a single content observer.
  */
-public final class GroupMetaDataLoader extends CursorLoader {
+public final class GroupMetaDataLoader extends AsyncTaskLoader<Cursor>
+        implements GroupMetaDataRepository.Listener {
 
-    private final static String[] COLUMNS = new String[] {
+    final static String[] COLUMNS = new String[] {
         Groups.ACCOUNT_NAME,
         Groups.ACCOUNT_TYPE,
         Groups.DATA_SET,
@@ -48,9 +54,109 @@ public final class GroupMetaDataLoader extends CursorLoader {
     public final static int IS_READ_ONLY = 7;
     public final static int DELETED = 8;
 
+    private final GroupMetaDataRepository mRepository;
+    private final Uri mGroupUri;
+    private Cursor mCursor;
+
     public GroupMetaDataLoader(Context context, Uri groupUri) {
-        super(context, ensureIsGroupUri(groupUri), COLUMNS, Groups.ACCOUNT_TYPE + " NOT NULL AND "
-                + Groups.ACCOUNT_NAME + " NOT NULL", null, null);
+        super(context);
+        mGroupUri = ensureIsGroupUri(groupUri);
+        mRepository = GroupMetaDataRepository.getInstance(context);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        if (isAllGroups()) {
+            return newCursor(mRepository.getSnapshot());
+        }
+        final long groupId = ContentUris.parseId(mGroupUri);
+        final GroupMetaDataRepository.Snapshot snapshot =
+                mRepository.getSnapshotWithGroup(groupId);
+        // Empty if the group doesn't exist (anymore)
+        return snapshot == null ? null : snapshot.newCursor(groupId);
+    }
+
+    private boolean isAllGroups() {
+        return Groups.CONTENT_URI.equals(mGroupUri);
+    }
+
+    /**
+     * Returns the rows of the snapshot this loader asks for, or null if the snapshot is null or
+     * doesn't have the requested group.
+     */
+    private Cursor newCursor(GroupMetaDataRepository.Snapshot snapshot) {
+        if (snapshot == null) {
+            return null;
+        }
+        if (isAllGroups()) {
+            return snapshot.newCursor();
+        }
+        final long groupId = ContentUris.parseId(mGroupUri);
+        return snapshot.contains(groupId) ? snapshot.newCursor(groupId) : null;
+    }
+
+    @Override
+    public void onGroupMetaDataChanged() {
+        onContentChanged();
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isReset()) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+        final Cursor oldCursor = mCursor;
+        mCursor = cursor;
+
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+        if (oldCursor != null && oldCursor != cursor && !oldCursor.isClosed()) {
+            oldCursor.close();
+        }
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        if (cursor != null && !cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        mRepository.registerListener(this);
+        if (mCursor != null) {
+            deliverResult(mCursor);
+        } else {
+            // Another screen may have loaded the groups already
+            final Cursor cached = newCursor(mRepository.peekSnapshot());
+            if (cached != null) {
+                deliverResult(cached);
+            }
+        }
+        if (takeContentChanged() || mCursor == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mRepository.unregisterListener(this);
+        if (mCursor != null && !mCursor.isClosed()) {
+            mCursor.close();
+        }
+        mCursor = null;
     }
 
     /**
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract.Groups;
+import android.util.Log;
+
+import com.android.contacts.common.util.Constants;
+
+import java.util.ArrayList;
+
+/**
+ * Process-wide copy of the group meta-data read by {@link GroupMetaDataLoader}.
+ *
+ * The group editor, the group detail page and the contact editor all need the groups table.
+ * Rather than each of them querying it, they read an immutable {@link Snapshot} of all groups
+ * that is loaded once and kept until the groups change.  A single content observer marks the
+ * snapshot stale and tells the listeners, which then load the new one.
+ */
+public final class GroupMetaDataRepository {
+    private static final String TAG = "GroupMetaDataRepository";
+
+    /**
+     * Notified on the main thread when the groups have changed.
+     */
+    public interface Listener {
+        void onGroupMetaDataChanged();
+    }
+
+    private static final String SELECTION = Groups.ACCOUNT_TYPE + " NOT NULL AND "
+            + Groups.ACCOUNT_NAME + " NOT NULL";
+
+    /**
+     * All the groups at some point in time, with the columns of {@link GroupMetaDataLoader}.
+     */
+    public static final class Snapshot {
+        private final Object[][] mRows;
+        private GroupMetaDataIndex mIndex;
+
+        private Snapshot(Object[][] rows) {
+            mRows = rows;
+        }
+
+        public int getCount() {
+            return mRows.length;
+        }
+
+        /**
+         * Returns a new cursor over all groups, owned by the caller.
+         */
+        public Cursor newCursor() {
+            final SnapshotCursor cursor = new SnapshotCursor(this, mRows.length);
+            for (Object[] row : mRows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+
+        /**
+         * Returns a new cursor over the given group, which is empty if there is no such group.
+         */
+        public Cursor newCursor(long groupId) {
+            final MatrixCursor cursor = new MatrixCursor(GroupMetaDataLoader.COLUMNS, 1);
+            final Object[] row = findRow(groupId);
+            if (row != null) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+
+        public boolean contains(long groupId) {
+            return findRow(groupId) != null;
+        }
+
+        private Object[] findRow(long groupId) {
+            for (Object[] row : mRows) {
+                if (((Long) row[GroupMetaDataLoader.GROUP_ID]) == groupId) {
+                    return row;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the index of all groups, built the first time it is requested.
+         */
+        public synchronized GroupMetaDataIndex getIndex() {
+            if (mIndex == null) {
+                final Cursor cursor = newCursor();
+                try {
+                    mIndex = GroupMetaDataIndex.build(cursor);
+                } finally {
+                    cursor.close();
+                }
+            }
+            return mIndex;
+        }
+    }
+
+    /**
+     * Cursor over all the groups of a {@link Snapshot}, so that
+     * {@link GroupMetaDataIndex#forCursor} can use the index of the snapshot.
+     */
+    static final class SnapshotCursor extends MatrixCursor {
+        private final Snapshot mSnapshot;
+
+        private SnapshotCursor(Snapshot snapshot, int initialCapacity) {
+            super(GroupMetaDataLoader.COLUMNS, initialCapacity);
+            mSnapshot = snapshot;
+        }
+
+        Snapshot getSnapshot() {
+            return mSnapshot;
+        }
+    }
+
+    private static GroupMetaDataRepository sInstance;
+
+    private final ContentResolver mResolver;
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+
+    private final ContentObserver mObserver =
+            new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    };
+
+    // Written while holding this; read without it so the main thread never waits for a query
+    private volatile Snapshot mSnapshot;
+    // Bumped on the main thread by invalidate(), so that a query that was running at the time
+    // doesn't store its stale result
+    private volatile int mGeneration;
+
+    public static synchronized GroupMetaDataRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new GroupMetaDataRepository(
+                    context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    private GroupMetaDataRepository(ContentResolver resolver) {
+        mResolver = resolver;
+        mResolver.registerContentObserver(Groups.CONTENT_URI, true, mObserver);
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    public void registerListener(Listener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    public void unregisterListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Drops the current snapshot and notifies the listeners.  Must be called on the main thread.
+     */
+    public void invalidate() {
+        mGeneration++;
+        mSnapshot = null;
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            mListeners.get(i).onGroupMetaDataChanged();
+        }
+    }
+
+    /**
+     * Returns the current snapshot without loading it, or null if there is none.
+     */
+    public Snapshot peekSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Returns the current snapshot, querying the groups if there is none.  Must not be called on
+     * the main thread.  Returns null if the query failed.
+     */
+    public synchronized Snapshot getSnapshot() {
+        final Snapshot snapshot = mSnapshot;
+        return snapshot != null ? snapshot : queryAndStore();
+    }
+
+    /**
+     * Returns a snapshot that contains the given group if it exists.  A group that was just
+     * created may not be in the current snapshot yet, because the change notification is
+     * delivered asynchronously, so the snapshot is loaded again once if it is missing.
+     */
+    public synchronized Snapshot getSnapshotWithGroup(long groupId) {
+        final Snapshot snapshot = getSnapshot();
+        if (snapshot == null || snapshot.contains(groupId)) {
+            return snapshot;
+        }
+        final Snapshot reloaded = queryAndStore();
+        return reloaded != null ? reloaded : snapshot;
+    }
+
+    private Snapshot queryAndStore() {
+        final int generation = mGeneration;
+        final Snapshot snapshot = query();
+        if (snapshot != null && generation == mGeneration) {
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    private Snapshot query() {
+        final long start = System.currentTimeMillis();
+        final Cursor cursor = mResolver.query(Groups.CONTENT_URI, GroupMetaDataLoader.COLUMNS,
+                SELECTION, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        final Object[][] rows;
+        try {
+            rows = new Object[cursor.getCount()][];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                rows[i++] = new Object[] {
+                    cursor.getString(GroupMetaDataLoader.ACCOUNT_NAME),
+                    cursor.getString(GroupMetaDataLoader.ACCOUNT_TYPE),
+                    cursor.getString(GroupMetaDataLoader.DATA_SET),
+                    cursor.getLong(GroupMetaDataLoader.GROUP_ID),
+                    cursor.getString(GroupMetaDataLoader.TITLE),
+                    getIntOrNull(cursor, GroupMetaDataLoader.AUTO_ADD),
+                    getIntOrNull(cursor, GroupMetaDataLoader.FAVORITES),
+                    getIntOrNull(cursor, GroupMetaDataLoader.IS_READ_ONLY),
+                    getIntOrNull(cursor, GroupMetaDataLoader.DELETED),
+                };
+            }
+        } finally {
+            cursor.close();
+        }
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, TAG + ": loaded " + rows.length + " groups in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+        return new Snapshot(rows);
+    }
+
+    private static Integer getIntOrNull(Cursor cursor, int column) {
+        return cursor.isNull(column) ? null : cursor.getInt(column);
+    }
+}
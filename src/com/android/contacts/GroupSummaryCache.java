@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.Groups;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.android.contacts.common.util.Constants;
+import com.android.contacts.util.CollationKeyCache;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Process-wide cache of the group list shown by {@link GroupListLoader}, keyed by group ID.
+ *
+ * The summary query of the groups tab used to sort the titles with the localized collator in
+ * the provider each time it ran.  Instead, this keeps the last list around, already sorted, so
+ * the list can be shown right away.  Content changes only mark the cache dirty; the next
+ * {@link #refresh} re-runs the full summary query without a sort order.  The provider still
+ * counts the members of every group, since it can't tell which groups a change affected.  Only
+ * the sorting is saved: the result is compared with the cached groups, and the sorted list is
+ * rebuilt, with the cached collation keys of the titles, only if a group was added, removed,
+ * renamed or its member count changed.
+ */
+public final class GroupSummaryCache {
+    private static final String TAG = "GroupSummaryCache";
+
+    /**
+     * Notified on the main thread when the cached list may be out of date.
+     */
+    public interface Listener {
+        void onGroupSummaryChanged();
+    }
+
+    private static final String[] GROUP_COLUMNS = new String[] {
+        Groups._ID,
+        Groups.ACCOUNT_NAME,
+        Groups.ACCOUNT_TYPE,
+        Groups.DATA_SET,
+        Groups.TITLE,
+        Groups.VERSION,
+        Groups.SUMMARY_COUNT,
+    };
+
+    private static final int GROUP_ID = 0;
+    private static final int GROUP_ACCOUNT_NAME = 1;
+    private static final int GROUP_ACCOUNT_TYPE = 2;
+    private static final int GROUP_DATA_SET = 3;
+    private static final int GROUP_TITLE = 4;
+    private static final int GROUP_VERSION = 5;
+    private static final int GROUP_MEMBER_COUNT = 6;
+
+    private static final String GROUP_SELECTION = Groups.ACCOUNT_TYPE + " NOT NULL AND "
+            + Groups.ACCOUNT_NAME + " NOT NULL AND " + Groups.AUTO_ADD + "=0 AND "
+            + Groups.FAVORITES + "=0 AND " + Groups.DELETED + "=0";
+
+    /**
+     * A cached group.  Instances are immutable; a change replaces the entry.
+     */
+    @VisibleForTesting
+    static final class Entry {
+        final long groupId;
+        final String accountName;
+        final String accountType;
+        final String dataSet;
+        final String title;
+        final int version;
+        final int memberCount;
+        final byte[] titleKey;
+
+        Entry(long groupId, String accountName, String accountType, String dataSet,
+                String title, int version, int memberCount, byte[] titleKey) {
+            this.groupId = groupId;
+            this.accountName = accountName;
+            this.accountType = accountType;
+            this.dataSet = dataSet;
+            this.title = title;
+            this.version = version;
+            this.memberCount = memberCount;
+            this.titleKey = titleKey;
+        }
+
+        Entry withMemberCount(int count) {
+            return new Entry(groupId, accountName, accountType, dataSet, title, version, count,
+                    titleKey);
+        }
+    }
+
+    /**
+     * Same order as the summary query used to have: account type, account name, data set, and
+     * then the title in the order of the current locale.
+     */
+    @VisibleForTesting
+    static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            int result = compareNullsFirst(lhs.accountType, rhs.accountType);
+            if (result != 0) return result;
+            result = compareNullsFirst(lhs.accountName, rhs.accountName);
+            if (result != 0) return result;
+            result = compareNullsFirst(lhs.dataSet, rhs.dataSet);
+            if (result != 0) return result;
+            return CollationKeyCache.compareKeys(lhs.titleKey, rhs.titleKey);
+        }
+
+        private int compareNullsFirst(String lhs, String rhs) {
+            if (lhs == null || rhs == null) {
+                return lhs == null ? (rhs == null ? 0 : -1) : 1;
+            }
+            return lhs.compareTo(rhs);
+        }
+    };
+
+    private static GroupSummaryCache sInstance;
+
+    private final ContentResolver mResolver;
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+
+    private final ContentObserver mObserver =
+            new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            markDirty();
+        }
+    };
+
+    // Only one refresh runs at a time; readers on the main thread never wait for it
+    private final Object mRefreshLock = new Object();
+    // Guarded by mRefreshLock
+    private LongSparseArray<Entry> mEntries;
+
+    private volatile Entry[] mSorted;
+    private volatile Locale mLocale;
+    private volatile boolean mDirty = true;
+
+    public static synchronized GroupSummaryCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new GroupSummaryCache(context.getApplicationContext().getContentResolver());
+            sInstance.mResolver.registerContentObserver(
+                    ContactsContract.AUTHORITY_URI, true, sInstance.mObserver);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    GroupSummaryCache(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    public void registerListener(Listener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    public void unregisterListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Marks the cached list out of date and notifies the listeners.  Must be called on the main
+     * thread.
+     */
+    @VisibleForTesting
+    void markDirty() {
+        mDirty = true;
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            mListeners.get(i).onGroupSummaryChanged();
+        }
+    }
+
+    /**
+     * Returns whether the cached list needs a {@link #refresh}.
+     */
+    public boolean isDirty() {
+        return mDirty || mSorted == null || !Locale.getDefault().equals(mLocale);
+    }
+
+    /**
+     * Returns the cached list with the columns of {@link GroupListLoader}, or null if it was
+     * never loaded.  The list may be out of date; see {@link #isDirty}.
+     */
+    public Cursor getCachedCursor() {
+        final Entry[] sorted = mSorted;
+        return sorted == null ? null : buildCursor(sorted);
+    }
+
+    /**
+     * Brings the cached list up to date and returns it as for {@link #getCachedCursor}.  Runs
+     * the queries on the calling thread, so it must not be called on the main thread.
+     */
+    public Cursor refresh() {
+        synchronized (mRefreshLock) {
+            return refreshLocked();
+        }
+    }
+
+    private Cursor refreshLocked() {
+        final long start = System.currentTimeMillis();
+        // Changes notified from here on will need another refresh
+        mDirty = false;
+
+        final Locale locale = Locale.getDefault();
+        final boolean localeChanged = !locale.equals(mLocale);
+        final CollationKeyCache collationKeys = CollationKeyCache.getInstance();
+
+        final LongSparseArray<Entry> oldEntries = mEntries;
+        final LongSparseArray<Entry> entries = new LongSparseArray<Entry>();
+        boolean changed = oldEntries == null || localeChanged;
+        int updated = 0;
+
+        // The provider counts the members.  The rows aren't sorted there, since the titles
+        // are ordered here with the cached collation keys.
+        final Cursor groups = mResolver.query(Groups.CONTENT_SUMMARY_URI, GROUP_COLUMNS,
+                GROUP_SELECTION, null, null);
+        if (groups == null) {
+            mDirty = true;
+            return getCachedCursor();
+        }
+        try {
+            while (groups.moveToNext()) {
+                final long groupId = groups.getLong(GROUP_ID);
+                final int version = groups.getInt(GROUP_VERSION);
+                final int memberCount = groups.getInt(GROUP_MEMBER_COUNT);
+                final Entry oldEntry = oldEntries == null ? null : oldEntries.get(groupId);
+                if (oldEntry != null && oldEntry.version == version && !localeChanged) {
+                    if (oldEntry.memberCount == memberCount) {
+                        entries.put(groupId, oldEntry);
+                    } else {
+                        entries.put(groupId, oldEntry.withMemberCount(memberCount));
+                        changed = true;
+                        updated++;
+                    }
+                    continue;
+                }
+                final String title = groups.getString(GROUP_TITLE);
+                entries.put(groupId, new Entry(groupId,
+                        groups.getString(GROUP_ACCOUNT_NAME),
+                        groups.getString(GROUP_ACCOUNT_TYPE),
+                        groups.getString(GROUP_DATA_SET),
+                        title, version, memberCount,
+                        collationKeys.getKey(title)));
+                changed = true;
+                updated++;
+            }
+        } finally {
+            groups.close();
+        }
+        if (oldEntries != null && oldEntries.size() != entries.size()) {
+            // Some groups were removed
+            changed = true;
+        }
+
+        mEntries = entries;
+        mLocale = locale;
+        if (changed) {
+            final Entry[] sorted = new Entry[entries.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = entries.valueAt(i);
+            }
+            Arrays.sort(sorted, ORDER);
+            mSorted = sorted;
+        }
+
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, TAG + ": refreshed " + entries.size()
+                    + " groups, " + updated + " updated, in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+        return buildCursor(mSorted);
+    }
+
+    private static Cursor buildCursor(Entry[] sorted) {
+        final MatrixCursor cursor = new MatrixCursor(GroupListLoader.COLUMNS, sorted.length);
+        for (Entry entry : sorted) {
+            cursor.addRow(new Object[] {
+                entry.accountName,
+                entry.accountType,
+                entry.dataSet,
+                entry.groupId,
+                entry.title,
+                entry.memberCount,
+            });
+        }
+        return cursor;
+    }
+}
@@ -18,11 +18,13 @@ package com.android.contacts;
 
 import android.app.Activity;
 import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
 import android.nfc.NdefMessage;
 import android.nfc.NdefRecord;
 import android.nfc.NfcAdapter;
 import android.nfc.NfcEvent;
+import android.os.AsyncTask;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Profile;
 import android.util.Log;
@@ -32,71 +34,164 @@ import com.android.contacts.detail.ContactDetailFragment;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 /**
   * This class implements sharing the currently displayed
   * contact to another device using NFC. NFC sharing is only
   * enabled when the activity is in the foreground and resumed.
-  * When an NFC link is established, {@link #createMessage}
+  * When an NFC link is established, {@link #createNdefMessage}
   * will be called to create the data to be sent over the link,
   * which is a vCard in this case.
+  *
+  * The vCard is generated in the background as soon as the
+  * contact is bound in the {@link ContactDetailFragment}, so
+  * that it is usually ready by the time the link is established.
   */
 public class NfcHandler implements NfcAdapter.CreateNdefMessageCallback {
 
     private static final String TAG = "ContactNfcHandler";
     private static final String PROFILE_LOOKUP_KEY = "profile";
+
+    /** Size of the chunks the vCard is read in. */
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
     private final ContactDetailFragment mContactFragment;
+    private final ContentResolver mResolver;
+
+    /** Generation of the message for the contact that was bound last, if any. */
+    private volatile MessageTask mMessageTask;
+
+    /** Size of the last vCard read, used to size the output stream of the next one. */
+    private volatile int mLastVCardSize = READ_BUFFER_SIZE;
 
     public static void register(Activity activity, ContactDetailFragment contactFragment) {
         NfcAdapter adapter = NfcAdapter.getDefaultAdapter(activity.getApplicationContext());
         if (adapter == null) {
             return;  // NFC not available on this device
         }
-        adapter.setNdefPushMessageCallback(new NfcHandler(contactFragment), activity);
+        final NfcHandler handler = new NfcHandler(activity, contactFragment);
+        adapter.setNdefPushMessageCallback(handler, activity);
+        contactFragment.setNfcHandler(handler);
     }
 
-    public NfcHandler(ContactDetailFragment contactFragment) {
+    public NfcHandler(Activity activity, ContactDetailFragment contactFragment) {
         mContactFragment = contactFragment;
+        mResolver = activity.getApplicationContext().getContentResolver();
+    }
+
+    /**
+     * Called on the UI thread whenever the fragment binds a contact, including a new version of
+     * the same contact.  Drops the message generated for the previous data and starts generating
+     * the message for the new one.
+     */
+    public void onContactChanged(Uri contactUri) {
+        final MessageTask previousTask = mMessageTask;
+        if (previousTask != null) {
+            previousTask.cancel(false);
+        }
+        if (contactUri == null) {
+            mMessageTask = null;
+            return;
+        }
+        final MessageTask task = new MessageTask(contactUri);
+        mMessageTask = task;
+        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
     @Override
     public NdefMessage createNdefMessage(NfcEvent event) {
         // Get the current contact URI
         Uri contactUri = mContactFragment.getUri();
-        ContentResolver resolver = mContactFragment.getActivity().getContentResolver();
-        if (contactUri != null) {
-            final String lookupKey = Uri.encode(contactUri.getPathSegments().get(2));
-            final Uri shareUri;
-            // TODO find out where to get this constant from, or find another way
-            // of determining this.
-            if (lookupKey.equals(PROFILE_LOOKUP_KEY)) {
-                shareUri = Profile.CONTENT_VCARD_URI.buildUpon().
-                appendQueryParameter(Contacts.QUERY_PARAMETER_VCARD_NO_PHOTO, "true").
-                build();
-            } else {
-                shareUri = Contacts.CONTENT_VCARD_URI.buildUpon().
-                appendPath(lookupKey).
-                appendQueryParameter(Contacts.QUERY_PARAMETER_VCARD_NO_PHOTO, "true").
-                build();
-            }
-            ByteArrayOutputStream ndefBytes = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int r;
+        if (contactUri == null) {
+            Log.w(TAG, "No contact URI to share.");
+            return null;
+        }
+
+        // This is called on a binder thread, so it is fine to wait for the pregenerated message
+        final MessageTask task = mMessageTask;
+        if (task != null && contactUri.equals(task.mContactUri) && !task.isCancelled()) {
             try {
-                InputStream vcardInputStream = resolver.openInputStream(shareUri);
-                while ((r = vcardInputStream.read(buffer)) > 0) {
-                    ndefBytes.write(buffer, 0, r);
-                }
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Failed to pregenerate vcard", e);
+            } catch (CancellationException e) {
+                // The contact changed meanwhile, fall through to generating it here
+            }
+        }
+        return createMessage(contactUri);
+    }
 
-                NdefRecord record = NdefRecord.createMime("text/x-vcard", ndefBytes.toByteArray());
-                return new NdefMessage(record);
-            } catch (IOException e) {
-                Log.e(TAG, "IOException creating vcard.");
+    private NdefMessage createMessage(Uri contactUri) {
+        final String lookupKey = Uri.encode(contactUri.getPathSegments().get(2));
+        final Uri shareUri;
+        // TODO find out where to get this constant from, or find another way
+        // of determining this.
+        if (lookupKey.equals(PROFILE_LOOKUP_KEY)) {
+            shareUri = Profile.CONTENT_VCARD_URI.buildUpon().
+            appendQueryParameter(Contacts.QUERY_PARAMETER_VCARD_NO_PHOTO, "true").
+            build();
+        } else {
+            shareUri = Contacts.CONTENT_VCARD_URI.buildUpon().
+            appendPath(lookupKey).
+            appendQueryParameter(Contacts.QUERY_PARAMETER_VCARD_NO_PHOTO, "true").
+            build();
+        }
+
+        InputStream vcardInputStream = null;
+        try {
+            final AssetFileDescriptor fd = mResolver.openAssetFileDescriptor(shareUri, "r");
+            if (fd == null) {
+                Log.w(TAG, "No vcard for " + shareUri);
                 return null;
             }
-        } else {
-            Log.w(TAG, "No contact URI to share.");
+            vcardInputStream = fd.createInputStream();
+
+            // The vcard usually comes through a pipe of unknown length; in that case assume it
+            // is about as large as the last one
+            final long declaredLength = fd.getDeclaredLength();
+            final int expectedSize = declaredLength >= 0 && declaredLength < Integer.MAX_VALUE
+                    ? (int) declaredLength : mLastVCardSize;
+            final ByteArrayOutputStream ndefBytes = new ByteArrayOutputStream(expectedSize);
+            final byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int r;
+            while ((r = vcardInputStream.read(buffer)) > 0) {
+                ndefBytes.write(buffer, 0, r);
+            }
+            mLastVCardSize = ndefBytes.size();
+
+            NdefRecord record = NdefRecord.createMime("text/x-vcard", ndefBytes.toByteArray());
+            return new NdefMessage(record);
+        } catch (IOException e) {
+            Log.e(TAG, "IOException creating vcard.");
             return null;
+        } finally {
+            if (vcardInputStream != null) {
+                try {
+                    vcardInputStream.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the message for one version of a contact.
+     */
+    private class MessageTask extends AsyncTask<Void, Void, NdefMessage> {
+        private final Uri mContactUri;
+
+        public MessageTask(Uri contactUri) {
+            mContactUri = contactUri;
+        }
+
+        @Override
+        protected NdefMessage doInBackground(Void... params) {
+            return createMessage(mContactUri);
         }
     }
 }
@@ -16,7 +16,10 @@
 
 package com.android.contacts;
 
+import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.content.Loader;
+import android.content.Loader.OnLoadCompleteListener;
 import android.database.Cursor;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
@@ -26,32 +29,38 @@ import android.provider.ContactsContract.CommonDataKinds.Phone;
 import android.provider.ContactsContract.CommonDataKinds.StructuredName;
 import android.provider.ContactsContract.Contacts.Data;
 import android.provider.ContactsContract.RawContacts;
+import android.util.LongSparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.TextView;
 
-import com.android.contacts.common.model.AccountTypeManager;
 import com.android.contacts.common.model.account.AccountType;
+import com.android.contacts.util.AccountTypeSnapshot;
+import com.android.contacts.util.CollationKeyCache;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 
 /**
  * A list view for constituent contacts of an aggregate.  Shows the contact name, source icon
  * and additional data such as a nickname, email address or phone number, whichever
  * is available.
+ *
+ * The constituent contacts are loaded in the background while the view is attached to a window;
+ * until they arrive the list shows a single loading row.
  */
 public class SplitAggregateView extends ListView {
 
     private static final String TAG = "SplitAggregateView";
 
+    private static final int LOADER_ID = 0;
+
     private interface SplitQuery {
         String[] COLUMNS = new String[] {
                 Data.MIMETYPE, RawContacts.ACCOUNT_TYPE, RawContacts.DATA_SET, Data.RAW_CONTACT_ID,
@@ -71,8 +80,10 @@ public class SplitAggregateView extends ListView {
     }
 
     private final Uri mAggregateUri;
+    private final SplitAggregateAdapter mAdapter;
+    private final SplitAggregateLoader mLoader;
     private OnContactSelectedListener mListener;
-    private AccountTypeManager mAccountTypes;
+    private AccountTypeSnapshot mAccountTypes;
 
     /**
      * Listener interface that gets the contact ID of the user-selected contact.
@@ -89,17 +100,41 @@ public class SplitAggregateView extends ListView {
 
         mAggregateUri = aggregateUri;
 
-        mAccountTypes = AccountTypeManager.getInstance(context);
-
-        final List<RawContactInfo> list = loadData();
+        mAccountTypes = AccountTypeSnapshot.get(context);
 
-        setAdapter(new SplitAggregateAdapter(context, list));
+        mAdapter = new SplitAggregateAdapter(context);
+        setAdapter(mAdapter);
         setOnItemClickListener(new OnItemClickListener() {
 
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                mListener.onContactSelected(list.get(position).rawContactId);
+                final RawContactInfo info = mAdapter.getItem(position);
+                if (info != null && mListener != null) {
+                    mListener.onContactSelected(info.rawContactId);
+                }
             }
         });
+
+        mLoader = new SplitAggregateLoader(context, mAggregateUri);
+        mLoader.registerListener(LOADER_ID, new OnLoadCompleteListener<List<RawContactInfo>>() {
+            @Override
+            public void onLoadComplete(Loader<List<RawContactInfo>> loader,
+                    List<RawContactInfo> data) {
+                mAccountTypes = AccountTypeSnapshot.get(getContext());
+                mAdapter.setRawContactInfos(data);
+            }
+        });
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mLoader.startLoading();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mLoader.stopLoading();
+        super.onDetachedFromWindow();
     }
 
     /**
@@ -120,6 +155,7 @@ public class SplitAggregateView extends ListView {
         String phone;
         String email;
         String nickname;
+        byte[] nameKey;
 
         public RawContactInfo(long rawContactId) {
             this.rawContactId = rawContactId;
@@ -144,69 +180,138 @@ public class SplitAggregateView extends ListView {
         public int compareTo(RawContactInfo another) {
             String thisAccount = accountType != null ? accountType : "";
             String thatAccount = another.accountType != null ? another.accountType : "";
-            return thisAccount.compareTo(thatAccount);
+            final int result = thisAccount.compareTo(thatAccount);
+            if (result != 0) {
+                return result;
+            }
+            // Raw contacts of the same account are shown by name
+            return CollationKeyCache.compareKeys(nameKey, another.nameKey);
         }
     }
 
     /**
-     * Loads data from the content provider, organizes it into {@link RawContactInfo} objects
-     * and returns a sorted list of {@link RawContactInfo}'s.
+     * Loads the data rows of an aggregate in the background and folds them into a sorted list of
+     * {@link RawContactInfo}s in a single pass over the cursor.
      */
-    private List<RawContactInfo> loadData() {
-        HashMap<Long, RawContactInfo> rawContactInfos = new HashMap<Long, RawContactInfo>();
-        Uri dataUri = Uri.withAppendedPath(mAggregateUri, Data.CONTENT_DIRECTORY);
-        Cursor cursor = getContext().getContentResolver().query(dataUri,
-                SplitQuery.COLUMNS, null, null, null);
-        try {
-            while (cursor.moveToNext()) {
-                long rawContactId = cursor.getLong(SplitQuery.RAW_CONTACT_ID);
-                RawContactInfo info = rawContactInfos.get(rawContactId);
-                if (info == null) {
-                    info = new RawContactInfo(rawContactId);
-                    rawContactInfos.put(rawContactId, info);
-                    info.accountType = cursor.getString(SplitQuery.ACCOUNT_TYPE);
-                    info.dataSet = cursor.getString(SplitQuery.DATA_SET);
-                }
+    private static class SplitAggregateLoader extends AsyncTaskLoader<List<RawContactInfo>> {
+        private final Uri mDataUri;
+        private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+        private List<RawContactInfo> mRawContactInfos;
+        private boolean mObserverRegistered;
+
+        public SplitAggregateLoader(Context context, Uri aggregateUri) {
+            super(context);
+            mDataUri = Uri.withAppendedPath(aggregateUri, Data.CONTENT_DIRECTORY);
+        }
 
-                String mimetype = cursor.getString(SplitQuery.MIMETYPE);
-                if (StructuredName.CONTENT_ITEM_TYPE.equals(mimetype)) {
-                    loadStructuredName(cursor, info);
-                } else if (Phone.CONTENT_ITEM_TYPE.equals(mimetype)) {
-                    loadPhoneNumber(cursor, info);
-                } else if (Email.CONTENT_ITEM_TYPE.equals(mimetype)) {
-                    loadEmail(cursor, info);
-                } else if (Nickname.CONTENT_ITEM_TYPE.equals(mimetype)) {
-                    loadNickname(cursor, info);
+        @Override
+        public List<RawContactInfo> loadInBackground() {
+            final LongSparseArray<RawContactInfo> rawContactInfos =
+                    new LongSparseArray<RawContactInfo>();
+            final ArrayList<RawContactInfo> list = new ArrayList<RawContactInfo>();
+            final Cursor cursor = getContext().getContentResolver().query(mDataUri,
+                    SplitQuery.COLUMNS, null, null, null);
+            if (cursor == null) {
+                return list;
+            }
+            try {
+                // The rows of one raw contact usually arrive together, so remember the last one
+                // rather than going back to the map for every row
+                RawContactInfo info = null;
+                while (cursor.moveToNext()) {
+                    final long rawContactId = cursor.getLong(SplitQuery.RAW_CONTACT_ID);
+                    if (info == null || info.rawContactId != rawContactId) {
+                        info = rawContactInfos.get(rawContactId);
+                        if (info == null) {
+                            info = new RawContactInfo(rawContactId);
+                            info.accountType = cursor.getString(SplitQuery.ACCOUNT_TYPE);
+                            info.dataSet = cursor.getString(SplitQuery.DATA_SET);
+                            rawContactInfos.put(rawContactId, info);
+                            list.add(info);
+                        }
+                    }
+
+                    final String mimetype = cursor.getString(SplitQuery.MIMETYPE);
+                    if (StructuredName.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                        loadStructuredName(cursor, info);
+                    } else if (Phone.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                        loadPhoneNumber(cursor, info);
+                    } else if (Email.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                        loadEmail(cursor, info);
+                    } else if (Nickname.CONTENT_ITEM_TYPE.equals(mimetype)) {
+                        loadNickname(cursor, info);
+                    }
                 }
+            } finally {
+                cursor.close();
+            }
+
+            final CollationKeyCache collationKeys = CollationKeyCache.getInstance();
+            for (RawContactInfo info : list) {
+                info.nameKey = collationKeys.getKey(info.name);
             }
-        } finally {
-            cursor.close();
+            Collections.sort(list);
+            return list;
         }
 
-        List<RawContactInfo> list = new ArrayList<RawContactInfo>(rawContactInfos.values());
-        Collections.sort(list);
-        return list;
-    }
+        private static void loadStructuredName(Cursor cursor, RawContactInfo info) {
+            info.name = cursor.getString(SplitQuery.DISPLAY_NAME);
+        }
 
-    private void loadStructuredName(Cursor cursor, RawContactInfo info) {
-        info.name = cursor.getString(SplitQuery.DISPLAY_NAME);
-    }
+        private static void loadNickname(Cursor cursor, RawContactInfo info) {
+            if (info.nickname == null || cursor.getInt(SplitQuery.IS_PRIMARY) != 0) {
+                info.nickname = cursor.getString(SplitQuery.NICKNAME);
+            }
+        }
 
-    private void loadNickname(Cursor cursor, RawContactInfo info) {
-        if (info.nickname == null || cursor.getInt(SplitQuery.IS_PRIMARY) != 0) {
-            info.nickname = cursor.getString(SplitQuery.NICKNAME);
+        private static void loadEmail(Cursor cursor, RawContactInfo info) {
+            if (info.email == null || cursor.getInt(SplitQuery.IS_PRIMARY) != 0) {
+                info.email = cursor.getString(SplitQuery.EMAIL);
+            }
         }
-    }
 
-    private void loadEmail(Cursor cursor, RawContactInfo info) {
-        if (info.email == null || cursor.getInt(SplitQuery.IS_PRIMARY) != 0) {
-            info.email = cursor.getString(SplitQuery.EMAIL);
+        private static void loadPhoneNumber(Cursor cursor, RawContactInfo info) {
+            if (info.phone == null || cursor.getInt(SplitQuery.IS_PRIMARY) != 0) {
+                info.phone = cursor.getString(SplitQuery.PHONE);
+            }
+        }
+
+        @Override
+        public void deliverResult(List<RawContactInfo> data) {
+            mRawContactInfos = data;
+            if (isStarted()) {
+                super.deliverResult(data);
+            }
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (!mObserverRegistered) {
+                getContext().getContentResolver().registerContentObserver(
+                        mDataUri, true, mObserver);
+                mObserverRegistered = true;
+            }
+            if (mRawContactInfos != null) {
+                deliverResult(mRawContactInfos);
+            }
+            if (takeContentChanged() || mRawContactInfos == null) {
+                forceLoad();
+            }
         }
-    }
 
-    private void loadPhoneNumber(Cursor cursor, RawContactInfo info) {
-        if (info.phone == null || cursor.getInt(SplitQuery.IS_PRIMARY) != 0) {
-            info.phone = cursor.getString(SplitQuery.PHONE);
+        @Override
+        protected void onStopLoading() {
+            cancelLoad();
+            if (mObserverRegistered) {
+                getContext().getContentResolver().unregisterContentObserver(mObserver);
+                mObserverRegistered = false;
+            }
+        }
+
+        @Override
+        protected void onReset() {
+            onStopLoading();
+            mRawContactInfos = null;
         }
     }
 
@@ -217,19 +322,76 @@ public class SplitAggregateView extends ListView {
     }
 
     /**
-     * List adapter for the list of {@link RawContactInfo} objects.
+     * List adapter for the list of {@link RawContactInfo} objects.  Shows a single, disabled
+     * loading row until the first list arrives; later lists replace the rows in place.
      */
-    private class SplitAggregateAdapter extends ArrayAdapter<RawContactInfo> {
+    private class SplitAggregateAdapter extends BaseAdapter {
+        private static final int VIEW_TYPE_RAW_CONTACT = 0;
+        private static final int VIEW_TYPE_LOADING = 1;
 
-        private LayoutInflater mInflater;
+        private final LayoutInflater mInflater;
+        private List<RawContactInfo> mRawContactInfos;
 
-        public SplitAggregateAdapter(Context context, List<RawContactInfo> sources) {
-            super(context, 0, sources);
+        public SplitAggregateAdapter(Context context) {
             mInflater = (LayoutInflater)context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         }
 
+        public void setRawContactInfos(List<RawContactInfo> rawContactInfos) {
+            mRawContactInfos = rawContactInfos;
+            notifyDataSetChanged();
+        }
+
+        private boolean isLoading() {
+            return mRawContactInfos == null;
+        }
+
+        @Override
+        public int getCount() {
+            return isLoading() ? 1 : mRawContactInfos.size();
+        }
+
+        @Override
+        public RawContactInfo getItem(int position) {
+            return isLoading() ? null : mRawContactInfos.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return isLoading() ? -1 : mRawContactInfos.get(position).rawContactId;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return 2;
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return isLoading() ? VIEW_TYPE_LOADING : VIEW_TYPE_RAW_CONTACT;
+        }
+
+        @Override
+        public boolean areAllItemsEnabled() {
+            return !isLoading();
+        }
+
+        @Override
+        public boolean isEnabled(int position) {
+            return !isLoading();
+        }
+
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
+            if (isLoading()) {
+                return convertView != null ? convertView
+                        : mInflater.inflate(R.layout.split_aggregate_loading_item, parent, false);
+            }
+
             if (convertView == null) {
                 convertView = mInflater.inflate(R.layout.split_aggregate_list_item, parent, false);
             }
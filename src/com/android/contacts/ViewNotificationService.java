@@ -20,29 +20,113 @@ import android.app.Service;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.Loader.OnLoadCompleteListener;
+import android.net.Uri;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.android.contacts.common.model.Contact;
 import com.android.contacts.common.model.ContactLoader;
+import com.android.contacts.common.util.Constants;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 
 /**
  * Service that sends out a view notification for a contact. At the moment, this is only
  * supposed to be used by the Phone app
+ *
+ * Requests for a contact that is already queued or loading, or that was notified within the
+ * last {@link #COALESCE_WINDOW_MS}, are dropped, and at most {@link #MAX_CONCURRENT_LOADS}
+ * contacts are loaded at a time.
  */
 public class ViewNotificationService extends Service {
     private static final String TAG = ViewNotificationService.class.getSimpleName();
 
     private static final boolean DEBUG = false;
 
+    /** How long a view notification for a contact covers further requests for it. */
+    private static final long COALESCE_WINDOW_MS = 5000;
+
+    /** Maximum number of contacts loaded at the same time. */
+    private static final int MAX_CONCURRENT_LOADS = 2;
+
+    /** Maximum number of contacts waiting to be loaded; requests beyond that are dropped. */
+    private static final int MAX_PENDING_LOADS = 16;
+
+    /**
+     * When each recently notified contact finished loading, in uptime milliseconds. The service
+     * stops as soon as it is idle, so this is kept across instances. Only used on the main
+     * thread.
+     */
+    private static final HashMap<Uri, Long> sNotifiedUris = Maps.newHashMap();
+
+    /** Contacts waiting for a free loader, in the order they were requested. */
+    private final ArrayDeque<Uri> mPendingUris = new ArrayDeque<Uri>();
+
+    /** Contacts that are queued or loading. */
+    private final HashSet<Uri> mInFlightUris = Sets.newHashSet();
+
+    private int mActiveLoadCount;
+    private int mLastStartId;
+    private int mExecutedLoadCount;
+    private int mDroppedLoadCount;
+
     @Override
     public int onStartCommand(Intent intent, int flags, final int startId) {
         if (DEBUG) { Log.d(TAG, "onHandleIntent(). Intent: " + intent); }
 
+        mLastStartId = startId;
+        final Uri contactUri = intent != null ? intent.getData() : null;
+        if (contactUri == null || isCoalesced(contactUri)
+                || mPendingUris.size() >= MAX_PENDING_LOADS) {
+            mDroppedLoadCount++;
+            if (DEBUG) { Log.d(TAG, "Dropping view notification for " + contactUri); }
+            stopIfIdle();
+            return START_REDELIVER_INTENT;
+        }
+
+        mInFlightUris.add(contactUri);
+        mPendingUris.add(contactUri);
+        startPendingLoads();
+        return START_REDELIVER_INTENT;
+    }
+
+    /**
+     * Returns whether a request for the given contact is covered by one that is in flight or was
+     * notified recently.
+     */
+    private boolean isCoalesced(Uri contactUri) {
+        if (mInFlightUris.contains(contactUri)) {
+            return true;
+        }
+        final long now = SystemClock.uptimeMillis();
+        final Iterator<Long> notifiedAt = sNotifiedUris.values().iterator();
+        while (notifiedAt.hasNext()) {
+            if (now - notifiedAt.next() >= COALESCE_WINDOW_MS) {
+                notifiedAt.remove();
+            }
+        }
+        return sNotifiedUris.containsKey(contactUri);
+    }
+
+    private void startPendingLoads() {
+        while (mActiveLoadCount < MAX_CONCURRENT_LOADS && !mPendingUris.isEmpty()) {
+            startLoad(mPendingUris.poll());
+        }
+    }
+
+    private void startLoad(final Uri contactUri) {
+        mActiveLoadCount++;
+        mExecutedLoadCount++;
+
         // We simply need to start a Loader here. When its done, it will send out the
         // View-Notification automatically.
-        final ContactLoader contactLoader = new ContactLoader(this, intent.getData(), true);
+        final ContactLoader contactLoader = new ContactLoader(this, contactUri, true);
         contactLoader.registerListener(0, new OnLoadCompleteListener<Contact>() {
             @Override
             public void onLoadComplete(Loader<Contact> loader, Contact data) {
@@ -51,21 +135,36 @@ public class ViewNotificationService extends Service {
                 } catch (RuntimeException e) {
                     Log.e(TAG, "Error reseting loader", e);
                 }
-                try {
-                    // This is not 100% accurate actually. If we get several calls quickly,
-                    // we might be stopping out-of-order, in which case the call with the last
-                    // startId will stop this service. In practice, this shouldn't be a problem,
-                    // as this service is supposed to be called by the Phone app which only sends
-                    // out the notification once per phonecall. And even if there is a problem,
-                    // the worst that should happen is a missing view notification
-                    stopSelfResult(startId);
-                } catch (RuntimeException e) {
-                    Log.e(TAG, "Error stopping service", e);
-                }
+                mActiveLoadCount--;
+                mInFlightUris.remove(contactUri);
+                sNotifiedUris.put(contactUri, SystemClock.uptimeMillis());
+                startPendingLoads();
+                stopIfIdle();
             }
         });
         contactLoader.startLoading();
-        return START_REDELIVER_INTENT;
+    }
+
+    /**
+     * Stops the service once nothing is queued or loading.
+     */
+    private void stopIfIdle() {
+        if (mActiveLoadCount > 0 || !mPendingUris.isEmpty()) {
+            return;
+        }
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, "ViewNotificationService executed "
+                    + mExecutedLoadCount + " loads, dropped " + mDroppedLoadCount);
+        }
+        try {
+            // Only stops the service if no request came in after the last one seen here, so
+            // each request is either loaded or covered by a load before the service goes away.
+            // Even if there is a problem, the worst that should happen is a missing view
+            // notification
+            stopSelfResult(mLastStartId);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error stopping service", e);
+        }
     }
 
     @Override
@@ -36,6 +36,7 @@ import com.android.contacts.ContactsActivity;
 import com.android.contacts.R;
 import com.android.contacts.editor.ContactEditorFragment;
 import com.android.contacts.editor.ContactEditorFragment.SaveMode;
+import com.android.contacts.editor.EditorViewPool;
 import com.android.contacts.common.model.AccountTypeManager;
 import com.android.contacts.common.model.account.AccountType;
 import com.android.contacts.common.model.account.AccountWithDataSet;
@@ -44,7 +45,7 @@ import com.android.contacts.util.DialogManager;
 import java.util.ArrayList;
 
 public class ContactEditorActivity extends ContactsActivity
-        implements DialogManager.DialogShowingViewActivity {
+        implements DialogManager.DialogShowingViewActivity, EditorViewPool.Host {
     private static final String TAG = "ContactEditorActivity";
 
     public static final String ACTION_JOIN_COMPLETED = "joinCompleted";
@@ -60,6 +61,7 @@ public class ContactEditorActivity extends ContactsActivity
 
     private ContactEditorFragment mFragment;
     private boolean mFinishActivityOnSaveCompleted;
+    private EditorViewPool mEditorViewPool;
 
     private DialogManager mDialogManager = new DialogManager(this);
 
@@ -89,8 +91,12 @@ public class ContactEditorActivity extends ContactsActivity
             return;
         }
 
+        mEditorViewPool = new EditorViewPool(this);
         setContentView(R.layout.contact_editor_activity);
 
+        // Inflate the views of the editors while the contact loads
+        mEditorViewPool.prewarm();
+
         ActionBar actionBar = getActionBar();
         if (actionBar != null) {
             // Inflate a custom action bar that contains the "done" button for saving changes
@@ -119,6 +125,20 @@ public class ContactEditorActivity extends ContactsActivity
         mFragment.load(action, uri, getIntent().getExtras());
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mEditorViewPool != null) {
+            mEditorViewPool.release();
+            mEditorViewPool = null;
+        }
+    }
+
+    @Override
+    public EditorViewPool getEditorViewPool() {
+        return mEditorViewPool;
+    }
+
     @Override
     protected void onNewIntent(Intent intent) {
         super.onNewIntent(intent);
@@ -91,6 +91,7 @@ import com.android.contacts.common.util.Constants;
 import com.android.contacts.util.DialogManager;
 import com.android.contacts.util.HelpUtils;
 import com.android.contacts.util.PhoneCapabilityTester;
+import com.android.contacts.util.StartupTrace;
 import com.android.contacts.common.util.UriUtils;
 import com.android.contacts.widget.TransitionAnimationView;
 
@@ -258,9 +259,11 @@ public class PeopleActivity extends ContactsActivity
         if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
             Log.d(Constants.PERFORMANCE_TAG, "PeopleActivity.onCreate start");
         }
+        final long traceStart = StartupTrace.begin(StartupTrace.PHASE_ON_CREATE);
         super.onCreate(savedState);
 
         if (!processIntent(false)) {
+            StartupTrace.end(StartupTrace.PHASE_ON_CREATE, traceStart);
             finish();
             return;
         }
@@ -273,6 +276,7 @@ public class PeopleActivity extends ContactsActivity
         mIsRecreatedInstance = (savedState != null);
         createViewsAndFragments(savedState);
         getWindow().setBackgroundDrawableResource(R.color.background_primary);
+        StartupTrace.end(StartupTrace.PHASE_ON_CREATE, traceStart);
         if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
             Log.d(Constants.PERFORMANCE_TAG, "PeopleActivity.onCreate finish");
         }
@@ -335,7 +339,9 @@ public class PeopleActivity extends ContactsActivity
     }
 
     private void createViewsAndFragments(Bundle savedState) {
+        long traceStart = StartupTrace.begin(StartupTrace.PHASE_INFLATE);
         setContentView(R.layout.people_activity);
+        StartupTrace.end(StartupTrace.PHASE_INFLATE, traceStart);
 
         final FragmentManager fragmentManager = getFragmentManager();
 
@@ -349,6 +355,7 @@ public class PeopleActivity extends ContactsActivity
             mAllFragment = getFragment(R.id.all_fragment);
             mGroupsFragment = getFragment(R.id.groups_fragment);
         } else {
+            traceStart = StartupTrace.begin(StartupTrace.PHASE_TAB_PAGER);
             mTabPager = getView(R.id.tab_pager);
             mTabPagerAdapter = new TabPagerAdapter();
             mTabPager.setAdapter(mTabPagerAdapter);
@@ -380,6 +387,7 @@ public class PeopleActivity extends ContactsActivity
                 transaction.add(R.id.tab_pager, mAllFragment, ALL_TAG);
                 transaction.add(R.id.tab_pager, mGroupsFragment, GROUPS_TAG);
             }
+            StartupTrace.end(StartupTrace.PHASE_TAB_PAGER, traceStart);
         }
 
         mFavoritesFragment.setListener(mFavoritesFragmentListener);
@@ -430,8 +438,10 @@ public class PeopleActivity extends ContactsActivity
                     findViewById(R.id.contact_detail_container),
                     new ContactDetailFragmentListener());
         }
+        traceStart = StartupTrace.begin(StartupTrace.PHASE_FRAGMENTS);
         transaction.commitAllowingStateLoss();
         fragmentManager.executePendingTransactions();
+        StartupTrace.end(StartupTrace.PHASE_FRAGMENTS, traceStart);
 
         // Setting Properties after fragment is created
         if (PhoneCapabilityTester.isUsingTwoPanesInFavorites(this)) {
@@ -445,8 +455,10 @@ public class PeopleActivity extends ContactsActivity
         }
 
         // Configure action bar
+        traceStart = StartupTrace.begin(StartupTrace.PHASE_ACTION_BAR);
         mActionBarAdapter = new ActionBarAdapter(this, this, getActionBar(), isUsingTwoPanes);
         mActionBarAdapter.initialize(savedState, mRequest);
+        StartupTrace.end(StartupTrace.PHASE_ACTION_BAR, traceStart);
 
         invalidateOptionsMenuIfNeeded();
     }
@@ -499,7 +511,9 @@ public class PeopleActivity extends ContactsActivity
     protected void onResume() {
         super.onResume();
 
+        final long traceStart = StartupTrace.begin(StartupTrace.PHASE_PROVIDER_STATUS);
         mProviderStatusWatcher.start();
+        StartupTrace.end(StartupTrace.PHASE_PROVIDER_STATUS, traceStart);
         updateViewConfiguration(true);
 
         // Re-register the listener, which may have been cleared when onSaveInstanceState was
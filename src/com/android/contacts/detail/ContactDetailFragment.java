@@ -31,6 +31,7 @@ import android.net.Uri;
 import android.net.WebAddress;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.provider.CalendarContract;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.Email;
@@ -70,12 +71,12 @@ import android.widget.ListView;
 import android.widget.TextView;
 
 import com.android.contacts.ContactSaveService;
+import com.android.contacts.NfcHandler;
 import com.android.contacts.R;
 import com.android.contacts.TypePrecedence;
 import com.android.contacts.activities.ContactDetailActivity.FragmentKeyListener;
 import com.android.contacts.common.CallUtil;
 import com.android.contacts.common.ClipboardUtils;
-import com.android.contacts.common.Collapser;
 import com.android.contacts.common.ContactsUtils;
 import com.android.contacts.common.GroupMetaData;
 import com.android.contacts.common.Collapser.Collapsible;
@@ -90,6 +91,7 @@ import com.android.contacts.common.model.account.AccountType.EditType;
 import com.android.contacts.common.model.account.AccountWithDataSet;
 import com.android.contacts.common.model.dataitem.DataKind;
 import com.android.contacts.common.util.AccountsListAdapter.AccountListFilter;
+import com.android.contacts.common.util.Constants;
 import com.android.contacts.common.util.ContactDisplayUtils;
 import com.android.contacts.common.util.DataStatus;
 import com.android.contacts.common.util.DateUtils;
@@ -112,6 +114,8 @@ import com.android.contacts.common.model.dataitem.SipAddressDataItem;
 import com.android.contacts.common.model.dataitem.StructuredNameDataItem;
 import com.android.contacts.common.model.dataitem.StructuredPostalDataItem;
 import com.android.contacts.common.model.dataitem.WebsiteDataItem;
+import com.android.contacts.util.CollationKeyCache;
+import com.android.contacts.util.KeyedCollapser;
 import com.android.contacts.util.PhoneCapabilityTester;
 import com.android.contacts.util.StructuredPostalUtils;
 import com.android.contacts.util.UiClosables;
@@ -120,12 +124,14 @@ import com.google.common.base.Objects;
 import com.google.common.collect.Iterables;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 public class ContactDetailFragment extends Fragment implements FragmentKeyListener,
         SelectAccountDialogFragment.Listener, OnItemClickListener {
@@ -148,13 +154,13 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
     private OnScrollListener mVerticalScrollListener;
     private Uri mLookupUri;
     private Listener mListener;
+    private NfcHandler mNfcHandler;
 
     private Contact mContactData;
     private ViewGroup mStaticPhotoContainer;
     private View mPhotoTouchOverlay;
     private ListView mListView;
     private ViewAdapter mAdapter;
-    private Uri mPrimaryPhoneUri = null;
     private ViewEntryDimensions mViewEntryDimensions;
 
     private final ContactDetailPhotoSetter mPhotoSetter = new ContactDetailPhotoSetter();
@@ -183,27 +189,15 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
     private Parcelable mListState;
 
     /**
-     * Lists of specific types of entries to be shown in contact details.
+     * Ready-to-bind entries of {@link #mContactData}, usually built by
+     * {@link ContactDetailLoader} on its background thread.
      */
-    private ArrayList<DetailViewEntry> mPhoneEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mSmsEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mEmailEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mPostalEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mImEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mNicknameEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mGroupEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mRelationEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mNoteEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mWebsiteEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mSipEntries = new ArrayList<DetailViewEntry>();
-    private ArrayList<DetailViewEntry> mEventEntries = new ArrayList<DetailViewEntry>();
-    private final Map<AccountType, List<DetailViewEntry>> mOtherEntriesMap =
-            new HashMap<AccountType, List<DetailViewEntry>>();
-    private ArrayList<ViewEntry> mAllEntries = new ArrayList<ViewEntry>();
+    private DetailModel mDetailModel;
+    private List<ViewEntry> mAllEntries = Collections.emptyList();
     private LayoutInflater mInflater;
 
-    private boolean mIsUniqueNumber;
-    private boolean mIsUniqueEmail;
+    /** Builds {@link #mDetailModel} if the loader did not build one for {@link #mContactData}. */
+    private EntryBuilder mEntryBuilder;
 
     private ListPopupWindow mPopup;
 
@@ -274,9 +268,30 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
     public void onAttach(Activity activity) {
         super.onAttach(activity);
         mContext = activity;
+        mEntryBuilder = new EntryBuilder(mContext);
         mViewEntryDimensions = new ViewEntryDimensions(mContext.getResources());
+        PhoneCapabilityTester.registerListener(mCapabilitiesListener);
     }
 
+    @Override
+    public void onDetach() {
+        PhoneCapabilityTester.unregisterListener(mCapabilitiesListener);
+        super.onDetach();
+    }
+
+    /**
+     * Rebuilds the entries when calling, SMS or IM apps come or go, since the entries' intents
+     * depend on them.
+     */
+    private final PhoneCapabilityTester.Listener mCapabilitiesListener =
+            new PhoneCapabilityTester.Listener() {
+        @Override
+        public void onCapabilitiesChanged() {
+            EntryBuilder.discardPrebuiltModels();
+            bindData();
+        }
+    };
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedState) {
         mView = inflater.inflate(R.layout.contact_detail_fragment, container, false);
@@ -321,6 +336,17 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
         mListener = value;
     }
 
+    /**
+     * Sets the handler sharing the bound contact over NFC, which is told about every contact
+     * bound from now on so that it can prepare the message ahead of time.
+     */
+    public void setNfcHandler(NfcHandler handler) {
+        mNfcHandler = handler;
+        if (handler != null) {
+            handler.onContactChanged(mContactData != null ? mLookupUri : null);
+        }
+    }
+
     protected Context getContext() {
         return mContext;
     }
@@ -357,8 +383,12 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
     }
 
     public void setData(Uri lookupUri, Contact result) {
+        final boolean changed = result != mContactData || !Objects.equal(lookupUri, mLookupUri);
         mLookupUri = lookupUri;
         mContactData = result;
+        if (changed && mNfcHandler != null) {
+            mNfcHandler.onContactChanged(result != null ? lookupUri : null);
+        }
         bindData();
     }
 
@@ -396,6 +426,8 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
             return;
         }
 
+        final long bindStart = SystemClock.uptimeMillis();
+
         if (isAdded()) {
             getActivity().invalidateOptionsMenu();
         }
@@ -405,7 +437,8 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
             if (mStaticPhotoContainer != null) {
                 mStaticPhotoContainer.setVisibility(View.GONE);
             }
-            mAllEntries.clear();
+            mDetailModel = null;
+            mAllEntries = Collections.emptyList();
             if (mAdapter != null) {
                 mAdapter.notifyDataSetChanged();
             }
@@ -438,23 +471,12 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
             }
         }
 
-        // Build up the contact entries
-        buildEntries();
-
-        // Collapse similar data items for select {@link DataKind}s.
-        Collapser.collapseList(mPhoneEntries);
-        Collapser.collapseList(mSmsEntries);
-        Collapser.collapseList(mEmailEntries);
-        Collapser.collapseList(mPostalEntries);
-        Collapser.collapseList(mImEntries);
-        Collapser.collapseList(mEventEntries);
-        Collapser.collapseList(mWebsiteEntries);
-
-        mIsUniqueNumber = mPhoneEntries.size() == 1;
-        mIsUniqueEmail = mEmailEntries.size() == 1;
-
-        // Make one aggregated list of all entries for display to the user.
-        setupFlattenedList();
+        // Use the entries built by the loader, or build them now if there are none
+        mDetailModel = EntryBuilder.getPrebuiltModel(mContactData);
+        if (mDetailModel == null) {
+            mDetailModel = mEntryBuilder.build(mContactData);
+        }
+        mAllEntries = mDetailModel.getEntries();
 
         if (mAdapter == null) {
             mAdapter = new ViewAdapter();
@@ -474,6 +496,11 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
         configureQuickFix();
 
         mView.setVisibility(View.VISIBLE);
+
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, "ContactDetailFragment.bindData took "
+                    + (SystemClock.uptimeMillis() - bindStart) + "ms");
+        }
     }
 
     /*
@@ -513,855 +540,1180 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
     }
 
     /**
-     * Build up the entries to display on the screen.
+     * Writes the Instant Messaging action into the given entry value.
      */
-    private final void buildEntries() {
-        final boolean hasPhone = PhoneCapabilityTester.isPhone(mContext);
-        final ComponentName smsComponent = PhoneCapabilityTester.getSmsComponent(getContext());
-        final boolean hasSms = (smsComponent != null);
-        final boolean hasSip = PhoneCapabilityTester.isSipPhone(mContext);
-
-        // Clear out the old entries
-        mAllEntries.clear();
+    @VisibleForTesting
+    public static void buildImActions(Context context, DetailViewEntry entry,
+            ImDataItem im) {
+        final boolean isEmail = im.isCreatedFromEmail();
 
-        mPrimaryPhoneUri = null;
+        if (!isEmail && !im.isProtocolValid()) {
+            return;
+        }
 
-        // Build up method entries
-        if (mContactData == null) {
+        final String data = im.getData();
+        if (TextUtils.isEmpty(data)) {
             return;
         }
 
-        ArrayList<String> groups = new ArrayList<String>();
-        for (RawContact rawContact: mContactData.getRawContacts()) {
-            final long rawContactId = rawContact.getId();
-            final AccountType accountType = rawContact.getAccountType(mContext);
-            for (DataItem dataItem : rawContact.getDataItems()) {
-                dataItem.setRawContactId(rawContactId);
+        final int protocol = isEmail ? Im.PROTOCOL_GOOGLE_TALK : im.getProtocol();
 
-                if (dataItem.getMimeType() == null) continue;
+        if (protocol == Im.PROTOCOL_GOOGLE_TALK) {
+            final int chatCapability = im.getChatCapability();
+            entry.chatCapability = chatCapability;
+            entry.typeString = Im.getProtocolLabel(context.getResources(), Im.PROTOCOL_GOOGLE_TALK,
+                    null).toString();
+            if ((chatCapability & Im.CAPABILITY_HAS_CAMERA) != 0) {
+                entry.intent =
+                        new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?message"));
+                entry.secondaryIntent =
+                        new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?call"));
+            } else if ((chatCapability & Im.CAPABILITY_HAS_VOICE) != 0) {
+                // Allow Talking and Texting
+                entry.intent =
+                    new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?message"));
+                entry.secondaryIntent =
+                    new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?call"));
+            } else {
+                entry.intent =
+                    new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?message"));
+            }
+        } else {
+            // Build an IM Intent
+            final Intent imIntent = getCustomIMIntent(im, protocol);
+            if (imIntent != null &&
+                    PhoneCapabilityTester.isIntentRegistered(context, imIntent)) {
+                entry.intent = imIntent;
+            }
+        }
+    }
 
-                if (dataItem instanceof GroupMembershipDataItem) {
-                    GroupMembershipDataItem groupMembership =
-                            (GroupMembershipDataItem) dataItem;
-                    Long groupId = groupMembership.getGroupRowId();
-                    if (groupId != null) {
-                        handleGroupMembership(groups, mContactData.getGroupMetaData(), groupId);
+    @VisibleForTesting
+    public static Intent getCustomIMIntent(ImDataItem im, int protocol) {
+        String host = im.getCustomProtocol();
+        final String data = im.getData();
+        if (TextUtils.isEmpty(data)) {
+            return null;
+        }
+        if (protocol != Im.PROTOCOL_CUSTOM) {
+            // Try bringing in a well-known host for specific protocols
+            host = ContactsUtils.lookupProviderNameFromId(protocol);
+        }
+        if (TextUtils.isEmpty(host)) {
+            return null;
+        }
+        final String authority = host.toLowerCase();
+        final Uri imUri = new Uri.Builder().scheme(CallUtil.SCHEME_IMTO).authority(
+                authority).appendPath(data).build();
+        final Intent intent = new Intent(Intent.ACTION_SENDTO, imUri);
+        return intent;
+    }
+
+    /**
+     * Show a list popup.  Used for "popup-able" entry, such as "More networks".
+     */
+    /**
+     * Click listener for the "More networks" entry. Shows a popup containing a list of invitable
+     * account types.
+     */
+    private final OnClickListener mAddConnectionClickListener = new OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            if (mContactData == null) return;
+
+            // Adapter for the list popup.
+            final InvitableAccountTypesAdapter popupAdapter =
+                    new InvitableAccountTypesAdapter(mContext, mContactData);
+
+            // Listener called when a popup item is clicked.
+            final AdapterView.OnItemClickListener popupItemListener
+                    = new AdapterView.OnItemClickListener() {
+                @Override
+                public void onItemClick(AdapterView<?> parent, View view, int position,
+                        long id) {
+                    if (mListener != null && mContactData != null) {
+                        mListener.onItemClicked(MoreContactUtils.getInvitableIntent(
+                                popupAdapter.getItem(position) /* account type */,
+                                mContactData.getLookupUri()));
                     }
-                    continue;
                 }
+            };
 
-                final DataKind kind = AccountTypeManager.getInstance(mContext)
-                        .getKindOrFallback(accountType, dataItem.getMimeType());
-                if (kind == null) continue;
+            showListPopup(v, popupAdapter, popupItemListener);
+        }
+    };
 
-                final DetailViewEntry entry = DetailViewEntry.fromValues(mContext, dataItem,
-                        mContactData.isDirectoryEntry(), mContactData.getDirectoryId(), kind);
-                entry.maxLines = kind.maxLinesForDisplay;
+    private void showListPopup(View anchorView, ListAdapter adapter,
+            final AdapterView.OnItemClickListener onItemClickListener) {
+        dismissPopupIfShown();
+        mPopup = new ListPopupWindow(mContext, null);
+        mPopup.setAnchorView(anchorView);
+        mPopup.setWidth(anchorView.getWidth());
+        mPopup.setAdapter(adapter);
+        mPopup.setModal(true);
 
-                final boolean hasData = !TextUtils.isEmpty(entry.data);
-                final boolean isSuperPrimary = dataItem.isSuperPrimary();
+        // We need to wrap the passed onItemClickListener here, so that we can dismiss() the
+        // popup afterwards.  Otherwise we could directly use the passed listener.
+        mPopup.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position,
+                    long id) {
+                onItemClickListener.onItemClick(parent, view, position, id);
+                dismissPopupIfShown();
+            }
+        });
+        mPopup.show();
+    }
 
-                if (dataItem instanceof StructuredNameDataItem) {
-                    // Always ignore the name. It is shown in the header if set
-                } else if (dataItem instanceof PhoneDataItem && hasData) {
-                    PhoneDataItem phone = (PhoneDataItem) dataItem;
-                    // Build phone entries
-                    entry.data = phone.getFormattedPhoneNumber();
-                    final Intent phoneIntent = hasPhone ?
-                            CallUtil.getCallIntent(entry.data) : null;
-                    Intent smsIntent = null;
-                    if (hasSms) {
-                        smsIntent = new Intent(Intent.ACTION_SENDTO,
-                                Uri.fromParts(CallUtil.SCHEME_SMSTO, entry.data, null));
-                        smsIntent.setComponent(smsComponent);
-                    }
+    private void dismissPopupIfShown() {
+        UiClosables.closeQuietly(mPopup);
+        mPopup = null;
+    }
 
-                    // Configure Icons and Intents.
-                    if (hasPhone && hasSms) {
-                        entry.intent = phoneIntent;
-                        entry.secondaryIntent = smsIntent;
-                        entry.secondaryActionIcon = kind.iconAltRes;
-                        entry.secondaryActionDescription =
-                            ContactDisplayUtils.getSmsLabelResourceId(entry.type);
-                    } else if (hasPhone) {
-                        entry.intent = phoneIntent;
-                    } else if (hasSms) {
-                        entry.intent = smsIntent;
-                    } else {
-                        entry.intent = null;
-                    }
+    /**
+     * Base class for an item in the {@link ViewAdapter} list of data, which is
+     * supplied to the {@link ListView}.
+     */
+    static class ViewEntry {
+        private final int viewTypeForAdapter;
+        protected long id = -1;
+        /** Whether or not the entry can be focused on or not. */
+        protected boolean isEnabled = false;
 
-                    // Remember super-primary phone
-                    if (isSuperPrimary) mPrimaryPhoneUri = entry.uri;
+        ViewEntry(int viewType) {
+            viewTypeForAdapter = viewType;
+        }
 
-                    entry.isPrimary = isSuperPrimary;
+        int getViewType() {
+            return viewTypeForAdapter;
+        }
 
-                    // If the entry is a primary entry, then render it first in the view.
-                    if (entry.isPrimary) {
-                        // add to beginning of list so that this phone number shows up first
-                        mPhoneEntries.add(0, entry);
-                    } else {
-                        // add to end of list
-                        mPhoneEntries.add(entry);
-                    }
+        long getId() {
+            return id;
+        }
 
-                    // Configure the text direction. Phone numbers should be displayed LTR
-                    // regardless of what locale the device is in.
-                    entry.textDirection = View.TEXT_DIRECTION_LTR;
-                } else if (dataItem instanceof EmailDataItem && hasData) {
-                    // Build email entries
-                    entry.intent = new Intent(Intent.ACTION_SENDTO,
-                            Uri.fromParts(CallUtil.SCHEME_MAILTO, entry.data, null));
-                    entry.isPrimary = isSuperPrimary;
-                    // If entry is a primary entry, then render it first in the view.
-                    if (entry.isPrimary) {
-                        mEmailEntries.add(0, entry);
-                    } else {
-                        mEmailEntries.add(entry);
-                    }
+        boolean isEnabled(){
+            return isEnabled;
+        }
 
-                    // When Email rows have status, create additional Im row
-                    final DataStatus status = mContactData.getStatuses().get(entry.id);
-                    if (status != null) {
-                        EmailDataItem email = (EmailDataItem) dataItem;
-                        ImDataItem im = ImDataItem.createFromEmail(email);
+        /**
+         * Called when the entry is clicked.  Only {@link #isEnabled} entries can get clicked.
+         *
+         * @param clickedView  {@link View} that was clicked  (Used, for example, as the anchor view
+         *        for a popup.)
+         * @param fragmentListener  {@link Listener} set to {@link ContactDetailFragment}
+         */
+        public void click(View clickedView, Listener fragmentListener) {
+        }
+    }
 
-                        final DetailViewEntry imEntry = DetailViewEntry.fromValues(mContext, im,
-                                mContactData.isDirectoryEntry(), mContactData.getDirectoryId(),
-                                kind);
-                        buildImActions(mContext, imEntry, im);
-                        imEntry.setPresence(status.getPresence());
-                        imEntry.maxLines = kind.maxLinesForDisplay;
-                        mImEntries.add(imEntry);
-                    }
-                } else if (dataItem instanceof StructuredPostalDataItem && hasData) {
-                    // Build postal entries
-                    entry.intent = StructuredPostalUtils.getViewPostalAddressIntent(entry.data);
-                    mPostalEntries.add(entry);
-                } else if (dataItem instanceof ImDataItem && hasData) {
-                    // Build IM entries
-                    buildImActions(mContext, entry, (ImDataItem) dataItem);
+    /**
+     * Header item in the {@link ViewAdapter} list of data.
+     */
+    private static class HeaderViewEntry extends ViewEntry {
 
-                    // Apply presence when available
-                    final DataStatus status = mContactData.getStatuses().get(entry.id);
-                    if (status != null) {
-                        entry.setPresence(status.getPresence());
-                    }
-                    mImEntries.add(entry);
-                } else if (dataItem instanceof OrganizationDataItem) {
-                    // Organizations are not shown. The first one is shown in the header
-                    // and subsequent ones are not supported anymore
-                } else if (dataItem instanceof NicknameDataItem && hasData) {
-                    // Build nickname entries
-                    final boolean isNameRawContact =
-                        (mContactData.getNameRawContactId() == rawContactId);
+        HeaderViewEntry() {
+            super(ViewAdapter.VIEW_TYPE_HEADER_ENTRY);
+        }
 
-                    final boolean duplicatesTitle =
-                        isNameRawContact
-                        && mContactData.getDisplayNameSource() == DisplayNameSources.NICKNAME;
+    }
 
-                    if (!duplicatesTitle) {
-                        entry.uri = null;
-                        mNicknameEntries.add(entry);
-                    }
-                } else if (dataItem instanceof NoteDataItem && hasData) {
-                    // Build note entries
-                    entry.uri = null;
-                    mNoteEntries.add(entry);
-                } else if (dataItem instanceof WebsiteDataItem && hasData) {
-                    // Build Website entries
-                    entry.uri = null;
-                    try {
-                        WebAddress webAddress = new WebAddress(entry.data);
-                        entry.intent = new Intent(Intent.ACTION_VIEW,
-                                Uri.parse(webAddress.toString()));
-                    } catch (ParseException e) {
-                        Log.e(TAG, "Couldn't parse website: " + entry.data);
-                    }
-                    mWebsiteEntries.add(entry);
-                } else if (dataItem instanceof SipAddressDataItem && hasData) {
-                    // Build SipAddress entries
-                    entry.uri = null;
-                    if (hasSip) {
-                        entry.intent = CallUtil.getCallIntent(
-                                Uri.fromParts(CallUtil.SCHEME_SIP, entry.data, null));
-                    } else {
-                        entry.intent = null;
-                    }
-                    mSipEntries.add(entry);
-                    // TODO: Now that SipAddress is in its own list of entries
-                    // (instead of grouped in mOtherEntries), consider
-                    // repositioning it right under the phone number.
-                    // (Then, we'd also update FallbackAccountType.java to set
-                    // secondary=false for this field, and tweak the weight
-                    // of its DataKind.)
-                } else if (dataItem instanceof EventDataItem && hasData) {
-                    final Calendar cal = DateUtils.parseDate(entry.data, false);
-                    if (cal != null) {
-                        final Date nextAnniversary =
-                                DateUtils.getNextAnnualDate(cal);
-                        final Uri.Builder builder = CalendarContract.CONTENT_URI.buildUpon();
-                        builder.appendPath("time");
-                        ContentUris.appendId(builder, nextAnniversary.getTime());
-                        entry.intent = new Intent(Intent.ACTION_VIEW).setData(builder.build());
-                    }
-                    entry.data = DateUtils.formatDate(mContext, entry.data);
-                    entry.uri = null;
-                    mEventEntries.add(entry);
-                } else if (dataItem instanceof RelationDataItem && hasData) {
-                    entry.intent = new Intent(Intent.ACTION_SEARCH);
-                    entry.intent.putExtra(SearchManager.QUERY, entry.data);
-                    entry.intent.setType(Contacts.CONTENT_TYPE);
-                    mRelationEntries.add(entry);
-                } else {
-                    // Handle showing custom rows
-                    entry.intent = new Intent(Intent.ACTION_VIEW);
-                    entry.intent.setDataAndType(entry.uri, entry.mimetype);
+    /**
+     * Separator between items of the same {@link DataKind} in the
+     * {@link ViewAdapter} list of data.
+     */
+    private static class SeparatorViewEntry extends ViewEntry {
 
-                    entry.data = dataItem.buildDataString(getContext(), kind);
+        /**
+         * Whether or not the entry is in a subsection (if true then the contents will be indented
+         * to the right)
+         */
+        private final boolean mIsInSubSection;
 
-                    if (!TextUtils.isEmpty(entry.data)) {
-                        // If the account type exists in the hash map, add it as another entry for
-                        // that account type
-                        if (mOtherEntriesMap.containsKey(accountType)) {
-                            List<DetailViewEntry> listEntries = mOtherEntriesMap.get(accountType);
-                            listEntries.add(entry);
-                        } else {
-                            // Otherwise create a new list with the entry and add it to the hash map
-                            List<DetailViewEntry> listEntries = new ArrayList<DetailViewEntry>();
-                            listEntries.add(entry);
-                            mOtherEntriesMap.put(accountType, listEntries);
-                        }
-                    }
-                }
-            }
+        SeparatorViewEntry(boolean isInSubSection) {
+            super(ViewAdapter.VIEW_TYPE_SEPARATOR_ENTRY);
+            mIsInSubSection = isInSubSection;
         }
 
-        if (!groups.isEmpty()) {
-            DetailViewEntry entry = new DetailViewEntry();
-            Collections.sort(groups);
-            StringBuilder sb = new StringBuilder();
-            int size = groups.size();
-            for (int i = 0; i < size; i++) {
-                if (i != 0) {
-                    sb.append(", ");
-                }
-                sb.append(groups.get(i));
-            }
-            entry.mimetype = GroupMembership.MIMETYPE;
-            entry.kind = mContext.getString(R.string.groupsLabel);
-            entry.data = sb.toString();
-            mGroupEntries.add(entry);
+        public boolean isInSubSection() {
+            return mIsInSubSection;
         }
     }
 
     /**
-     * Collapse all contact detail entries into one aggregated list with a {@link HeaderViewEntry}
-     * at the top.
+     * Title entry for items of the same {@link DataKind} in the
+     * {@link ViewAdapter} list of data.
      */
-    private void setupFlattenedList() {
-        // All contacts should have a header view (even if there is no data for the contact).
-        mAllEntries.add(new HeaderViewEntry());
-
-        addPhoneticName();
-
-        flattenList(mPhoneEntries);
-        flattenList(mSmsEntries);
-        flattenList(mEmailEntries);
-        flattenList(mImEntries);
-        flattenList(mNicknameEntries);
-        flattenList(mWebsiteEntries);
-
-        addNetworks();
-
-        flattenList(mSipEntries);
-        flattenList(mPostalEntries);
-        flattenList(mEventEntries);
-        flattenList(mGroupEntries);
-        flattenList(mRelationEntries);
-        flattenList(mNoteEntries);
-    }
+    private static class KindTitleViewEntry extends ViewEntry {
 
-    /**
-     * Add phonetic name (if applicable) to the aggregated list of contact details. This has to be
-     * done manually because phonetic name doesn't have a mimetype or action intent.
-     */
-    private void addPhoneticName() {
-        String phoneticName = ContactDetailDisplayUtils.getPhoneticName(mContext, mContactData);
-        if (TextUtils.isEmpty(phoneticName)) {
-            return;
-        }
+        private final String mTitle;
 
-        // Add a title
-        String phoneticNameKindTitle = mContext.getString(R.string.name_phonetic);
-        mAllEntries.add(new KindTitleViewEntry(phoneticNameKindTitle.toUpperCase()));
+        KindTitleViewEntry(String titleText) {
+            super(ViewAdapter.VIEW_TYPE_KIND_TITLE_ENTRY);
+            mTitle = titleText;
+        }
 
-        // Add the phonetic name
-        final DetailViewEntry entry = new DetailViewEntry();
-        entry.kind = phoneticNameKindTitle;
-        entry.data = phoneticName;
-        mAllEntries.add(entry);
+        public String getTitle() {
+            return mTitle;
+        }
     }
 
     /**
-     * Add attribution and other third-party entries (if applicable) under the "networks" section
-     * of the aggregated list of contact details. This has to be done manually because the
-     * attribution does not have a mimetype and the third-party entries don't have actually belong
-     * to the same {@link DataKind}.
+     * A title for a section of contact details from a single 3rd party network.
      */
-    private void addNetworks() {
-        String attribution = ContactDetailDisplayUtils.getAttribution(mContext, mContactData);
-        boolean hasAttribution = !TextUtils.isEmpty(attribution);
-        int networksCount = mOtherEntriesMap.keySet().size();
-
-        // Note: invitableCount will always be 0 for me profile.  (ContactLoader won't set
-        // invitable types for me profile.)
-        int invitableCount = mContactData.getInvitableAccountTypes().size();
-        if (!hasAttribution && networksCount == 0 && invitableCount == 0) {
-            return;
-        }
-
-        // Add a title
-        String networkKindTitle = mContext.getString(R.string.connections);
-        mAllEntries.add(new KindTitleViewEntry(networkKindTitle.toUpperCase()));
-
-        // Add the attribution if applicable
-        if (hasAttribution) {
-            final DetailViewEntry entry = new DetailViewEntry();
-            entry.kind = networkKindTitle;
-            entry.data = attribution;
-            mAllEntries.add(entry);
+    private static class NetworkTitleViewEntry extends ViewEntry {
+        private final Drawable mIcon;
+        private final CharSequence mLabel;
 
-            // Add a divider below the attribution if there are network details that will follow
-            if (networksCount > 0) {
-                mAllEntries.add(new SeparatorViewEntry());
-            }
+        public NetworkTitleViewEntry(Context context, AccountType type) {
+            super(ViewAdapter.VIEW_TYPE_NETWORK_TITLE_ENTRY);
+            this.mIcon = type.getDisplayIcon(context);
+            this.mLabel = type.getDisplayLabel(context);
+            this.isEnabled = false;
         }
 
-        // Add the other entries from third parties
-        for (AccountType accountType : mOtherEntriesMap.keySet()) {
-
-            // Add a title for each third party app
-            mAllEntries.add(new NetworkTitleViewEntry(mContext, accountType));
-
-            for (DetailViewEntry detailEntry : mOtherEntriesMap.get(accountType)) {
-                // Add indented separator
-                SeparatorViewEntry separatorEntry = new SeparatorViewEntry();
-                separatorEntry.setIsInSubSection(true);
-                mAllEntries.add(separatorEntry);
-
-                // Add indented detail
-                detailEntry.setIsInSubSection(true);
-                mAllEntries.add(detailEntry);
-            }
+        public Drawable getIcon() {
+            return mIcon;
         }
 
-        mOtherEntriesMap.clear();
-
-        // Add the "More networks" button, which opens the invitable account type list popup.
-        if (invitableCount > 0) {
-            addMoreNetworks();
+        public CharSequence getLabel() {
+            return mLabel;
         }
     }
 
     /**
-     * Add the "More networks" entry.  When clicked, show a popup containing a list of invitable
-     * account types.
+     * This is used for the "Add Connections" entry.
      */
-    private void addMoreNetworks() {
-        // First, prepare for the popup.
-
-        // Adapter for the list popup.
-        final InvitableAccountTypesAdapter popupAdapter = new InvitableAccountTypesAdapter(mContext,
-                mContactData);
+    private static class AddConnectionViewEntry extends ViewEntry {
+        private final Drawable mIcon;
+        private final CharSequence mLabel;
 
-        // Listener called when a popup item is clicked.
-        final AdapterView.OnItemClickListener popupItemListener
-                = new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position,
-                    long id) {
-                if (mListener != null && mContactData != null) {
-                    mListener.onItemClicked(MoreContactUtils.getInvitableIntent(
-                            popupAdapter.getItem(position) /* account type */,
-                            mContactData.getLookupUri()));
-                }
-            }
-        };
+        private AddConnectionViewEntry(Context context) {
+            super(ViewAdapter.VIEW_TYPE_ADD_CONNECTION_ENTRY);
+            this.mIcon = context.getResources().getDrawable(
+                    R.drawable.ic_menu_add_field_holo_light);
+            this.mLabel = context.getString(R.string.add_connection_button);
+            this.isEnabled = true;
+        }
 
-        // Then create the click listener for the "More network" entry.  Open the popup.
-        View.OnClickListener onClickListener = new OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                showListPopup(v, popupAdapter, popupItemListener);
-            }
-        };
+        public Drawable getIcon() {
+            return mIcon;
+        }
 
-        // Finally create the entry.
-        mAllEntries.add(new AddConnectionViewEntry(mContext, onClickListener));
+        public CharSequence getLabel() {
+            return mLabel;
+        }
     }
 
     /**
-     * Iterate through {@link DetailViewEntry} in the given list and add it to a list of all
-     * entries. Add a {@link KindTitleViewEntry} at the start if the length of the list is not 0.
-     * Add {@link SeparatorViewEntry}s as dividers as appropriate. Clear the original list.
+     * An item with a single detail for a contact in the {@link ViewAdapter}
+     * list of data.
      */
-    private void flattenList(ArrayList<DetailViewEntry> entries) {
-        int count = entries.size();
+    static class DetailViewEntry extends ViewEntry implements Collapsible<DetailViewEntry> {
+        // TODO: Make getters/setters for these fields
+        public int type = -1;
+        public String kind;
+        public String typeString;
+        public String data;
+        public Uri uri;
+        public int maxLines = 1;
+        public int textDirection = TEXT_DIRECTION_UNDEFINED;
+        public String mimetype;
+
+        public Context context = null;
+        public boolean isPrimary = false;
+        public int secondaryActionIcon = -1;
+        public int secondaryActionDescription = -1;
+        public Intent intent;
+        public Intent secondaryIntent = null;
+        public ArrayList<Long> ids = new ArrayList<Long>();
+        public int collapseCount = 0;
 
-        // Add a title for this kind by extracting the kind from the first entry
-        if (count > 0) {
-            String kind = entries.get(0).kind;
-            mAllEntries.add(new KindTitleViewEntry(kind.toUpperCase()));
+        public int presence = -1;
+        public int chatCapability = 0;
+
+        private boolean mIsInSubSection = false;
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("type", type)
+                    .add("kind", kind)
+                    .add("typeString", typeString)
+                    .add("data", data)
+                    .add("uri", uri)
+                    .add("maxLines", maxLines)
+                    .add("mimetype", mimetype)
+                    .add("context", context)
+                    .add("isPrimary", isPrimary)
+                    .add("secondaryActionIcon", secondaryActionIcon)
+                    .add("secondaryActionDescription", secondaryActionDescription)
+                    .add("intent", intent)
+                    .add("secondaryIntent", secondaryIntent)
+                    .add("ids", ids)
+                    .add("collapseCount", collapseCount)
+                    .add("presence", presence)
+                    .add("chatCapability", chatCapability)
+                    .add("mIsInSubSection", mIsInSubSection)
+                    .toString();
         }
 
-        // Add all the data entries for this kind
-        for (int i = 0; i < count; i++) {
-            // For all entries except the first one, add a divider above the entry
-            if (i != 0) {
-                mAllEntries.add(new SeparatorViewEntry());
-            }
-            mAllEntries.add(entries.get(i));
+        DetailViewEntry() {
+            super(ViewAdapter.VIEW_TYPE_DETAIL_ENTRY);
+            isEnabled = true;
         }
 
-        // Clear old list because it's not needed anymore.
-        entries.clear();
-    }
+        /**
+         * Build new {@link DetailViewEntry} and populate from the given values.
+         */
+        public static DetailViewEntry fromValues(Context context, DataItem item,
+                boolean isDirectoryEntry, long directoryId, DataKind dataKind) {
+            final DetailViewEntry entry = new DetailViewEntry();
+            entry.id = item.getId();
+            entry.context = context;
+            entry.uri = ContentUris.withAppendedId(Data.CONTENT_URI, entry.id);
+            if (isDirectoryEntry) {
+                entry.uri = entry.uri.buildUpon().appendQueryParameter(
+                        ContactsContract.DIRECTORY_PARAM_KEY, String.valueOf(directoryId)).build();
+            }
+            entry.mimetype = item.getMimeType();
+            entry.kind = dataKind.getKindString(context);
+            entry.data = item.buildDataString(context, dataKind);
 
-    /**
-     * Maps group ID to the corresponding group name, collapses all synonymous groups.
-     * Ignores default groups (e.g. My Contacts) and favorites groups.
-     */
-    private void handleGroupMembership(
-            ArrayList<String> groups, List<GroupMetaData> groupMetaData, long groupId) {
-        if (groupMetaData == null) {
-            return;
-        }
+            if (item.hasKindTypeColumn(dataKind)) {
+                entry.type = item.getKindTypeColumn(dataKind);
 
-        for (GroupMetaData group : groupMetaData) {
-            if (group.getGroupId() == groupId) {
-                if (!group.isDefaultGroup() && !group.isFavorites()) {
-                    String title = group.getTitle();
-                    if (!TextUtils.isEmpty(title) && !groups.contains(title)) {
-                        groups.add(title);
+                // get type string
+                entry.typeString = "";
+                for (EditType type : dataKind.typeList) {
+                    if (type.rawValue == entry.type) {
+                        if (type.customColumn == null) {
+                            // Non-custom type. Get its description from the resource
+                            entry.typeString = context.getString(type.labelRes);
+                        } else {
+                            // Custom type. Read it from the database
+                            entry.typeString =
+                                    item.getContentValues().getAsString(type.customColumn);
+                        }
+                        break;
                     }
                 }
-                break;
+            } else {
+                entry.typeString = "";
             }
+
+            return entry;
         }
-    }
 
-    /**
-     * Writes the Instant Messaging action into the given entry value.
-     */
-    @VisibleForTesting
-    public static void buildImActions(Context context, DetailViewEntry entry,
-            ImDataItem im) {
-        final boolean isEmail = im.isCreatedFromEmail();
+        /**
+         * Returns a copy of this entry, which can be collapsed with other entries without
+         * affecting this one.
+         */
+        DetailViewEntry copy() {
+            final DetailViewEntry entry = new DetailViewEntry();
+            entry.id = id;
+            entry.isEnabled = isEnabled;
+            entry.type = type;
+            entry.kind = kind;
+            entry.typeString = typeString;
+            entry.data = data;
+            entry.uri = uri;
+            entry.maxLines = maxLines;
+            entry.textDirection = textDirection;
+            entry.mimetype = mimetype;
+            entry.context = context;
+            entry.isPrimary = isPrimary;
+            entry.secondaryActionIcon = secondaryActionIcon;
+            entry.secondaryActionDescription = secondaryActionDescription;
+            entry.intent = intent;
+            entry.secondaryIntent = secondaryIntent;
+            entry.ids.addAll(ids);
+            entry.collapseCount = collapseCount;
+            entry.presence = presence;
+            entry.chatCapability = chatCapability;
+            entry.mIsInSubSection = mIsInSubSection;
+            return entry;
+        }
 
-        if (!isEmail && !im.isProtocolValid()) {
-            return;
+        public void setPresence(int presence) {
+            this.presence = presence;
         }
 
-        final String data = im.getData();
-        if (TextUtils.isEmpty(data)) {
-            return;
+        public void setIsInSubSection(boolean isInSubSection) {
+            mIsInSubSection = isInSubSection;
         }
 
-        final int protocol = isEmail ? Im.PROTOCOL_GOOGLE_TALK : im.getProtocol();
+        public boolean isInSubSection() {
+            return mIsInSubSection;
+        }
 
-        if (protocol == Im.PROTOCOL_GOOGLE_TALK) {
-            final int chatCapability = im.getChatCapability();
-            entry.chatCapability = chatCapability;
-            entry.typeString = Im.getProtocolLabel(context.getResources(), Im.PROTOCOL_GOOGLE_TALK,
-                    null).toString();
-            if ((chatCapability & Im.CAPABILITY_HAS_CAMERA) != 0) {
-                entry.intent =
-                        new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?message"));
-                entry.secondaryIntent =
-                        new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?call"));
-            } else if ((chatCapability & Im.CAPABILITY_HAS_VOICE) != 0) {
-                // Allow Talking and Texting
-                entry.intent =
-                    new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?message"));
-                entry.secondaryIntent =
-                    new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?call"));
-            } else {
-                entry.intent =
-                    new Intent(Intent.ACTION_SENDTO, Uri.parse("xmpp:" + data + "?message"));
+        @Override
+        public void collapseWith(DetailViewEntry entry) {
+            // Choose the label associated with the highest type precedence.
+            if (TypePrecedence.getTypePrecedence(mimetype, type)
+                    > TypePrecedence.getTypePrecedence(entry.mimetype, entry.type)) {
+                type = entry.type;
+                kind = entry.kind;
+                typeString = entry.typeString;
             }
-        } else {
-            // Build an IM Intent
-            final Intent imIntent = getCustomIMIntent(im, protocol);
-            if (imIntent != null &&
-                    PhoneCapabilityTester.isIntentRegistered(context, imIntent)) {
-                entry.intent = imIntent;
+
+            // Choose the max of the maxLines and maxLabelLines values.
+            maxLines = Math.max(maxLines, entry.maxLines);
+
+            // Choose the presence with the highest precedence.
+            if (StatusUpdates.getPresencePrecedence(presence)
+                    < StatusUpdates.getPresencePrecedence(entry.presence)) {
+                presence = entry.presence;
             }
-        }
-    }
 
-    @VisibleForTesting
-    public static Intent getCustomIMIntent(ImDataItem im, int protocol) {
-        String host = im.getCustomProtocol();
-        final String data = im.getData();
-        if (TextUtils.isEmpty(data)) {
-            return null;
+            // If any of the collapsed entries are primary make the whole thing primary.
+            isPrimary = entry.isPrimary ? true : isPrimary;
+
+            // uri, and contactdId, shouldn't make a difference. Just keep the original.
+
+            // Keep track of all the ids that have been collapsed with this one.
+            ids.add(entry.getId());
+            collapseCount++;
         }
-        if (protocol != Im.PROTOCOL_CUSTOM) {
-            // Try bringing in a well-known host for specific protocols
-            host = ContactsUtils.lookupProviderNameFromId(protocol);
+
+        @Override
+        public boolean shouldCollapseWith(DetailViewEntry entry) {
+            if (entry == null) {
+                return false;
+            }
+
+            if (!MoreContactUtils.shouldCollapse(mimetype, data, entry.mimetype, entry.data)) {
+                return false;
+            }
+
+            if (!TextUtils.equals(mimetype, entry.mimetype)
+                    || !ContactsUtils.areIntentActionEqual(intent, entry.intent)
+                    || !ContactsUtils.areIntentActionEqual(
+                            secondaryIntent, entry.secondaryIntent)) {
+                return false;
+            }
+
+            return true;
         }
-        if (TextUtils.isEmpty(host)) {
-            return null;
+
+        @Override
+        public void click(View clickedView, Listener fragmentListener) {
+            if (fragmentListener == null || intent == null) return;
+            fragmentListener.onItemClicked(intent);
         }
-        final String authority = host.toLowerCase();
-        final Uri imUri = new Uri.Builder().scheme(CallUtil.SCHEME_IMTO).authority(
-                authority).appendPath(data).build();
-        final Intent intent = new Intent(Intent.ACTION_SENDTO, imUri);
-        return intent;
     }
 
     /**
-     * Show a list popup.  Used for "popup-able" entry, such as "More networks".
+     * Immutable, ready-to-bind result of an {@link EntryBuilder}.
      */
-    private void showListPopup(View anchorView, ListAdapter adapter,
-            final AdapterView.OnItemClickListener onItemClickListener) {
-        dismissPopupIfShown();
-        mPopup = new ListPopupWindow(mContext, null);
-        mPopup.setAnchorView(anchorView);
-        mPopup.setWidth(anchorView.getWidth());
-        mPopup.setAdapter(adapter);
-        mPopup.setModal(true);
+    static final class DetailModel {
+        private final List<ViewEntry> mEntries;
+        private final Uri mPrimaryPhoneUri;
+        private final boolean mIsUniqueNumber;
+        private final boolean mIsUniqueEmail;
 
-        // We need to wrap the passed onItemClickListener here, so that we can dismiss() the
-        // popup afterwards.  Otherwise we could directly use the passed listener.
-        mPopup.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position,
-                    long id) {
-                onItemClickListener.onItemClick(parent, view, position, id);
-                dismissPopupIfShown();
-            }
-        });
-        mPopup.show();
-    }
+        private DetailModel(List<ViewEntry> entries, Uri primaryPhoneUri,
+                boolean isUniqueNumber, boolean isUniqueEmail) {
+            mEntries = Collections.unmodifiableList(entries);
+            mPrimaryPhoneUri = primaryPhoneUri;
+            mIsUniqueNumber = isUniqueNumber;
+            mIsUniqueEmail = isUniqueEmail;
+        }
 
-    private void dismissPopupIfShown() {
-        UiClosables.closeQuietly(mPopup);
-        mPopup = null;
+        /** Returns the flattened list of entries shown by the {@link ViewAdapter}. */
+        public List<ViewEntry> getEntries() {
+            return mEntries;
+        }
+
+        /** Returns the URI of the super-primary phone number, if any. */
+        public Uri getPrimaryPhoneUri() {
+            return mPrimaryPhoneUri;
+        }
+
+        public boolean isUniqueNumber() {
+            return mIsUniqueNumber;
+        }
+
+        public boolean isUniqueEmail() {
+            return mIsUniqueEmail;
+        }
     }
 
     /**
-     * Base class for an item in the {@link ViewAdapter} list of data, which is
-     * supplied to the {@link ListView}.
+     * Builds the {@link DetailModel} of a {@link Contact}. This resolves data kinds, builds
+     * intents and checks phone capabilities, so {@link ContactDetailLoader} runs it on its
+     * background thread. A builder reuses the entries of raw contacts whose data did not change
+     * since its previous build.
      */
-    static class ViewEntry {
-        private final int viewTypeForAdapter;
-        protected long id = -1;
-        /** Whether or not the entry can be focused on or not. */
-        protected boolean isEnabled = false;
+    static final class EntryBuilder {
+        /** Models built by {@link ContactDetailLoader}, until their contact is discarded. */
+        private static final Map<Contact, DetailModel> sPrebuiltModels =
+                new WeakHashMap<Contact, DetailModel>();
 
-        ViewEntry(int viewType) {
-            viewTypeForAdapter = viewType;
+        private final Context mContext;
+        private Contact mContactData;
+        private Uri mPrimaryPhoneUri;
+        private ArrayList<ViewEntry> mAllEntries;
+
+        /**
+         * Lists of specific types of entries to be shown in contact details.
+         */
+        private final ArrayList<DetailViewEntry> mPhoneEntries = new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mSmsEntries = new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mEmailEntries = new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mPostalEntries =
+                new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mImEntries = new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mNicknameEntries =
+                new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mGroupEntries = new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mRelationEntries =
+                new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mNoteEntries = new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mWebsiteEntries =
+                new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mSipEntries = new ArrayList<DetailViewEntry>();
+        private final ArrayList<DetailViewEntry> mEventEntries = new ArrayList<DetailViewEntry>();
+        private final Map<AccountType, List<DetailViewEntry>> mOtherEntriesMap =
+                new HashMap<AccountType, List<DetailViewEntry>>();
+
+        /**
+         * Entries built for each raw contact of the previous contact, keyed by raw contact ID.
+         * Reused by the next {@link #buildEntries} for raw contacts whose data did not change.
+         */
+        private HashMap<Long, RawContactEntries> mRawContactEntries =
+                new HashMap<Long, RawContactEntries>();
+
+        /** Entries that carry no contact data, shared by every built model. */
+        private final HeaderViewEntry mHeaderEntry = new HeaderViewEntry();
+        private final SeparatorViewEntry mSeparatorEntry = new SeparatorViewEntry(false);
+        private final SeparatorViewEntry mSubSectionSeparatorEntry = new SeparatorViewEntry(true);
+        private final HashMap<String, KindTitleViewEntry> mKindTitleEntries =
+                new HashMap<String, KindTitleViewEntry>();
+
+        public EntryBuilder(Context context) {
+            mContext = context;
         }
 
-        int getViewType() {
-            return viewTypeForAdapter;
+        /**
+         * Returns the model built by {@link #prebuild} for the given contact, or null if there
+         * is none.
+         */
+        public static DetailModel getPrebuiltModel(Contact contact) {
+            synchronized (sPrebuiltModels) {
+                return sPrebuiltModels.get(contact);
+            }
         }
 
-        long getId() {
-            return id;
+        /**
+         * Drops the models built by {@link #prebuild}, e.g. because they were built for other
+         * device capabilities.
+         */
+        public static void discardPrebuiltModels() {
+            synchronized (sPrebuiltModels) {
+                sPrebuiltModels.clear();
+            }
         }
 
-        boolean isEnabled(){
-            return isEnabled;
+        /**
+         * Builds the model for the given contact and keeps it, so that it can be retrieved with
+         * {@link #getPrebuiltModel} when the contact is bound.
+         */
+        public DetailModel prebuild(Contact contact) {
+            final DetailModel model = build(contact);
+            synchronized (sPrebuiltModels) {
+                sPrebuiltModels.put(contact, model);
+            }
+            return model;
+        }
+
+        public synchronized DetailModel build(Contact contact) {
+            mContactData = contact;
+            mPrimaryPhoneUri = null;
+            mAllEntries = new ArrayList<ViewEntry>();
+
+            // Build up the contact entries
+            buildEntries();
+
+            // Collapse similar data items for select {@link DataKind}s.
+            KeyedCollapser.collapseList(mPhoneEntries, DETAIL_COLLAPSE_KEY_FUNCTION);
+            KeyedCollapser.collapseList(mSmsEntries, DETAIL_COLLAPSE_KEY_FUNCTION);
+            KeyedCollapser.collapseList(mEmailEntries, DETAIL_COLLAPSE_KEY_FUNCTION);
+            KeyedCollapser.collapseList(mPostalEntries, DETAIL_COLLAPSE_KEY_FUNCTION);
+            KeyedCollapser.collapseList(mImEntries, DETAIL_COLLAPSE_KEY_FUNCTION);
+            KeyedCollapser.collapseList(mEventEntries, DETAIL_COLLAPSE_KEY_FUNCTION);
+            KeyedCollapser.collapseList(mWebsiteEntries, DETAIL_COLLAPSE_KEY_FUNCTION);
+
+            final boolean isUniqueNumber = mPhoneEntries.size() == 1;
+            final boolean isUniqueEmail = mEmailEntries.size() == 1;
+
+            // Make one aggregated list of all entries for display to the user.
+            setupFlattenedList();
+
+            final DetailModel model = new DetailModel(mAllEntries, mPrimaryPhoneUri,
+                    isUniqueNumber, isUniqueEmail);
+            mContactData = null;
+            mAllEntries = null;
+            return model;
         }
 
         /**
-         * Called when the entry is clicked.  Only {@link #isEnabled} entries can get clicked.
-         *
-         * @param clickedView  {@link View} that was clicked  (Used, for example, as the anchor view
-         *        for a popup.)
-         * @param fragmentListener  {@link Listener} set to {@link ContactDetailFragment}
+         * Build up the entries to display on the screen. Entries of raw contacts whose data did not
+         * change since the previous call are reused instead of being built again.
          */
-        public void click(View clickedView, Listener fragmentListener) {
+        private void buildEntries() {
+            final boolean hasPhone = PhoneCapabilityTester.isPhone(mContext);
+            final ComponentName smsComponent = PhoneCapabilityTester.getSmsComponent(mContext);
+            final boolean hasSip = PhoneCapabilityTester.isSipPhone(mContext);
+
+            // Everything outside of the raw contact's own data that affects its entries
+            final List<Object> buildParameters = Arrays.<Object>asList(hasPhone, smsComponent,
+                    hasSip, mContactData.isDirectoryEntry(), mContactData.getDirectoryId(),
+                    mContactData.getNameRawContactId(), mContactData.getDisplayNameSource());
+
+            final HashMap<Long, RawContactEntries> previousEntries = mRawContactEntries;
+            mRawContactEntries = new HashMap<Long, RawContactEntries>();
+
+            ArrayList<String> groups = new ArrayList<String>();
+            for (RawContact rawContact: mContactData.getRawContacts()) {
+                final long rawContactId = rawContact.getId();
+                RawContactEntries rawContactEntries = previousEntries.get(rawContactId);
+                if (rawContactEntries == null || !rawContactEntries.isUpToDate(
+                        rawContact, mContactData.getStatuses(), buildParameters)) {
+                    rawContactEntries = new RawContactEntries(rawContact,
+                            mContactData.getStatuses(), buildParameters);
+                    buildRawContactEntries(rawContact, rawContactEntries, hasPhone, smsComponent,
+                            hasSip);
+                }
+                mRawContactEntries.put(rawContactId, rawContactEntries);
+                addRawContactEntries(rawContactEntries, groups);
+            }
+
+            if (!groups.isEmpty()) {
+                DetailViewEntry entry = new DetailViewEntry();
+                Collections.sort(groups, CollationKeyCache.COMPARATOR);
+                StringBuilder sb = new StringBuilder();
+                int size = groups.size();
+                for (int i = 0; i < size; i++) {
+                    if (i != 0) {
+                        sb.append(", ");
+                    }
+                    sb.append(groups.get(i));
+                }
+                entry.mimetype = GroupMembership.MIMETYPE;
+                entry.kind = mContext.getString(R.string.groupsLabel);
+                entry.data = sb.toString();
+                mGroupEntries.add(entry);
+            }
         }
-    }
 
-    /**
-     * Header item in the {@link ViewAdapter} list of data.
-     */
-    private static class HeaderViewEntry extends ViewEntry {
+        /**
+         * Adds copies of the entries of a single raw contact to the per-kind lists, in the order in
+         * which they were built. Copies are used because collapsing modifies the entries.
+         */
+        private void addRawContactEntries(RawContactEntries rawContactEntries,
+                ArrayList<String> groups) {
+            for (BuiltEntry builtEntry : rawContactEntries.entries) {
+                final DetailViewEntry entry = builtEntry.entry.copy();
+                if (builtEntry.otherAccountType != null) {
+                    // If the account type exists in the hash map, add it as another entry for
+                    // that account type
+                    List<DetailViewEntry> listEntries = mOtherEntriesMap.get(
+                            builtEntry.otherAccountType);
+                    if (listEntries == null) {
+                        // Otherwise create a new list with the entry and add it to the hash map
+                        listEntries = new ArrayList<DetailViewEntry>();
+                        mOtherEntriesMap.put(builtEntry.otherAccountType, listEntries);
+                    }
+                    listEntries.add(entry);
+                } else if (builtEntry.front) {
+                    builtEntry.target.add(0, entry);
+                } else {
+                    builtEntry.target.add(entry);
+                }
 
-        HeaderViewEntry() {
-            super(ViewAdapter.VIEW_TYPE_HEADER_ENTRY);
+                // Remember super-primary phone
+                if (builtEntry.target == mPhoneEntries && entry.isPrimary) {
+                    mPrimaryPhoneUri = entry.uri;
+                }
+            }
+
+            for (Long groupId : rawContactEntries.groupIds) {
+                handleGroupMembership(groups, mContactData.getGroupMetaData(), groupId);
+            }
         }
 
-    }
+        /**
+         * Builds the entries for the data items of a single raw contact.
+         */
+        private void buildRawContactEntries(RawContact rawContact, RawContactEntries result,
+                boolean hasPhone, ComponentName smsComponent, boolean hasSip) {
+            final boolean hasSms = (smsComponent != null);
+            final long rawContactId = rawContact.getId();
+            final AccountType accountType = rawContact.getAccountType(mContext);
+            for (DataItem dataItem : rawContact.getDataItems()) {
+                dataItem.setRawContactId(rawContactId);
+
+                if (dataItem.getMimeType() == null) continue;
+
+                if (dataItem instanceof GroupMembershipDataItem) {
+                    GroupMembershipDataItem groupMembership =
+                            (GroupMembershipDataItem) dataItem;
+                    Long groupId = groupMembership.getGroupRowId();
+                    if (groupId != null) {
+                        result.groupIds.add(groupId);
+                    }
+                    continue;
+                }
+
+                final DataKind kind = AccountTypeManager.getInstance(mContext)
+                        .getKindOrFallback(accountType, dataItem.getMimeType());
+                if (kind == null) continue;
+
+                final DetailViewEntry entry = DetailViewEntry.fromValues(mContext, dataItem,
+                        mContactData.isDirectoryEntry(), mContactData.getDirectoryId(), kind);
+                entry.maxLines = kind.maxLinesForDisplay;
+
+                final boolean hasData = !TextUtils.isEmpty(entry.data);
+                final boolean isSuperPrimary = dataItem.isSuperPrimary();
+
+                if (dataItem instanceof StructuredNameDataItem) {
+                    // Always ignore the name. It is shown in the header if set
+                } else if (dataItem instanceof PhoneDataItem && hasData) {
+                    PhoneDataItem phone = (PhoneDataItem) dataItem;
+                    // Build phone entries
+                    entry.data = phone.getFormattedPhoneNumber();
+                    final Intent phoneIntent = hasPhone ?
+                            CallUtil.getCallIntent(entry.data) : null;
+                    Intent smsIntent = null;
+                    if (hasSms) {
+                        smsIntent = new Intent(Intent.ACTION_SENDTO,
+                                Uri.fromParts(CallUtil.SCHEME_SMSTO, entry.data, null));
+                        smsIntent.setComponent(smsComponent);
+                    }
+
+                    // Configure Icons and Intents.
+                    if (hasPhone && hasSms) {
+                        entry.intent = phoneIntent;
+                        entry.secondaryIntent = smsIntent;
+                        entry.secondaryActionIcon = kind.iconAltRes;
+                        entry.secondaryActionDescription =
+                            ContactDisplayUtils.getSmsLabelResourceId(entry.type);
+                    } else if (hasPhone) {
+                        entry.intent = phoneIntent;
+                    } else if (hasSms) {
+                        entry.intent = smsIntent;
+                    } else {
+                        entry.intent = null;
+                    }
+
+                    entry.isPrimary = isSuperPrimary;
+
+                    // If the entry is a primary entry, then render it first in the view.
+                    result.add(mPhoneEntries, entry, entry.isPrimary);
+
+                    // Configure the text direction. Phone numbers should be displayed LTR
+                    // regardless of what locale the device is in.
+                    entry.textDirection = View.TEXT_DIRECTION_LTR;
+                } else if (dataItem instanceof EmailDataItem && hasData) {
+                    // Build email entries
+                    entry.intent = new Intent(Intent.ACTION_SENDTO,
+                            Uri.fromParts(CallUtil.SCHEME_MAILTO, entry.data, null));
+                    entry.isPrimary = isSuperPrimary;
+                    // If entry is a primary entry, then render it first in the view.
+                    result.add(mEmailEntries, entry, entry.isPrimary);
+
+                    // When Email rows have status, create additional Im row
+                    final DataStatus status = mContactData.getStatuses().get(entry.id);
+                    if (status != null) {
+                        EmailDataItem email = (EmailDataItem) dataItem;
+                        ImDataItem im = ImDataItem.createFromEmail(email);
+
+                        final DetailViewEntry imEntry = DetailViewEntry.fromValues(mContext, im,
+                                mContactData.isDirectoryEntry(), mContactData.getDirectoryId(),
+                                kind);
+                        buildImActions(mContext, imEntry, im);
+                        imEntry.setPresence(status.getPresence());
+                        imEntry.maxLines = kind.maxLinesForDisplay;
+                        result.add(mImEntries, imEntry, false);
+                    }
+                } else if (dataItem instanceof StructuredPostalDataItem && hasData) {
+                    // Build postal entries
+                    entry.intent = StructuredPostalUtils.getViewPostalAddressIntent(entry.data);
+                    result.add(mPostalEntries, entry, false);
+                } else if (dataItem instanceof ImDataItem && hasData) {
+                    // Build IM entries
+                    buildImActions(mContext, entry, (ImDataItem) dataItem);
+
+                    // Apply presence when available
+                    final DataStatus status = mContactData.getStatuses().get(entry.id);
+                    if (status != null) {
+                        entry.setPresence(status.getPresence());
+                    }
+                    result.add(mImEntries, entry, false);
+                } else if (dataItem instanceof OrganizationDataItem) {
+                    // Organizations are not shown. The first one is shown in the header
+                    // and subsequent ones are not supported anymore
+                } else if (dataItem instanceof NicknameDataItem && hasData) {
+                    // Build nickname entries
+                    final boolean isNameRawContact =
+                        (mContactData.getNameRawContactId() == rawContactId);
+
+                    final boolean duplicatesTitle =
+                        isNameRawContact
+                        && mContactData.getDisplayNameSource() == DisplayNameSources.NICKNAME;
+
+                    if (!duplicatesTitle) {
+                        entry.uri = null;
+                        result.add(mNicknameEntries, entry, false);
+                    }
+                } else if (dataItem instanceof NoteDataItem && hasData) {
+                    // Build note entries
+                    entry.uri = null;
+                    result.add(mNoteEntries, entry, false);
+                } else if (dataItem instanceof WebsiteDataItem && hasData) {
+                    // Build Website entries
+                    entry.uri = null;
+                    try {
+                        WebAddress webAddress = new WebAddress(entry.data);
+                        entry.intent = new Intent(Intent.ACTION_VIEW,
+                                Uri.parse(webAddress.toString()));
+                    } catch (ParseException e) {
+                        Log.e(TAG, "Couldn't parse website: " + entry.data);
+                    }
+                    result.add(mWebsiteEntries, entry, false);
+                } else if (dataItem instanceof SipAddressDataItem && hasData) {
+                    // Build SipAddress entries
+                    entry.uri = null;
+                    if (hasSip) {
+                        entry.intent = CallUtil.getCallIntent(
+                                Uri.fromParts(CallUtil.SCHEME_SIP, entry.data, null));
+                    } else {
+                        entry.intent = null;
+                    }
+                    result.add(mSipEntries, entry, false);
+                    // TODO: Now that SipAddress is in its own list of entries
+                    // (instead of grouped in mOtherEntries), consider
+                    // repositioning it right under the phone number.
+                    // (Then, we'd also update FallbackAccountType.java to set
+                    // secondary=false for this field, and tweak the weight
+                    // of its DataKind.)
+                } else if (dataItem instanceof EventDataItem && hasData) {
+                    final Calendar cal = DateUtils.parseDate(entry.data, false);
+                    if (cal != null) {
+                        final Date nextAnniversary =
+                                DateUtils.getNextAnnualDate(cal);
+                        final Uri.Builder builder = CalendarContract.CONTENT_URI.buildUpon();
+                        builder.appendPath("time");
+                        ContentUris.appendId(builder, nextAnniversary.getTime());
+                        entry.intent = new Intent(Intent.ACTION_VIEW).setData(builder.build());
+                    }
+                    entry.data = DateUtils.formatDate(mContext, entry.data);
+                    entry.uri = null;
+                    result.add(mEventEntries, entry, false);
+                } else if (dataItem instanceof RelationDataItem && hasData) {
+                    entry.intent = new Intent(Intent.ACTION_SEARCH);
+                    entry.intent.putExtra(SearchManager.QUERY, entry.data);
+                    entry.intent.setType(Contacts.CONTENT_TYPE);
+                    result.add(mRelationEntries, entry, false);
+                } else {
+                    // Handle showing custom rows
+                    entry.intent = new Intent(Intent.ACTION_VIEW);
+                    entry.intent.setDataAndType(entry.uri, entry.mimetype);
+
+                    entry.data = dataItem.buildDataString(mContext, kind);
 
-    /**
-     * Separator between items of the same {@link DataKind} in the
-     * {@link ViewAdapter} list of data.
-     */
-    private static class SeparatorViewEntry extends ViewEntry {
+                    if (!TextUtils.isEmpty(entry.data)) {
+                        result.addOther(accountType, entry);
+                    }
+                }
+            }
+        }
 
         /**
-         * Whether or not the entry is in a subsection (if true then the contents will be indented
-         * to the right)
+         * Collapse all contact detail entries into one aggregated list with a
+         * {@link HeaderViewEntry} at the top.
          */
-        private boolean mIsInSubSection = false;
+        private void setupFlattenedList() {
+            // All contacts should have a header view (even if there is no data for the contact).
+            mAllEntries.add(mHeaderEntry);
 
-        SeparatorViewEntry() {
-            super(ViewAdapter.VIEW_TYPE_SEPARATOR_ENTRY);
-        }
+            addPhoneticName();
 
-        public void setIsInSubSection(boolean isInSubSection) {
-            mIsInSubSection = isInSubSection;
-        }
+            flattenList(mPhoneEntries);
+            flattenList(mSmsEntries);
+            flattenList(mEmailEntries);
+            flattenList(mImEntries);
+            flattenList(mNicknameEntries);
+            flattenList(mWebsiteEntries);
 
-        public boolean isInSubSection() {
-            return mIsInSubSection;
+            addNetworks();
+
+            flattenList(mSipEntries);
+            flattenList(mPostalEntries);
+            flattenList(mEventEntries);
+            flattenList(mGroupEntries);
+            flattenList(mRelationEntries);
+            flattenList(mNoteEntries);
         }
-    }
 
-    /**
-     * Title entry for items of the same {@link DataKind} in the
-     * {@link ViewAdapter} list of data.
-     */
-    private static class KindTitleViewEntry extends ViewEntry {
+        /**
+         * Add phonetic name (if applicable) to the aggregated list of contact details. This has to
+         * be done manually because phonetic name doesn't have a mimetype or action intent.
+         */
+        private void addPhoneticName() {
+            String phoneticName = ContactDetailDisplayUtils.getPhoneticName(mContext, mContactData);
+            if (TextUtils.isEmpty(phoneticName)) {
+                return;
+            }
 
-        private final String mTitle;
+            // Add a title
+            String phoneticNameKindTitle = mContext.getString(R.string.name_phonetic);
+            mAllEntries.add(getKindTitleEntry(phoneticNameKindTitle));
 
-        KindTitleViewEntry(String titleText) {
-            super(ViewAdapter.VIEW_TYPE_KIND_TITLE_ENTRY);
-            mTitle = titleText;
+            // Add the phonetic name
+            final DetailViewEntry entry = new DetailViewEntry();
+            entry.kind = phoneticNameKindTitle;
+            entry.data = phoneticName;
+            mAllEntries.add(entry);
         }
 
-        public String getTitle() {
-            return mTitle;
-        }
-    }
+        /**
+         * Add attribution and other third-party entries (if applicable) under the "networks"
+         * section of the aggregated list of contact details. This has to be done manually because
+         * the attribution does not have a mimetype and the third-party entries don't have actually
+         * belong to the same {@link DataKind}.
+         */
+        private void addNetworks() {
+            String attribution = ContactDetailDisplayUtils.getAttribution(mContext, mContactData);
+            boolean hasAttribution = !TextUtils.isEmpty(attribution);
+            int networksCount = mOtherEntriesMap.keySet().size();
+
+            // Note: invitableCount will always be 0 for me profile.  (ContactLoader won't set
+            // invitable types for me profile.)
+            int invitableCount = mContactData.getInvitableAccountTypes().size();
+            if (!hasAttribution && networksCount == 0 && invitableCount == 0) {
+                return;
+            }
 
-    /**
-     * A title for a section of contact details from a single 3rd party network.
-     */
-    private static class NetworkTitleViewEntry extends ViewEntry {
-        private final Drawable mIcon;
-        private final CharSequence mLabel;
+            // Add a title
+            String networkKindTitle = mContext.getString(R.string.connections);
+            mAllEntries.add(getKindTitleEntry(networkKindTitle));
 
-        public NetworkTitleViewEntry(Context context, AccountType type) {
-            super(ViewAdapter.VIEW_TYPE_NETWORK_TITLE_ENTRY);
-            this.mIcon = type.getDisplayIcon(context);
-            this.mLabel = type.getDisplayLabel(context);
-            this.isEnabled = false;
-        }
+            // Add the attribution if applicable
+            if (hasAttribution) {
+                final DetailViewEntry entry = new DetailViewEntry();
+                entry.kind = networkKindTitle;
+                entry.data = attribution;
+                mAllEntries.add(entry);
 
-        public Drawable getIcon() {
-            return mIcon;
-        }
+                // Add a divider below the attribution if there are network details that will follow
+                if (networksCount > 0) {
+                    mAllEntries.add(mSeparatorEntry);
+                }
+            }
 
-        public CharSequence getLabel() {
-            return mLabel;
-        }
-    }
+            // Add the other entries from third parties
+            for (AccountType accountType : mOtherEntriesMap.keySet()) {
 
-    /**
-     * This is used for the "Add Connections" entry.
-     */
-    private static class AddConnectionViewEntry extends ViewEntry {
-        private final Drawable mIcon;
-        private final CharSequence mLabel;
-        private final View.OnClickListener mOnClickListener;
+                // Add a title for each third party app
+                mAllEntries.add(new NetworkTitleViewEntry(mContext, accountType));
 
-        private AddConnectionViewEntry(Context context, View.OnClickListener onClickListener) {
-            super(ViewAdapter.VIEW_TYPE_ADD_CONNECTION_ENTRY);
-            this.mIcon = context.getResources().getDrawable(
-                    R.drawable.ic_menu_add_field_holo_light);
-            this.mLabel = context.getString(R.string.add_connection_button);
-            this.mOnClickListener = onClickListener;
-            this.isEnabled = true;
-        }
+                for (DetailViewEntry detailEntry : mOtherEntriesMap.get(accountType)) {
+                    // Add indented separator
+                    mAllEntries.add(mSubSectionSeparatorEntry);
 
-        @Override
-        public void click(View clickedView, Listener fragmentListener) {
-            if (mOnClickListener == null) return;
-            mOnClickListener.onClick(clickedView);
-        }
+                    // Add indented detail
+                    detailEntry.setIsInSubSection(true);
+                    mAllEntries.add(detailEntry);
+                }
+            }
 
-        public Drawable getIcon() {
-            return mIcon;
-        }
+            mOtherEntriesMap.clear();
 
-        public CharSequence getLabel() {
-            return mLabel;
+            // Add the "More networks" button, which opens the invitable account type list popup.
+            if (invitableCount > 0) {
+                mAllEntries.add(new AddConnectionViewEntry(mContext));
+            }
         }
-    }
-
-    /**
-     * An item with a single detail for a contact in the {@link ViewAdapter}
-     * list of data.
-     */
-    static class DetailViewEntry extends ViewEntry implements Collapsible<DetailViewEntry> {
-        // TODO: Make getters/setters for these fields
-        public int type = -1;
-        public String kind;
-        public String typeString;
-        public String data;
-        public Uri uri;
-        public int maxLines = 1;
-        public int textDirection = TEXT_DIRECTION_UNDEFINED;
-        public String mimetype;
 
-        public Context context = null;
-        public boolean isPrimary = false;
-        public int secondaryActionIcon = -1;
-        public int secondaryActionDescription = -1;
-        public Intent intent;
-        public Intent secondaryIntent = null;
-        public ArrayList<Long> ids = new ArrayList<Long>();
-        public int collapseCount = 0;
+        /**
+         * Iterate through {@link DetailViewEntry} in the given list and add it to a list of all
+         * entries. Add a {@link KindTitleViewEntry} at the start if the length of the list is not
+         * 0. Add {@link SeparatorViewEntry}s as dividers as appropriate. Clear the original list.
+         */
+        private void flattenList(ArrayList<DetailViewEntry> entries) {
+            int count = entries.size();
 
-        public int presence = -1;
-        public int chatCapability = 0;
+            // Add a title for this kind by extracting the kind from the first entry
+            if (count > 0) {
+                String kind = entries.get(0).kind;
+                mAllEntries.add(getKindTitleEntry(kind));
+            }
 
-        private boolean mIsInSubSection = false;
+            // Add all the data entries for this kind
+            for (int i = 0; i < count; i++) {
+                // For all entries except the first one, add a divider above the entry
+                if (i != 0) {
+                    mAllEntries.add(mSeparatorEntry);
+                }
+                mAllEntries.add(entries.get(i));
+            }
 
-        @Override
-        public String toString() {
-            return Objects.toStringHelper(this)
-                    .add("type", type)
-                    .add("kind", kind)
-                    .add("typeString", typeString)
-                    .add("data", data)
-                    .add("uri", uri)
-                    .add("maxLines", maxLines)
-                    .add("mimetype", mimetype)
-                    .add("context", context)
-                    .add("isPrimary", isPrimary)
-                    .add("secondaryActionIcon", secondaryActionIcon)
-                    .add("secondaryActionDescription", secondaryActionDescription)
-                    .add("intent", intent)
-                    .add("secondaryIntent", secondaryIntent)
-                    .add("ids", ids)
-                    .add("collapseCount", collapseCount)
-                    .add("presence", presence)
-                    .add("chatCapability", chatCapability)
-                    .add("mIsInSubSection", mIsInSubSection)
-                    .toString();
+            // Clear old list because it's not needed anymore.
+            entries.clear();
         }
 
-        DetailViewEntry() {
-            super(ViewAdapter.VIEW_TYPE_DETAIL_ENTRY);
-            isEnabled = true;
+        /**
+         * Returns the {@link KindTitleViewEntry} for the given kind, reusing the one created by an
+         * earlier bind if possible.
+         */
+        private KindTitleViewEntry getKindTitleEntry(String kind) {
+            KindTitleViewEntry entry = mKindTitleEntries.get(kind);
+            if (entry == null) {
+                entry = new KindTitleViewEntry(kind.toUpperCase());
+                mKindTitleEntries.put(kind, entry);
+            }
+            return entry;
         }
 
         /**
-         * Build new {@link DetailViewEntry} and populate from the given values.
+         * Maps group ID to the corresponding group name, collapses all synonymous groups.
+         * Ignores default groups (e.g. My Contacts) and favorites groups.
          */
-        public static DetailViewEntry fromValues(Context context, DataItem item,
-                boolean isDirectoryEntry, long directoryId, DataKind dataKind) {
-            final DetailViewEntry entry = new DetailViewEntry();
-            entry.id = item.getId();
-            entry.context = context;
-            entry.uri = ContentUris.withAppendedId(Data.CONTENT_URI, entry.id);
-            if (isDirectoryEntry) {
-                entry.uri = entry.uri.buildUpon().appendQueryParameter(
-                        ContactsContract.DIRECTORY_PARAM_KEY, String.valueOf(directoryId)).build();
+        private void handleGroupMembership(
+                ArrayList<String> groups, List<GroupMetaData> groupMetaData, long groupId) {
+            if (groupMetaData == null) {
+                return;
             }
-            entry.mimetype = item.getMimeType();
-            entry.kind = dataKind.getKindString(context);
-            entry.data = item.buildDataString(context, dataKind);
-
-            if (item.hasKindTypeColumn(dataKind)) {
-                entry.type = item.getKindTypeColumn(dataKind);
 
-                // get type string
-                entry.typeString = "";
-                for (EditType type : dataKind.typeList) {
-                    if (type.rawValue == entry.type) {
-                        if (type.customColumn == null) {
-                            // Non-custom type. Get its description from the resource
-                            entry.typeString = context.getString(type.labelRes);
-                        } else {
-                            // Custom type. Read it from the database
-                            entry.typeString =
-                                    item.getContentValues().getAsString(type.customColumn);
+            for (GroupMetaData group : groupMetaData) {
+                if (group.getGroupId() == groupId) {
+                    if (!group.isDefaultGroup() && !group.isFavorites()) {
+                        String title = group.getTitle();
+                        if (!TextUtils.isEmpty(title) && !groups.contains(title)) {
+                            groups.add(title);
                         }
-                        break;
                     }
+                    break;
                 }
-            } else {
-                entry.typeString = "";
             }
-
-            return entry;
-        }
-
-        public void setPresence(int presence) {
-            this.presence = presence;
         }
+    }
 
-        public void setIsInSubSection(boolean isInSubSection) {
-            mIsInSubSection = isInSubSection;
+    private static final KeyedCollapser.KeyFunction<DetailViewEntry>
+            DETAIL_COLLAPSE_KEY_FUNCTION = new KeyedCollapser.KeyFunction<DetailViewEntry>() {
+        @Override
+        public String getCollapseKey(DetailViewEntry entry) {
+            return KeyedCollapser.getDataCollapseKey(entry.mimetype, entry.data);
         }
+    };
 
-        public boolean isInSubSection() {
-            return mIsInSubSection;
+    /**
+     * A {@link DetailViewEntry} built for a raw contact, along with where it has to be added.
+     */
+    private static final class BuiltEntry {
+        public final DetailViewEntry entry;
+        /** The per-kind list to add the entry to, or null for "other" entries. */
+        public final ArrayList<DetailViewEntry> target;
+        /** Whether to add the entry at the front of {@link #target}. */
+        public final boolean front;
+        /** The account type to group "other" entries by, or null for per-kind entries. */
+        public final AccountType otherAccountType;
+
+        public BuiltEntry(DetailViewEntry entry, ArrayList<DetailViewEntry> target,
+                boolean front, AccountType otherAccountType) {
+            this.entry = entry;
+            this.target = target;
+            this.front = front;
+            this.otherAccountType = otherAccountType;
         }
+    }
 
-        @Override
-        public void collapseWith(DetailViewEntry entry) {
-            // Choose the label associated with the highest type precedence.
-            if (TypePrecedence.getTypePrecedence(mimetype, type)
-                    > TypePrecedence.getTypePrecedence(entry.mimetype, entry.type)) {
-                type = entry.type;
-                kind = entry.kind;
-                typeString = entry.typeString;
-            }
-
-            // Choose the max of the maxLines and maxLabelLines values.
-            maxLines = Math.max(maxLines, entry.maxLines);
-
-            // Choose the presence with the highest precedence.
-            if (StatusUpdates.getPresencePrecedence(presence)
-                    < StatusUpdates.getPresencePrecedence(entry.presence)) {
-                presence = entry.presence;
+    /**
+     * The entries built from the data of a single raw contact, along with a snapshot of that
+     * data, used to tell whether the entries can be reused for a newer {@link Contact} result.
+     */
+    private static final class RawContactEntries {
+        public final ArrayList<BuiltEntry> entries = new ArrayList<BuiltEntry>();
+        public final ArrayList<Long> groupIds = new ArrayList<Long>();
+
+        private final ArrayList<ContentValues> mValues;
+        private final int[] mPresences;
+        private final List<Object> mBuildParameters;
+
+        public RawContactEntries(RawContact rawContact, Map<Long, DataStatus> statuses,
+                List<Object> buildParameters) {
+            final List<DataItem> dataItems = rawContact.getDataItems();
+            final int count = dataItems.size();
+            mValues = new ArrayList<ContentValues>(count);
+            mPresences = new int[count];
+            for (int i = 0; i < count; i++) {
+                final DataItem dataItem = dataItems.get(i);
+                // Copied, since building the entries sets the raw contact ID of the data item
+                final ContentValues values = new ContentValues(dataItem.getContentValues());
+                values.remove(Data.RAW_CONTACT_ID);
+                mValues.add(values);
+                mPresences[i] = getPresence(statuses, dataItem);
             }
+            mBuildParameters = buildParameters;
+        }
 
-            // If any of the collapsed entries are primary make the whole thing primary.
-            isPrimary = entry.isPrimary ? true : isPrimary;
-
-            // uri, and contactdId, shouldn't make a difference. Just keep the original.
-
-            // Keep track of all the ids that have been collapsed with this one.
-            ids.add(entry.getId());
-            collapseCount++;
+        public void add(ArrayList<DetailViewEntry> target, DetailViewEntry entry,
+                boolean front) {
+            entries.add(new BuiltEntry(entry, target, front, null));
         }
 
-        @Override
-        public boolean shouldCollapseWith(DetailViewEntry entry) {
-            if (entry == null) {
-                return false;
-            }
+        public void addOther(AccountType accountType, DetailViewEntry entry) {
+            entries.add(new BuiltEntry(entry, null, false, accountType));
+        }
 
-            if (!MoreContactUtils.shouldCollapse(mimetype, data, entry.mimetype, entry.data)) {
-                return false;
+        /**
+         * Returns true if the entries were built from the same data as the given raw contact
+         * currently has.
+         */
+        public boolean isUpToDate(RawContact rawContact, Map<Long, DataStatus> statuses,
+                List<Object> buildParameters) {
+            if (!mBuildParameters.equals(buildParameters)) return false;
+            final List<DataItem> dataItems = rawContact.getDataItems();
+            final int count = dataItems.size();
+            if (count != mValues.size()) return false;
+            for (int i = 0; i < count; i++) {
+                final DataItem dataItem = dataItems.get(i);
+                if (mPresences[i] != getPresence(statuses, dataItem)
+                        || !isSameData(mValues.get(i), dataItem.getContentValues())) {
+                    return false;
+                }
             }
+            return true;
+        }
 
-            if (!TextUtils.equals(mimetype, entry.mimetype)
-                    || !ContactsUtils.areIntentActionEqual(intent, entry.intent)
-                    || !ContactsUtils.areIntentActionEqual(
-                            secondaryIntent, entry.secondaryIntent)) {
-                return false;
+        /**
+         * Returns true if the given values of a data item match the snapshot.  The raw contact ID
+         * isn't compared, since it is set on the data items only once the entries are built, and
+         * blobs such as photos are compared by content.
+         */
+        private static boolean isSameData(ContentValues snapshot, ContentValues values) {
+            int size = values.size();
+            if (values.containsKey(Data.RAW_CONTACT_ID)) size--;
+            if (size != snapshot.size()) return false;
+            for (Map.Entry<String, Object> entry : snapshot.valueSet()) {
+                final String key = entry.getKey();
+                if (!values.containsKey(key)) return false;
+                final Object value = entry.getValue();
+                final Object otherValue = values.get(key);
+                if (value instanceof byte[] && otherValue instanceof byte[]) {
+                    if (!Arrays.equals((byte[]) value, (byte[]) otherValue)) return false;
+                } else if (!Objects.equal(value, otherValue)) {
+                    return false;
+                }
             }
-
             return true;
         }
 
-        @Override
-        public void click(View clickedView, Listener fragmentListener) {
-            if (fragmentListener == null || intent == null) return;
-            fragmentListener.onItemClicked(intent);
+        private static int getPresence(Map<Long, DataStatus> statuses, DataItem dataItem) {
+            final DataStatus status = statuses.get(dataItem.getId());
+            return status == null ? Integer.MIN_VALUE : status.getPresence();
         }
     }
 
@@ -1641,7 +1993,7 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
             }
             viewCache.name.setText(entry.getLabel());
             viewCache.icon.setImageDrawable(entry.getIcon());
-            viewCache.primaryActionView.setOnClickListener(entry.mOnClickListener);
+            viewCache.primaryActionView.setOnClickListener(mAddConnectionClickListener);
 
             return result;
         }
@@ -1873,6 +2225,10 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
         if (mListener == null) return;
         final ViewEntry entry = mAdapter.getItem(position);
         if (entry == null) return;
+        if (entry instanceof AddConnectionViewEntry) {
+            mAddConnectionClickListener.onClick(view);
+            return;
+        }
         entry.click(view, mListener);
     }
 
@@ -1899,9 +2255,9 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
 
         // Only allow primary support for Phone and Email content types
         if (Phone.CONTENT_ITEM_TYPE.equals(selectedMimeType)) {
-            isUniqueMimeType = mIsUniqueNumber;
+            isUniqueMimeType = mDetailModel.isUniqueNumber();
         } else if (Email.CONTENT_ITEM_TYPE.equals(selectedMimeType)) {
-            isUniqueMimeType = mIsUniqueEmail;
+            isUniqueMimeType = mDetailModel.isUniqueEmail();
         }
 
         // Checking for previously set default
@@ -1980,9 +2336,10 @@ public class ContactDetailFragment extends Fragment implements FragmentKeyListen
                         mContext.startActivity(entry.intent);
                         return true;
                     }
-                } else if (mPrimaryPhoneUri != null) {
+                } else if (mDetailModel != null && mDetailModel.getPrimaryPhoneUri() != null) {
                     // There isn't anything selected, call the default number
-                    mContext.startActivity(CallUtil.getCallIntent(mPrimaryPhoneUri));
+                    mContext.startActivity(CallUtil.getCallIntent(
+                            mDetailModel.getPrimaryPhoneUri()));
                     return true;
                 }
                 return false;
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.detail;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.android.contacts.common.model.Contact;
+import com.android.contacts.common.model.ContactLoader;
+import com.android.contacts.interactions.ContactDeletionImpact;
+
+/**
+ * {@link ContactLoader} that also builds the detail entries of the loaded contact on the loader
+ * thread, so that {@link ContactDetailFragment} only has to bind them.  The deletion impact of the
+ * contact is computed along the way, so that a delete confirmation can be shown without a query.
+ */
+public class ContactDetailLoader extends ContactLoader {
+    private final ContactDetailFragment.EntryBuilder mEntryBuilder;
+
+    public ContactDetailLoader(Context context, Uri lookupUri) {
+        super(context, lookupUri, true /* loadGroupMetaData */,
+                true /* load invitable account types */, true /* postViewNotification */,
+                true /* computeFormattedPhoneNumber */);
+        mEntryBuilder = new ContactDetailFragment.EntryBuilder(getContext());
+    }
+
+    @Override
+    public Contact loadInBackground() {
+        final Contact result = super.loadInBackground();
+        if (result != null && result.isLoaded()) {
+            mEntryBuilder.prebuild(result);
+            ContactDeletionImpact.prefetch(getContext(), result);
+        }
+        return result;
+    }
+}
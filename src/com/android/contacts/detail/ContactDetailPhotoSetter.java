@@ -39,23 +39,24 @@ public class ContactDetailPhotoSetter extends ImageViewDrawableSetter {
     public OnClickListener setupContactPhotoForClick(Context context, Contact contactData,
             ImageView photoView, boolean expandPhotoOnClick) {
         setTarget(photoView);
-        Bitmap bitmap = setCompressedImage(contactData.getPhotoBinaryData());
-        return setupClickListener(context, contactData, bitmap, expandPhotoOnClick);
+        setCompressedImage(contactData.getPhotoBinaryData());
+        return setupClickListener(context, contactData, expandPhotoOnClick);
     }
 
     private static final class PhotoClickListener implements OnClickListener {
 
         private final Context mContext;
         private final Contact mContactData;
-        private final Bitmap mPhotoBitmap;
+        private final ContactDetailPhotoSetter mPhotoSetter;
         private final byte[] mPhotoBytes;
         private final boolean mExpandPhotoOnClick;
 
-        public PhotoClickListener(Context context, Contact contactData, Bitmap photoBitmap,
-                byte[] photoBytes, boolean expandPhotoOnClick) {
+        public PhotoClickListener(Context context, Contact contactData,
+                ContactDetailPhotoSetter photoSetter, byte[] photoBytes,
+                boolean expandPhotoOnClick) {
             mContext = context;
             mContactData = contactData;
-            mPhotoBitmap = photoBitmap;
+            mPhotoSetter = photoSetter;
             mPhotoBytes = photoBytes;
             mExpandPhotoOnClick = expandPhotoOnClick;
         }
@@ -65,6 +66,9 @@ public class ContactDetailPhotoSetter extends ImageViewDrawableSetter {
             // Assemble the intent.
             RawContactDeltaList delta = mContactData.createRawContactDeltaList();
 
+            // The photo is decoded asynchronously, so it may not be available yet.
+            final Bitmap photoBitmap = mPhotoSetter.getBitmapFor(mPhotoBytes);
+
             // Find location and bounds of target view, adjusting based on the
             // assumed local density.
             final float appScale =
@@ -84,24 +88,24 @@ public class ContactDetailPhotoSetter extends ImageViewDrawableSetter {
                 photoUri = Uri.parse(mContactData.getPhotoUri());
             }
             Intent photoSelectionIntent = PhotoSelectionActivity.buildIntent(mContext,
-                    photoUri, mPhotoBitmap, mPhotoBytes, rect, delta, mContactData.isUserProfile(),
+                    photoUri, photoBitmap, mPhotoBytes, rect, delta, mContactData.isUserProfile(),
                     mContactData.isDirectoryEntry(), mExpandPhotoOnClick);
             // Cache the bitmap directly, so the activity can pull it from the
             // photo manager.
-            if (mPhotoBitmap != null) {
+            if (photoBitmap != null) {
                 ContactPhotoManager.getInstance(mContext).cacheBitmap(
-                        photoUri, mPhotoBitmap, mPhotoBytes);
+                        photoUri, photoBitmap, mPhotoBytes);
             }
             mContext.startActivity(photoSelectionIntent);
         }
     }
 
-    private OnClickListener setupClickListener(Context context, Contact contactData, Bitmap bitmap,
+    private OnClickListener setupClickListener(Context context, Contact contactData,
             boolean expandPhotoOnClick) {
         final ImageView target = getTarget();
         if (target == null) return null;
 
         return new PhotoClickListener(
-                context, contactData, bitmap, getCompressedImage(), expandPhotoOnClick);
+                context, contactData, this, getCompressedImage(), expandPhotoOnClick);
     }
 }
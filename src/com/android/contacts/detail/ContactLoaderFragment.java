@@ -185,9 +185,7 @@ public class ContactLoaderFragment extends Fragment implements FragmentKeyListen
         @Override
         public Loader<Contact> onCreateLoader(int id, Bundle args) {
             Uri lookupUri = args.getParcelable(LOADER_ARG_CONTACT_URI);
-            return new ContactLoader(mContext, lookupUri, true /* loadGroupMetaData */,
-                    true /* load invitable account types */, true /* postViewNotification */,
-                    true /* computeFormattedPhoneNumber */);
+            return new ContactDetailLoader(mContext, lookupUri);
         }
 
         @Override
@@ -23,8 +23,8 @@ import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 
 import com.android.contacts.R;
-import com.android.contacts.common.model.AccountTypeManager;
 import com.android.contacts.common.model.account.AccountType;
+import com.android.contacts.util.AccountTypeSnapshot;
 import com.android.contacts.util.StreamItemEntry;
 
 import com.google.common.collect.Lists;
@@ -47,6 +47,9 @@ public class StreamItemAdapter extends BaseAdapter {
 
     private List<StreamItemEntry> mStreamItems;
 
+    /** Account types of the stream items, taken when they were set. */
+    private AccountTypeSnapshot mAccountTypes;
+
     public StreamItemAdapter(Context context, View.OnClickListener itemClickListener,
             View.OnClickListener photoClickListener) {
         mContext = context;
@@ -100,9 +103,11 @@ public class StreamItemAdapter extends BaseAdapter {
             return mInflater.inflate(R.layout.updates_header_contact, null);
         }
         final StreamItemEntry streamItem = (StreamItemEntry) getItem(position);
-        final AccountTypeManager manager = AccountTypeManager.getInstance(mContext);
+        if (mAccountTypes == null) {
+            mAccountTypes = AccountTypeSnapshot.get(mContext);
+        }
         final AccountType accountType =
-                manager.getAccountType(streamItem.getAccountType(), streamItem.getDataSet());
+                mAccountTypes.getAccountType(streamItem.getAccountType(), streamItem.getDataSet());
 
         final View view = ContactDetailDisplayUtils.createStreamItemView(
                 mInflater, mContext, convertView, streamItem,
@@ -146,6 +151,7 @@ public class StreamItemAdapter extends BaseAdapter {
 
     public void setStreamItems(List<StreamItemEntry> streamItems) {
         mStreamItems = streamItems;
+        mAccountTypes = AccountTypeSnapshot.get(mContext);
         notifyDataSetChanged();
     }
 }
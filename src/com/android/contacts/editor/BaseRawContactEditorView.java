@@ -120,6 +120,11 @@ public abstract class BaseRawContactEditorView extends LinearLayout {
     public abstract void setState(RawContactDelta state, AccountType source, ViewIdGenerator vig,
             boolean isProfile);
 
+    /**
+     * Returns the number of views inflated by the last {@link #setState} call.
+     */
+    public abstract int getInflatedViewCount();
+
     /* package */ void setExpanded(boolean value) {
         // only allow collapsing if we are one of several children
         final boolean newValue;
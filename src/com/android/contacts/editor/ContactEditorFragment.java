@@ -27,7 +27,6 @@ import android.app.LoaderManager.LoaderCallbacks;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
@@ -74,6 +73,7 @@ import com.android.contacts.common.model.account.AccountType;
 import com.android.contacts.common.model.account.AccountWithDataSet;
 import com.android.contacts.common.model.account.GoogleAccountType;
 import com.android.contacts.common.util.AccountsListAdapter;
+import com.android.contacts.common.util.Constants;
 import com.android.contacts.common.util.AccountsListAdapter.AccountListFilter;
 import com.android.contacts.detail.PhotoSelectionHandler;
 import com.android.contacts.editor.AggregationSuggestionEngine.Suggestion;
@@ -84,17 +84,20 @@ import com.android.contacts.common.model.RawContact;
 import com.android.contacts.common.model.RawContactDelta;
 import com.android.contacts.common.model.RawContactDeltaList;
 import com.android.contacts.common.model.RawContactModifier;
+import com.android.contacts.util.AccountTypeSnapshot;
 import com.android.contacts.util.ContactPhotoUtils;
 import com.android.contacts.util.HelpUtils;
 import com.android.contacts.util.UiClosables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 
 public class ContactEditorFragment extends Fragment implements
@@ -322,6 +325,9 @@ public class ContactEditorFragment extends Fragment implements
     private boolean mAutoAddToDefaultGroup;
 
     private boolean mEnabled = true;
+
+    /** Number of views inflated by the last {@link #bindEditors}. */
+    private int mInflatedViewCount;
     private boolean mRequestFocus;
     private boolean mNewLocalProfile = false;
     private boolean mIsUserProfile = false;
@@ -605,9 +611,9 @@ public class ContactEditorFragment extends Fragment implements
             return;
         }
 
-        final AccountTypeManager accountTypes = AccountTypeManager.getInstance(mContext);
+        final AccountTypeSnapshot accountTypes = AccountTypeSnapshot.get(mContext);
         for (RawContactDelta state : mState) {
-            final AccountType type = state.getAccountType(accountTypes);
+            final AccountType type = accountTypes.getAccountType(state);
             if (type.areContactsWritable()) {
                 // Apply extras to the first writable raw contact only
                 RawContactModifier.parseExtras(mContext, type, state, extras);
@@ -666,7 +672,7 @@ public class ContactEditorFragment extends Fragment implements
      * @param account may be null to signal a device-local contact should be created.
      */
     private void createContact(AccountWithDataSet account) {
-        final AccountTypeManager accountTypes = AccountTypeManager.getInstance(mContext);
+        final AccountTypeSnapshot accountTypes = AccountTypeSnapshot.get(mContext);
         final AccountType accountType =
                 accountTypes.getAccountType(account != null ? account.type : null,
                         account != null ? account.dataSet : null);
@@ -691,7 +697,7 @@ public class ContactEditorFragment extends Fragment implements
     private void rebindEditorsForNewContact(
             RawContactDelta oldState, AccountWithDataSet oldAccount,
             AccountWithDataSet newAccount) {
-        AccountTypeManager accountTypes = AccountTypeManager.getInstance(mContext);
+        AccountTypeSnapshot accountTypes = AccountTypeSnapshot.get(mContext);
         AccountType oldAccountType = accountTypes.getAccountType(
                 oldAccount.type, oldAccount.dataSet);
         AccountType newAccountType = accountTypes.getAccountType(
@@ -776,33 +782,56 @@ public class ContactEditorFragment extends Fragment implements
             return;
         }
 
+        final long bindStart = SystemClock.uptimeMillis();
+
+        // Resolve account types against one snapshot for the whole pass, sorting included
+        final AccountTypeSnapshot accountTypes = AccountTypeSnapshot.get(mContext);
+
         // Sort the editors
+        mComparator.setAccountTypes(accountTypes);
         Collections.sort(mState, mComparator);
 
-        // Remove any existing editors and rebuild any visible
+        // Remove any existing editors and rebuild any visible, reusing the editors of raw contacts
+        // that are still there
+        final HashMap<Long, BaseRawContactEditorView> oldEditors = Maps.newHashMap();
+        for (int i = 0; i < mContent.getChildCount(); i++) {
+            final View childView = mContent.getChildAt(i);
+            if (childView instanceof BaseRawContactEditorView) {
+                final BaseRawContactEditorView editor = (BaseRawContactEditorView) childView;
+                oldEditors.put(editor.getRawContactId(), editor);
+            }
+        }
         mContent.removeAllViews();
 
         final LayoutInflater inflater = (LayoutInflater) mContext.getSystemService(
                 Context.LAYOUT_INFLATER_SERVICE);
-        final AccountTypeManager accountTypes = AccountTypeManager.getInstance(mContext);
         int numRawContacts = mState.size();
+        int reusedEditorCount = 0;
+        int inflatedViewCount = 0;
 
         for (int i = 0; i < numRawContacts; i++) {
             // TODO ensure proper ordering of entities in the list
             final RawContactDelta rawContactDelta = mState.get(i);
             if (!rawContactDelta.isVisible()) continue;
 
-            final AccountType type = rawContactDelta.getAccountType(accountTypes);
+            final AccountType type = accountTypes.getAccountType(rawContactDelta);
             final long rawContactId = rawContactDelta.getRawContactId();
 
-            final BaseRawContactEditorView editor;
-            if (!type.areContactsWritable()) {
+            final boolean readOnly = !type.areContactsWritable();
+            BaseRawContactEditorView editor = oldEditors.remove(rawContactId);
+            if (editor != null && (editor instanceof RawContactReadOnlyEditorView) == readOnly) {
+                reusedEditorCount++;
+            } else if (readOnly) {
                 editor = (BaseRawContactEditorView) inflater.inflate(
                         R.layout.raw_contact_readonly_editor_view, mContent, false);
-                ((RawContactReadOnlyEditorView) editor).setListener(this);
+                inflatedViewCount++;
             } else {
                 editor = (RawContactEditorView) inflater.inflate(R.layout.raw_contact_editor_view,
                         mContent, false);
+                inflatedViewCount++;
+            }
+            if (readOnly) {
+                ((RawContactReadOnlyEditorView) editor).setListener(this);
             }
             if (mHasNewContact && !mNewLocalProfile) {
                 final List<AccountWithDataSet> accounts =
@@ -821,6 +850,7 @@ public class ContactEditorFragment extends Fragment implements
             mContent.addView(editor);
 
             editor.setState(rawContactDelta, type, mViewIdGenerator, isEditingUserProfile());
+            inflatedViewCount += editor.getInflatedViewCount();
 
             // Set up the photo handler.
             bindPhotoHandler(editor, type, mState);
@@ -872,6 +902,21 @@ public class ContactEditorFragment extends Fragment implements
         }
 
         mRequestFocus = false;
+        mInflatedViewCount = inflatedViewCount;
+
+        // Give the views of editors that are gone back to the pool
+        for (BaseRawContactEditorView editor : oldEditors.values()) {
+            if (editor instanceof RawContactEditorView) {
+                ((RawContactEditorView) editor).recycleViews();
+            }
+        }
+
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, "ContactEditorFragment.bindEditors took "
+                    + (SystemClock.uptimeMillis() - bindStart) + "ms, reused "
+                    + reusedEditorCount + " editors, inflated " + inflatedViewCount + " views");
+            EditorViewPool.from(mContext).logStats();
+        }
 
         bindGroupMetaData();
 
@@ -1308,11 +1353,11 @@ public class ContactEditorFragment extends Fragment implements
      * Returns true if there is at least one writable raw contact in the current contact.
      */
     private boolean isContactWritable() {
-        final AccountTypeManager accountTypes = AccountTypeManager.getInstance(mContext);
+        final AccountTypeSnapshot accountTypes = AccountTypeSnapshot.get(mContext);
         int size = mState.size();
         for (int i = 0; i < size; i++) {
             RawContactDelta entity = mState.get(i);
-            final AccountType type = entity.getAccountType(accountTypes);
+            final AccountType type = accountTypes.getAccountType(entity);
             if (type.areContactsWritable()) {
                 return true;
             }
@@ -1374,6 +1419,16 @@ public class ContactEditorFragment extends Fragment implements
     }
 
     private class EntityDeltaComparator implements Comparator<RawContactDelta> {
+        private AccountTypeSnapshot mAccountTypes;
+
+        /**
+         * Sets the account types to resolve against for the next sort, so that a sort does not
+         * look them up again for every comparison.
+         */
+        public void setAccountTypes(AccountTypeSnapshot accountTypes) {
+            mAccountTypes = accountTypes;
+        }
+
         /**
          * Compare EntityDeltas for sorting the stack of editors.
          */
@@ -1384,7 +1439,8 @@ public class ContactEditorFragment extends Fragment implements
                 return 0;
             }
 
-            final AccountTypeManager accountTypes = AccountTypeManager.getInstance(mContext);
+            final AccountTypeSnapshot accountTypes = mAccountTypes != null
+                    ? mAccountTypes : AccountTypeSnapshot.get(mContext);
             String accountType1 = one.getValues().getAsString(RawContacts.ACCOUNT_TYPE);
             String dataSet1 = one.getValues().getAsString(RawContacts.DATA_SET);
             final AccountType type1 = accountTypes.getAccountType(accountType1, dataSet1);
@@ -1740,6 +1796,14 @@ public class ContactEditorFragment extends Fragment implements
         mUpdatedPhotos.putParcelable(String.valueOf(rawContact), photoUri);
     }
 
+    /**
+     * Returns the number of views inflated by the last time the editors were bound.  Editors of
+     * raw contacts that were already shown are reused, so this only counts what changed.
+     */
+    public int getInflatedViewCount() {
+        return mInflatedViewCount;
+    }
+
     /**
      * Finds raw contact editor view for the given rawContactId.
      */
@@ -1831,7 +1895,7 @@ public class ContactEditorFragment extends Fragment implements
             new LoaderCallbacks<Cursor>() {
 
         @Override
-        public CursorLoader onCreateLoader(int id, Bundle args) {
+        public Loader<Cursor> onCreateLoader(int id, Bundle args) {
             return new GroupMetaDataLoader(mContext, Groups.CONTENT_URI);
         }
 
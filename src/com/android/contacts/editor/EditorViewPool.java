@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.editor;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import com.android.contacts.R;
+import com.android.contacts.common.util.Constants;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of inflated editor views, so that the contact editor doesn't have to inflate a section
+ * and a field editor for every data row each time it is bound.
+ *
+ * There is one pool per activity, because the views hold on to the context they were inflated
+ * with.  The activity owns its pool as a {@link Host}, and releases it when it is destroyed.
+ * Views are put back into the pool when their section is rebuilt or removed.  All methods must
+ * be called on the UI thread.
+ */
+public final class EditorViewPool {
+    private static final String TAG = "EditorViewPool";
+
+    /** Maximum number of views kept per layout. */
+    private static final int MAX_POOLED_VIEWS_PER_LAYOUT = 16;
+
+    /**
+     * Layouts inflated by {@link #prewarm}, with the number of views to inflate for each.  These
+     * cover the sections and field editors of a typical contact.
+     */
+    private static final int[][] PREWARM_LAYOUTS = {
+        { R.layout.item_kind_section, 8 },
+        { R.layout.text_fields_editor_view, 8 },
+        { R.layout.event_field_editor_view, 1 },
+    };
+
+    /**
+     * Implemented by the activities that host the editor and own its pool.
+     */
+    public interface Host {
+        /** Returns the pool of the activity, or null once it has been released. */
+        public EditorViewPool getEditorViewPool();
+    }
+
+    private final LayoutInflater mInflater;
+
+    /** Parent used to generate layout parameters for views inflated ahead of time. */
+    private final ViewGroup mPrewarmParent;
+
+    private final SparseArray<ArrayList<View>> mViews = new SparseArray<ArrayList<View>>();
+
+    private MessageQueue.IdleHandler mPrewarmHandler;
+    private boolean mReleased;
+
+    private int mReusedCount;
+    private int mMissedCount;
+
+    public EditorViewPool(Context context) {
+        mInflater = LayoutInflater.from(context);
+        mPrewarmParent = new LinearLayout(context);
+    }
+
+    /**
+     * Returns the pool of the activity of the given context.  If the activity isn't a
+     * {@link Host}, or has released its pool, a new pool is returned that is only shared by the
+     * views holding on to it.
+     */
+    public static EditorViewPool from(Context context) {
+        Context baseContext = context;
+        while (baseContext instanceof ContextWrapper) {
+            if (baseContext instanceof Host) {
+                final EditorViewPool pool = ((Host) baseContext).getEditorViewPool();
+                if (pool != null) {
+                    return pool;
+                }
+                break;
+            }
+            baseContext = ((ContextWrapper) baseContext).getBaseContext();
+        }
+        return new EditorViewPool(context);
+    }
+
+    /**
+     * Inflates the views commonly needed by the editor while the UI thread is idle, one view
+     * per idle pass, so that the first bind of the editor finds them in the pool.
+     */
+    public void prewarm() {
+        if (mReleased || mPrewarmHandler != null) {
+            return;
+        }
+        mPrewarmHandler = new MessageQueue.IdleHandler() {
+            private int mLayoutIndex;
+
+            @Override
+            public boolean queueIdle() {
+                while (!mReleased && mLayoutIndex < PREWARM_LAYOUTS.length) {
+                    final int layoutResId = PREWARM_LAYOUTS[mLayoutIndex][0];
+                    final int count = PREWARM_LAYOUTS[mLayoutIndex][1];
+                    if (getPooledCount(layoutResId) < count) {
+                        put(layoutResId, mInflater.inflate(layoutResId, mPrewarmParent, false));
+                        return true;
+                    }
+                    mLayoutIndex++;
+                }
+                mPrewarmHandler = null;
+                return false;
+            }
+        };
+        Looper.myQueue().addIdleHandler(mPrewarmHandler);
+    }
+
+    /**
+     * Stops inflating views ahead of time and drops the pooled views.  Called when the activity
+     * is destroyed; views recycled afterwards are dropped as well.
+     */
+    public void release() {
+        mReleased = true;
+        if (mPrewarmHandler != null) {
+            Looper.myQueue().removeIdleHandler(mPrewarmHandler);
+            mPrewarmHandler = null;
+        }
+        mViews.clear();
+    }
+
+    /**
+     * Takes a view of the given layout out of the pool, or returns null if the pool has none, in
+     * which case the caller inflates it.
+     */
+    public View obtain(int layoutResId) {
+        final ArrayList<View> views = mViews.get(layoutResId);
+        if (views != null && !views.isEmpty()) {
+            mReusedCount++;
+            return views.remove(views.size() - 1);
+        }
+        mMissedCount++;
+        return null;
+    }
+
+    /**
+     * Puts a view of the given layout back into the pool.  The view must already be detached
+     * from its parent; views that are still animating are dropped.
+     */
+    public void recycle(int layoutResId, View view) {
+        if (mReleased || view.getParent() != null || view.getAlpha() != 1.0f
+                || view.getTranslationY() != 0.0f) {
+            return;
+        }
+        if (getPooledCount(layoutResId) < MAX_POOLED_VIEWS_PER_LAYOUT) {
+            put(layoutResId, view);
+        }
+    }
+
+    private void put(int layoutResId, View view) {
+        ArrayList<View> views = mViews.get(layoutResId);
+        if (views == null) {
+            views = new ArrayList<View>();
+            mViews.put(layoutResId, views);
+        }
+        views.add(view);
+    }
+
+    private int getPooledCount(int layoutResId) {
+        final ArrayList<View> views = mViews.get(layoutResId);
+        return views == null ? 0 : views.size();
+    }
+
+    /**
+     * Logs how many views were taken from the pool and how many weren't available.
+     */
+    public void logStats() {
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, TAG + ": reused " + mReusedCount
+                    + " views, missed " + mMissedCount + " views");
+        }
+    }
+}
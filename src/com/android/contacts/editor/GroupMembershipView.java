@@ -35,7 +35,9 @@ import android.widget.ListPopupWindow;
 import android.widget.ListView;
 import android.widget.TextView;
 
-import com.android.contacts.GroupMetaDataLoader;
+import com.android.contacts.GroupMetaDataIndex;
+import com.android.contacts.GroupMetaDataIndex.AccountGroups;
+import com.android.contacts.GroupMetaDataIndex.Group;
 import com.android.contacts.R;
 import com.android.contacts.common.model.dataitem.DataKind;
 import com.android.contacts.interactions.GroupCreationDialogFragment;
@@ -43,8 +45,8 @@ import com.android.contacts.interactions.GroupCreationDialogFragment.OnGroupCrea
 import com.android.contacts.common.model.RawContactDelta;
 import com.android.contacts.common.model.ValuesDelta;
 import com.android.contacts.common.model.RawContactModifier;
+import com.android.contacts.util.LongHashSet;
 import com.android.contacts.util.UiClosables;
-import com.google.common.base.Objects;
 
 import java.util.ArrayList;
 
@@ -128,7 +130,13 @@ public class GroupMembershipView extends LinearLayout
     }
 
     private RawContactDelta mState;
-    private Cursor mGroupMetaData;
+    private GroupMetaDataIndex mGroupMetaData;
+    /** Groups of the raw contact's account in {@link #mGroupMetaData}. */
+    private AccountGroups mAccountGroups;
+    /** IDs of the groups the raw contact is currently a member of. */
+    private final LongHashSet mMemberships = new LongHashSet();
+    /** IDs of the groups checked in the popup. */
+    private final LongHashSet mCheckedGroupIds = new LongHashSet();
     private String mAccountName;
     private String mAccountType;
     private String mDataSet;
@@ -178,7 +186,8 @@ public class GroupMembershipView extends LinearLayout
     }
 
     public void setGroupMetaData(Cursor groupMetaData) {
-        this.mGroupMetaData = groupMetaData;
+        this.mGroupMetaData = GroupMetaDataIndex.forCursor(groupMetaData);
+        updateAccountGroups();
         updateView();
         // Open up the list of groups if a new group was just created.
         if (mCreatedNewGroup) {
@@ -204,55 +213,66 @@ public class GroupMembershipView extends LinearLayout
         mDataSet = mState.getDataSet();
         mDefaultGroupVisibilityKnown = false;
         mCreatedNewGroup = false;
+        updateAccountGroups();
         updateView();
     }
 
+    private void updateAccountGroups() {
+        if (mGroupMetaData == null || mAccountType == null || mAccountName == null) {
+            mAccountGroups = null;
+            mFavoritesGroupId = 0;
+            mDefaultGroupId = 0;
+            return;
+        }
+        mAccountGroups = mGroupMetaData.getAccountGroups(mAccountName, mAccountType, mDataSet);
+        mFavoritesGroupId = mAccountGroups.getFavoritesGroupId();
+        mDefaultGroupId = mAccountGroups.getDefaultGroupId();
+    }
+
+    /**
+     * Collects the groups the raw contact is a member of from its group membership entries.
+     */
+    private void updateMemberships() {
+        mMemberships.clear();
+        ArrayList<ValuesDelta> entries = mState.getMimeEntries(GroupMembership.CONTENT_ITEM_TYPE);
+        if (entries != null) {
+            for (ValuesDelta values : entries) {
+                if (!values.isDelete()) {
+                    Long id = values.getGroupRowId();
+                    if (id != null) {
+                        mMemberships.add(id);
+                    }
+                }
+            }
+        }
+    }
+
     private void updateView() {
-        if (mGroupMetaData == null || mGroupMetaData.isClosed() || mAccountType == null
-                || mAccountName == null) {
+        if (mAccountGroups == null) {
             setVisibility(GONE);
             return;
         }
 
-        boolean accountHasGroups = false;
-        mFavoritesGroupId = 0;
-        mDefaultGroupId = 0;
+        updateMemberships();
 
         StringBuilder sb = new StringBuilder();
-        mGroupMetaData.moveToPosition(-1);
-        while (mGroupMetaData.moveToNext()) {
-            String accountName = mGroupMetaData.getString(GroupMetaDataLoader.ACCOUNT_NAME);
-            String accountType = mGroupMetaData.getString(GroupMetaDataLoader.ACCOUNT_TYPE);
-            String dataSet = mGroupMetaData.getString(GroupMetaDataLoader.DATA_SET);
-            if (accountName.equals(mAccountName) && accountType.equals(mAccountType)
-                    && Objects.equal(dataSet, mDataSet)) {
-                long groupId = mGroupMetaData.getLong(GroupMetaDataLoader.GROUP_ID);
-                if (!mGroupMetaData.isNull(GroupMetaDataLoader.FAVORITES)
-                        && mGroupMetaData.getInt(GroupMetaDataLoader.FAVORITES) != 0) {
-                    mFavoritesGroupId = groupId;
-                } else if (!mGroupMetaData.isNull(GroupMetaDataLoader.AUTO_ADD)
-                            && mGroupMetaData.getInt(GroupMetaDataLoader.AUTO_ADD) != 0) {
-                    mDefaultGroupId = groupId;
-                } else {
-                    accountHasGroups = true;
-                }
-
-                // Exclude favorites from the list - they are handled with special UI (star)
-                // Also exclude the default group.
-                if (groupId != mFavoritesGroupId && groupId != mDefaultGroupId
-                        && hasMembership(groupId)) {
-                    String title = mGroupMetaData.getString(GroupMetaDataLoader.TITLE);
-                    if (!TextUtils.isEmpty(title)) {
-                        if (sb.length() != 0) {
-                            sb.append(", ");
-                        }
-                        sb.append(title);
+        for (Group group : mAccountGroups.getGroups()) {
+            long groupId = group.getGroupId();
+            // Exclude favorites from the list - they are handled with special UI (star)
+            // Also exclude the default group.
+            if (groupId != mFavoritesGroupId && groupId != mDefaultGroupId
+                    && hasMembership(groupId)) {
+                String title = group.getTitle();
+                if (!TextUtils.isEmpty(title)) {
+                    if (sb.length() != 0) {
+                        sb.append(", ");
                     }
+                    sb.append(title);
                 }
             }
         }
 
-        if (!accountHasGroups) {
+        if (!mAccountGroups.hasGroups()) {
             setVisibility(GONE);
             return;
         }
@@ -288,20 +308,13 @@ public class GroupMembershipView extends LinearLayout
         mAdapter = new GroupMembershipAdapter<GroupSelectionItem>(
                 getContext(), R.layout.group_membership_list_item);
 
-        mGroupMetaData.moveToPosition(-1);
-        while (mGroupMetaData.moveToNext()) {
-            String accountName = mGroupMetaData.getString(GroupMetaDataLoader.ACCOUNT_NAME);
-            String accountType = mGroupMetaData.getString(GroupMetaDataLoader.ACCOUNT_TYPE);
-            String dataSet = mGroupMetaData.getString(GroupMetaDataLoader.DATA_SET);
-            if (accountName.equals(mAccountName) && accountType.equals(mAccountType)
-                    && Objects.equal(dataSet, mDataSet)) {
-                long groupId = mGroupMetaData.getLong(GroupMetaDataLoader.GROUP_ID);
-                if (groupId != mFavoritesGroupId
-                        && (groupId != mDefaultGroupId || mDefaultGroupVisible)) {
-                    String title = mGroupMetaData.getString(GroupMetaDataLoader.TITLE);
-                    boolean checked = hasMembership(groupId);
-                    mAdapter.add(new GroupSelectionItem(groupId, title, checked));
-                }
+        updateMemberships();
+        for (Group group : mAccountGroups.getGroups()) {
+            long groupId = group.getGroupId();
+            if (groupId != mFavoritesGroupId
+                    && (groupId != mDefaultGroupId || mDefaultGroupVisible)) {
+                boolean checked = hasMembership(groupId);
+                mAdapter.add(new GroupSelectionItem(groupId, group.getTitle(), checked));
             }
         }
 
@@ -344,8 +357,13 @@ public class GroupMembershipView extends LinearLayout
             return;
         }
 
+        mCheckedGroupIds.clear();
         for (int i = 0; i < count; i++) {
-            mAdapter.getItem(i).setChecked(list.isItemChecked(i));
+            GroupSelectionItem item = mAdapter.getItem(i);
+            item.setChecked(list.isItemChecked(i));
+            if (item.isChecked()) {
+                mCheckedGroupIds.add(item.getGroupId());
+            }
         }
 
         // First remove the memberships that have been unchecked
@@ -358,6 +376,7 @@ public class GroupMembershipView extends LinearLayout
                             && (groupId != mDefaultGroupId || mDefaultGroupVisible)
                             && !isGroupChecked(groupId)) {
                         entry.markDeleted();
+                        mMemberships.remove(groupId);
                     }
                 }
             }
@@ -370,6 +389,7 @@ public class GroupMembershipView extends LinearLayout
             if (item.isChecked() && !hasMembership(groupId)) {
                 ValuesDelta entry = RawContactModifier.insertChild(mState, mKind);
                 entry.setGroupRowId(groupId);
+                mMemberships.add(groupId);
             }
         }
 
@@ -377,33 +397,18 @@ public class GroupMembershipView extends LinearLayout
     }
 
     private boolean isGroupChecked(long groupId) {
-        int count = mAdapter.getCount();
-        for (int i = 0; i < count; i++) {
-            GroupSelectionItem item = mAdapter.getItem(i);
-            if (groupId == item.getGroupId()) {
-                return item.isChecked();
-            }
-        }
-        return false;
+        return mCheckedGroupIds.contains(groupId);
     }
 
+    /**
+     * Returns whether the raw contact is a member of the given group, as of the last
+     * {@link #updateMemberships}.
+     */
     private boolean hasMembership(long groupId) {
         if (groupId == mDefaultGroupId && mState.isContactInsert()) {
             return true;
         }
-
-        ArrayList<ValuesDelta> entries = mState.getMimeEntries(GroupMembership.CONTENT_ITEM_TYPE);
-        if (entries != null) {
-            for (ValuesDelta values : entries) {
-                if (!values.isDelete()) {
-                    Long id = values.getGroupRowId();
-                    if (id != null && id == groupId) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return mMemberships.contains(groupId);
     }
 
     private void createNewGroup() {
@@ -55,7 +55,14 @@ public class KindSectionView extends LinearLayout implements EditorListener {
 
     private ViewIdGenerator mViewIdGenerator;
 
+    /** Number of editor views inflated since the last {@link #setState} call. */
+    private int mInflatedViewCount;
+
     private LayoutInflater mInflater;
+    private EditorViewPool mViewPool;
+
+    /** Layout of the editor views in {@link #mEditors}. */
+    private int mEditorLayoutResId;
 
     private final ArrayList<Runnable> mRunWhenWindowFocused = new ArrayList<Runnable>(1);
 
@@ -95,6 +102,7 @@ public class KindSectionView extends LinearLayout implements EditorListener {
         setAlwaysDrawnWithCacheEnabled(true);
 
         mInflater = (LayoutInflater) mContext.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        mViewPool = EditorViewPool.from(mContext);
 
         mTitle = (TextView) findViewById(R.id.kind_title);
         mEditors = (ViewGroup) findViewById(R.id.kind_editors);
@@ -135,6 +143,7 @@ public class KindSectionView extends LinearLayout implements EditorListener {
         mState = state;
         mReadOnly = readOnly;
         mViewIdGenerator = vig;
+        mInflatedViewCount = 0;
 
         setId(mViewIdGenerator.getId(state, kind, null, ViewIdGenerator.NO_VIEW_INDEX));
 
@@ -157,12 +166,49 @@ public class KindSectionView extends LinearLayout implements EditorListener {
         findViewById(R.id.kind_title_layout).setVisibility(visible ? View.VISIBLE : View.GONE);
     }
 
+    /**
+     * Returns the number of editor views inflated since the last {@link #setState} call.
+     */
+    public int getInflatedViewCount() {
+        return mInflatedViewCount;
+    }
+
+    /**
+     * Returns true if the editors of this section are those {@link #rebuildFromState} would
+     * build for the given state, so that it doesn't need to be bound again.
+     */
+    public boolean isBoundTo(RawContactDelta state, ViewIdGenerator vig) {
+        if (state != mState || vig != mViewIdGenerator) {
+            return false;
+        }
+
+        final int editorCount = mEditors.getChildCount();
+        int editorIndex = 0;
+        final ArrayList<ValuesDelta> entries = mState.getMimeEntries(mKind.mimeType);
+        if (entries != null) {
+            for (ValuesDelta entry : entries) {
+                if (!entry.isVisible()) continue;
+                if (isEmptyNoop(entry)) continue;
+
+                if (editorIndex == editorCount) {
+                    return false;
+                }
+                final View view = mEditors.getChildAt(editorIndex++);
+                if (!(view instanceof LabeledEditorView)
+                        || ((LabeledEditorView) view).getEntry() != entry) {
+                    return false;
+                }
+            }
+        }
+        return editorIndex == editorCount;
+    }
+
     /**
      * Build editors for all current {@link #mState} rows.
      */
     public void rebuildFromState() {
         // Remove any existing editors
-        mEditors.removeAllViews();
+        recycleEditors();
 
         // Check if we are displaying anything here
         boolean hasEntries = mState.hasMimeEntries(mKind.mimeType);
@@ -179,22 +225,42 @@ public class KindSectionView extends LinearLayout implements EditorListener {
     }
 
 
+    /**
+     * Removes all editors, putting their views back into the {@link EditorViewPool}.
+     */
+    public void recycleEditors() {
+        final int count = mEditors.getChildCount();
+        final View[] editorViews = new View[count];
+        for (int i = 0; i < count; i++) {
+            editorViews[i] = mEditors.getChildAt(i);
+        }
+        mEditors.removeAllViews();
+        mRunWhenWindowFocused.clear();
+        for (View editorView : editorViews) {
+            mViewPool.recycle(mEditorLayoutResId, editorView);
+        }
+    }
+
     /**
      * Creates an EditorView for the given entry. This function must be used while constructing
      * the views corresponding to the the object-model. The resulting EditorView is also added
      * to the end of mEditors
      */
     private View createEditorView(ValuesDelta entry) {
-        final View view;
         final int layoutResId = EditorUiUtils.getLayoutResourceId(mKind.mimeType);
-        try {
-            view = mInflater.inflate(layoutResId, mEditors, false);
-        } catch (Exception e) {
-            throw new RuntimeException(
-                    "Cannot allocate editor with layout resource ID " +
-                    layoutResId + " for MIME type " + mKind.mimeType +
-                    " with error " + e.toString());
+        View view = mViewPool.obtain(layoutResId);
+        if (view == null) {
+            try {
+                view = mInflater.inflate(layoutResId, mEditors, false);
+                mInflatedViewCount++;
+            } catch (Exception e) {
+                throw new RuntimeException(
+                        "Cannot allocate editor with layout resource ID " +
+                        layoutResId + " for MIME type " + mKind.mimeType +
+                        " with error " + e.toString());
+            }
         }
+        mEditorLayoutResId = layoutResId;
 
         view.setEnabled(isEnabled());
 
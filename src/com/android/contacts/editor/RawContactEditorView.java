@@ -38,7 +38,7 @@ import android.widget.ImageView;
 import android.widget.PopupMenu;
 import android.widget.TextView;
 
-import com.android.contacts.GroupMetaDataLoader;
+import com.android.contacts.GroupMetaDataIndex;
 import com.android.contacts.R;
 import com.android.contacts.common.model.account.AccountType;
 import com.android.contacts.common.model.account.AccountType.EditType;
@@ -46,7 +46,6 @@ import com.android.contacts.common.model.dataitem.DataKind;
 import com.android.contacts.common.model.RawContactDelta;
 import com.android.contacts.common.model.ValuesDelta;
 import com.android.contacts.common.model.RawContactModifier;
-import com.google.common.base.Objects;
 
 import java.util.ArrayList;
 
@@ -66,6 +65,7 @@ public class RawContactEditorView extends BaseRawContactEditorView {
     private static final String KEY_SUPER_INSTANCE_STATE = "superInstanceState";
 
     private LayoutInflater mInflater;
+    private EditorViewPool mViewPool;
 
     private StructuredNameEditorView mName;
     private PhoneticNameEditorView mPhoneticName;
@@ -89,6 +89,10 @@ public class RawContactEditorView extends BaseRawContactEditorView {
     private Cursor mGroupMetaData;
     private DataKind mGroupMembershipKind;
     private RawContactDelta mState;
+    private AccountType mType;
+    private ViewIdGenerator mViewIdGenerator;
+    private boolean mIsProfile;
+    private int mInflatedViewCount;
 
     private boolean mPhoneticNameAdded;
 
@@ -136,6 +140,7 @@ public class RawContactEditorView extends BaseRawContactEditorView {
         super.onFinishInflate();
 
         mInflater = (LayoutInflater)getContext().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        mViewPool = EditorViewPool.from(getContext());
 
         mName = (StructuredNameEditorView)findViewById(R.id.edit_name);
         mName.setDeletable(false);
@@ -202,11 +207,22 @@ public class RawContactEditorView extends BaseRawContactEditorView {
     @Override
     public void setState(RawContactDelta state, AccountType type, ViewIdGenerator vig,
             boolean isProfile) {
+        final boolean sameState = state != null && state == mState && type == mType
+                && vig == mViewIdGenerator && isProfile == mIsProfile;
 
         mState = state;
+        mType = type;
+        mViewIdGenerator = vig;
+        mIsProfile = isProfile;
+        mInflatedViewCount = 0;
+
+        // If this editor is already bound to the state, only rebind what changed
+        if (sameState && rebindChangedSections()) {
+            return;
+        }
 
         // Remove any existing sections
-        mFields.removeAllViews();
+        recycleViews();
 
         // Bail if invalid state or account type
         if (state == null || type == null) return;
@@ -264,9 +280,11 @@ public class RawContactEditorView extends BaseRawContactEditorView {
         mPhoneticName.setVisibility(View.VISIBLE);
 
         mGroupMembershipKind = type.getKindForMimetype(GroupMembership.CONTENT_ITEM_TYPE);
+        mGroupMembershipView = null;
         if (mGroupMembershipKind != null) {
             mGroupMembershipView = (GroupMembershipView)mInflater.inflate(
                     R.layout.item_group_membership, mFields, false);
+            mInflatedViewCount++;
             mGroupMembershipView.setKind(mGroupMembershipKind);
             mGroupMembershipView.setEnabled(isEnabled());
         }
@@ -301,6 +319,7 @@ public class RawContactEditorView extends BaseRawContactEditorView {
                 section.setTitleVisible(false);
                 section.setEnabled(isEnabled());
                 section.setState(kind, state, false, vig);
+                mInflatedViewCount += 1 + section.getInflatedViewCount();
 
                 // If there is organization info for the contact already, display it
                 if (!section.isEmpty()) {
@@ -328,10 +347,16 @@ public class RawContactEditorView extends BaseRawContactEditorView {
             } else {
                 // Otherwise use generic section-based editors
                 if (kind.fieldList == null) continue;
-                final KindSectionView section = (KindSectionView)mInflater.inflate(
-                        R.layout.item_kind_section, mFields, false);
+                KindSectionView section = (KindSectionView) mViewPool.obtain(
+                        R.layout.item_kind_section);
+                if (section == null) {
+                    section = (KindSectionView) mInflater.inflate(
+                            R.layout.item_kind_section, mFields, false);
+                    mInflatedViewCount++;
+                }
                 section.setEnabled(isEnabled());
                 section.setState(kind, state, false, vig);
+                mInflatedViewCount += section.getInflatedViewCount();
                 mFields.addView(section);
             }
         }
@@ -350,6 +375,111 @@ public class RawContactEditorView extends BaseRawContactEditorView {
         mAddFieldButton.setEnabled(isEnabled());
     }
 
+    /**
+     * Rebinds the editors of {@link #mState} whose entries changed since the last
+     * {@link #setState}, keeping the views of the others.  Returns false if the layout of the
+     * sections has to change, in which case nothing is rebound.
+     */
+    private boolean rebindChangedSections() {
+        final RawContactDelta state = mState;
+        final AccountType type = mType;
+        final ViewIdGenerator vig = mViewIdGenerator;
+
+        RawContactModifier.ensureKindExists(state, type, StructuredName.CONTENT_ITEM_TYPE);
+        RawContactModifier.ensureKindExists(state, type, Organization.CONTENT_ITEM_TYPE);
+        RawContactModifier.ensureKindExists(state, type, Photo.CONTENT_ITEM_TYPE);
+
+        // The organization section is shown in place only if it has data, so it can't be rebound
+        // if that changes.
+        final KindSectionView organizationSection = getOrganizationSection();
+        if (organizationSection != null && !organizationSection.isBoundTo(state, vig)) {
+            return false;
+        }
+
+        // The phonetic name editor wraps the same entry as the name editor
+        final ValuesDelta primaryName = state.getPrimaryEntry(StructuredName.CONTENT_ITEM_TYPE);
+        if (mName.getEntry() != primaryName) {
+            mName.setValues(type.getKindForMimetype(DataKind.PSEUDO_MIME_TYPE_DISPLAY_NAME),
+                    primaryName, state, false, vig);
+            mPhoneticName.setValues(
+                    type.getKindForMimetype(DataKind.PSEUDO_MIME_TYPE_PHONETIC_NAME),
+                    primaryName, state, false, vig);
+        }
+
+        // The photo is what usually changes, and has no views to inflate
+        final DataKind photoKind = type.getKindForMimetype(Photo.CONTENT_ITEM_TYPE);
+        if (photoKind != null) {
+            getPhotoEditor().setValues(photoKind, state.getPrimaryEntry(Photo.CONTENT_ITEM_TYPE),
+                    state, false, vig);
+        }
+
+        for (int i = 0; i < mFields.getChildCount(); i++) {
+            final View child = mFields.getChildAt(i);
+            if (child instanceof KindSectionView) {
+                final KindSectionView section = (KindSectionView) child;
+                if (!section.isBoundTo(state, vig)) {
+                    section.setState(section.getKind(), state, false, vig);
+                    mInflatedViewCount += section.getInflatedViewCount();
+                }
+            }
+        }
+
+        if (mGroupMembershipView != null) {
+            mGroupMembershipView.setState(state);
+        }
+
+        updatePhoneticNameVisibility();
+        addToDefaultGroupIfNeeded();
+
+        final int sectionCount = getSectionViewsWithoutFields().size();
+        mAddFieldButton.setVisibility(sectionCount > 0 ? View.VISIBLE : View.GONE);
+        return true;
+    }
+
+    /**
+     * Removes all sections, putting the views of the generic ones and of their editors back into
+     * the {@link EditorViewPool}.  The organization section is never pooled because it is set up
+     * differently.
+     */
+    public void recycleViews() {
+        final ArrayList<KindSectionView> sections = new ArrayList<KindSectionView>();
+        for (int i = 0; i < mFields.getChildCount(); i++) {
+            final View child = mFields.getChildAt(i);
+            if (child instanceof KindSectionView && !Organization.CONTENT_ITEM_TYPE.equals(
+                    ((KindSectionView) child).getKind().mimeType)) {
+                sections.add((KindSectionView) child);
+            }
+        }
+        mFields.removeAllViews();
+        for (KindSectionView section : sections) {
+            section.recycleEditors();
+            mViewPool.recycle(R.layout.item_kind_section, section);
+        }
+    }
+
+    /**
+     * Returns the section of the organization editors, whether it is shown in place or behind
+     * the "add organization" button, or null if there is none.
+     */
+    private KindSectionView getOrganizationSection() {
+        for (int i = 0; i < mFields.getChildCount(); i++) {
+            final View child = mFields.getChildAt(i);
+            if (child instanceof KindSectionView && Organization.CONTENT_ITEM_TYPE.equals(
+                    ((KindSectionView) child).getKind().mimeType)) {
+                return (KindSectionView) child;
+            }
+        }
+        if (mOrganizationSectionViewContainer.getChildCount() > 0) {
+            return (KindSectionView) mOrganizationSectionViewContainer.getChildAt(0);
+        }
+        return null;
+    }
+
+    @Override
+    public int getInflatedViewCount() {
+        return mInflatedViewCount;
+    }
+
     @Override
     public void setGroupMetaData(Cursor groupMetaData) {
         mGroupMetaData = groupMetaData;
@@ -401,24 +531,10 @@ public class RawContactEditorView extends BaseRawContactEditorView {
      * account.  Returns -1 if there is no such group.
      */
     private long getDefaultGroupId() {
-        String accountType = mState.getAccountType();
-        String accountName = mState.getAccountName();
-        String accountDataSet = mState.getDataSet();
-        mGroupMetaData.moveToPosition(-1);
-        while (mGroupMetaData.moveToNext()) {
-            String name = mGroupMetaData.getString(GroupMetaDataLoader.ACCOUNT_NAME);
-            String type = mGroupMetaData.getString(GroupMetaDataLoader.ACCOUNT_TYPE);
-            String dataSet = mGroupMetaData.getString(GroupMetaDataLoader.DATA_SET);
-            if (name.equals(accountName) && type.equals(accountType)
-                    && Objects.equal(dataSet, accountDataSet)) {
-                long groupId = mGroupMetaData.getLong(GroupMetaDataLoader.GROUP_ID);
-                if (!mGroupMetaData.isNull(GroupMetaDataLoader.AUTO_ADD)
-                            && mGroupMetaData.getInt(GroupMetaDataLoader.AUTO_ADD) != 0) {
-                    return groupId;
-                }
-            }
-        }
-        return -1;
+        final GroupMetaDataIndex index = GroupMetaDataIndex.forCursor(mGroupMetaData);
+        final long groupId = index.getAccountGroups(mState.getAccountName(),
+                mState.getAccountType(), mState.getDataSet()).getDefaultGroupId();
+        return groupId != 0 ? groupId : -1;
     }
 
     public StructuredNameEditorView getNameEditor() {
@@ -68,6 +68,7 @@ public class RawContactReadOnlyEditorView extends BaseRawContactEditorView
     private String mAccountType;
     private String mDataSet;
     private long mRawContactId = -1;
+    private int mInflatedViewCount;
 
     private Listener mListener;
 
@@ -116,6 +117,7 @@ public class RawContactReadOnlyEditorView extends BaseRawContactEditorView
             boolean isProfile) {
         // Remove any existing sections
         mGeneral.removeAllViews();
+        mInflatedViewCount = 0;
 
         // Bail if invalid state or source
         if (state == null || type == null) return;
@@ -251,6 +253,7 @@ public class RawContactReadOnlyEditorView extends BaseRawContactEditorView
     private void bindData(CharSequence titleText, CharSequence data, CharSequence type,
             boolean isFirstEntry, boolean forceLTR) {
         final View field = mInflater.inflate(R.layout.item_read_only_field, mGeneral, false);
+        mInflatedViewCount++;
         final View divider = field.findViewById(R.id.divider);
         if (isFirstEntry) {
             final TextView titleView = (TextView) field.findViewById(R.id.kind_title);
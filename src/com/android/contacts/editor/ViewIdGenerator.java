@@ -16,7 +16,6 @@
 
 package com.android.contacts.editor;
 
-import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
 
@@ -24,12 +23,17 @@ import com.android.contacts.common.model.RawContactDelta;
 import com.android.contacts.common.model.ValuesDelta;
 import com.android.contacts.common.model.dataitem.DataKind;
 
+import java.util.ArrayList;
+
 /**
  * A class that provides unique view ids for {@link ContentEditorView}, {@link KindSectionView},
  * {@link LabeledEditorView} and {@link EditView} on {@link EditContactActivity}.
  * It is used to assign a unique but consistent id to each view across {@link EditContactActivity}'s
  * lifecycle, so that we can re-construct view state (e.g. focused view) when the screen rotates.
  *
+ * <p>Ids are kept in an open-addressed hash table keyed directly by the raw contact ID, the
+ * MIME type, the data ID and the view index, so that looking up an id doesn't allocate.
+ *
  * <p>This class is not thread safe.
  */
 public final class ViewIdGenerator implements Parcelable {
@@ -38,20 +42,49 @@ public final class ViewIdGenerator implements Parcelable {
 
     public static final int NO_VIEW_INDEX = -1;
 
-    private int mNextId;
+    private static final int INITIAL_CAPACITY = 64;
 
     /**
-     * Used as a map from the "key" of the views to actual ids.  {@link #getId()} generates keys for
-     * the views.
+     * Flags of a key, telling which of its parts are present.  A part is only present if the
+     * ones before it are, e.g. the data ID is only part of the key if there is a kind.
      */
-    private Bundle mIdMap = new Bundle();
+    private static final int HAS_ENTITY = 1;
+    private static final int HAS_RAW_CONTACT_ID = 1 << 1;
+    private static final int HAS_KIND = 1 << 2;
+    private static final int HAS_VALUES = 1 << 3;
+    private static final int HAS_DATA_ID = 1 << 4;
+    private static final int HAS_VIEW_INDEX = 1 << 5;
 
-    private static final char KEY_SEPARATOR = '*';
+    private int mNextId;
 
-    private final static StringBuilder sWorkStringBuilder = new StringBuilder();
+    /** MIME types of the keys, a key refers to its MIME type by index in this list. */
+    private ArrayList<String> mMimeTypes = new ArrayList<String>();
+
+    /**
+     * Hash table from keys to ids.  Slot {@code i} is used if {@code mIds[i]} is not
+     * {@link #INVALID_VIEW_ID}, its key is made of the other arrays at the same index.
+     */
+    private int[] mFlags;
+    private long[] mRawContactIds;
+    private int[] mMimeTypeIndexes;
+    private long[] mDataIds;
+    private int[] mViewIndexes;
+    private int[] mIds;
+    private int mSize;
 
     public ViewIdGenerator() {
         mNextId = INITIAL_VIEW_ID;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        mFlags = new int[capacity];
+        mRawContactIds = new long[capacity];
+        mMimeTypeIndexes = new int[capacity];
+        mDataIds = new long[capacity];
+        mViewIndexes = new int[capacity];
+        mIds = new int[capacity];
+        mSize = 0;
     }
 
     /** {@inheritDoc} */
@@ -70,50 +103,166 @@ public final class ViewIdGenerator implements Parcelable {
      */
     public int getId(RawContactDelta entity, DataKind kind, ValuesDelta values,
             int viewIndex) {
-        final String k = getMapKey(entity, kind, values, viewIndex);
+        int flags = 0;
+        long rawContactId = 0;
+        int mimeTypeIndex = 0;
+        long dataId = 0;
+        int index = 0;
+        if (entity != null) {
+            flags |= HAS_ENTITY;
+            final Long id = entity.getValues().getId();
+            if (id != null) {
+                flags |= HAS_RAW_CONTACT_ID;
+                rawContactId = id;
+            }
+
+            if (kind != null) {
+                flags |= HAS_KIND;
+                mimeTypeIndex = getMimeTypeIndex(kind.mimeType);
 
-        int id = mIdMap.getInt(k, INVALID_VIEW_ID);
+                if (values != null) {
+                    flags |= HAS_VALUES;
+                    final Long valuesId = values.getId();
+                    if (valuesId != null) {
+                        flags |= HAS_DATA_ID;
+                        dataId = valuesId;
+                    }
+
+                    if (viewIndex != NO_VIEW_INDEX) {
+                        flags |= HAS_VIEW_INDEX;
+                        index = viewIndex;
+                    }
+                }
+            }
+        }
+
+        final int slot = findSlot(flags, rawContactId, mimeTypeIndex, dataId, index);
+        int id = mIds[slot];
         if (id == INVALID_VIEW_ID) {
             // Make sure the new id won't conflict with auto-generated ids by masking with 0xffff.
             id = (mNextId++) & 0xFFFF;
-            mIdMap.putInt(k, id);
+            if (id == INVALID_VIEW_ID) {
+                // Wrapped around; INVALID_VIEW_ID marks free slots of the table.
+                id = (mNextId++) & 0xFFFF;
+            }
+            put(slot, flags, rawContactId, mimeTypeIndex, dataId, index, id);
         }
         return id;
     }
 
-    private static String getMapKey(RawContactDelta entity, DataKind kind, ValuesDelta values,
-            int viewIndex) {
-        sWorkStringBuilder.setLength(0);
-        if (entity != null) {
-            sWorkStringBuilder.append(entity.getValues().getId());
+    private int getMimeTypeIndex(String mimeType) {
+        final int count = mMimeTypes.size();
+        // MIME types are usually the same constants, so compare references first
+        for (int i = 0; i < count; i++) {
+            if (mMimeTypes.get(i) == mimeType) {
+                return i;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            final String other = mMimeTypes.get(i);
+            if (other != null && other.equals(mimeType)) {
+                return i;
+            }
+        }
+        mMimeTypes.add(mimeType);
+        return count;
+    }
 
-            if (kind != null) {
-                sWorkStringBuilder.append(KEY_SEPARATOR);
-                sWorkStringBuilder.append(kind.mimeType);
+    /**
+     * Returns the slot of the given key, or the free slot where it would be added.
+     */
+    private int findSlot(int flags, long rawContactId, int mimeTypeIndex, long dataId,
+            int viewIndex) {
+        final int mask = mIds.length - 1;
+        int slot = hash(flags, rawContactId, mimeTypeIndex, dataId, viewIndex) & mask;
+        while (mIds[slot] != INVALID_VIEW_ID) {
+            if (mFlags[slot] == flags && mRawContactIds[slot] == rawContactId
+                    && mMimeTypeIndexes[slot] == mimeTypeIndex && mDataIds[slot] == dataId
+                    && mViewIndexes[slot] == viewIndex) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
 
-                if (values != null) {
-                    sWorkStringBuilder.append(KEY_SEPARATOR);
-                    sWorkStringBuilder.append(values.getId());
+    private void put(int slot, int flags, long rawContactId, int mimeTypeIndex, long dataId,
+            int viewIndex, int id) {
+        mFlags[slot] = flags;
+        mRawContactIds[slot] = rawContactId;
+        mMimeTypeIndexes[slot] = mimeTypeIndex;
+        mDataIds[slot] = dataId;
+        mViewIndexes[slot] = viewIndex;
+        mIds[slot] = id;
+        if (++mSize * 2 > mIds.length) {
+            rehash(mIds.length * 2);
+        }
+    }
 
-                    if (viewIndex != NO_VIEW_INDEX) {
-                        sWorkStringBuilder.append(KEY_SEPARATOR);
-                        sWorkStringBuilder.append(viewIndex);
-                    }
-                }
+    private void rehash(int capacity) {
+        final int[] flags = mFlags;
+        final long[] rawContactIds = mRawContactIds;
+        final int[] mimeTypeIndexes = mMimeTypeIndexes;
+        final long[] dataIds = mDataIds;
+        final int[] viewIndexes = mViewIndexes;
+        final int[] ids = mIds;
+        allocate(capacity);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != INVALID_VIEW_ID) {
+                final int slot = findSlot(flags[i], rawContactIds[i], mimeTypeIndexes[i],
+                        dataIds[i], viewIndexes[i]);
+                put(slot, flags[i], rawContactIds[i], mimeTypeIndexes[i], dataIds[i],
+                        viewIndexes[i], ids[i]);
             }
         }
-        return sWorkStringBuilder.toString();
+    }
+
+    private static int hash(int flags, long rawContactId, int mimeTypeIndex, long dataId,
+            int viewIndex) {
+        long hash = rawContactId;
+        hash = hash * 31 + dataId;
+        hash = hash * 31 + ((mimeTypeIndex << 16) ^ (viewIndex << 6) ^ flags);
+        hash *= 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
     }
 
     /** {@Override} */
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeInt(mNextId);
-        dest.writeBundle(mIdMap);
+        dest.writeStringList(mMimeTypes);
+        dest.writeInt(mSize);
+        for (int i = 0; i < mIds.length; i++) {
+            if (mIds[i] != INVALID_VIEW_ID) {
+                dest.writeInt(mFlags[i]);
+                dest.writeLong(mRawContactIds[i]);
+                dest.writeInt(mMimeTypeIndexes[i]);
+                dest.writeLong(mDataIds[i]);
+                dest.writeInt(mViewIndexes[i]);
+                dest.writeInt(mIds[i]);
+            }
+        }
     }
 
     private void readFromParcel(Parcel src) {
         mNextId = src.readInt();
-        mIdMap = src.readBundle();
+        mMimeTypes = new ArrayList<String>();
+        src.readStringList(mMimeTypes);
+        final int size = src.readInt();
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < size * 2) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+        for (int i = 0; i < size; i++) {
+            final int flags = src.readInt();
+            final long rawContactId = src.readLong();
+            final int mimeTypeIndex = src.readInt();
+            final long dataId = src.readLong();
+            final int viewIndex = src.readInt();
+            final int id = src.readInt();
+            put(findSlot(flags, rawContactId, mimeTypeIndex, dataId, viewIndex),
+                    flags, rawContactId, mimeTypeIndex, dataId, viewIndex, id);
+        }
     }
 
     public static final Parcelable.Creator<ViewIdGenerator> CREATOR =
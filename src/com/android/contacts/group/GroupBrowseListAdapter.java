@@ -30,7 +30,7 @@ import android.widget.TextView;
 import com.android.contacts.GroupListLoader;
 import com.android.contacts.R;
 import com.android.contacts.common.model.account.AccountType;
-import com.android.contacts.common.model.AccountTypeManager;
+import com.android.contacts.util.AccountTypeSnapshot;
 import com.google.common.base.Objects;
 
 /**
@@ -40,7 +40,7 @@ public class GroupBrowseListAdapter extends BaseAdapter {
 
     private final Context mContext;
     private final LayoutInflater mLayoutInflater;
-    private final AccountTypeManager mAccountTypeManager;
+    private AccountTypeSnapshot mAccountTypes;
 
     private Cursor mCursor;
 
@@ -50,11 +50,11 @@ public class GroupBrowseListAdapter extends BaseAdapter {
     public GroupBrowseListAdapter(Context context) {
         mContext = context;
         mLayoutInflater = LayoutInflater.from(context);
-        mAccountTypeManager = AccountTypeManager.getInstance(mContext);
     }
 
     public void setCursor(Cursor cursor) {
         mCursor = cursor;
+        mAccountTypes = AccountTypeSnapshot.get(mContext);
 
         // If there's no selected group already and the cursor is valid, then by default, select the
         // first group
@@ -195,7 +195,10 @@ public class GroupBrowseListAdapter extends BaseAdapter {
     }
 
     private void bindHeaderView(GroupListItem entry, GroupListItemViewCache viewCache) {
-        AccountType accountType = mAccountTypeManager.getAccountType(
+        if (mAccountTypes == null) {
+            mAccountTypes = AccountTypeSnapshot.get(mContext);
+        }
+        AccountType accountType = mAccountTypes.getAccountType(
                 entry.getAccountType(), entry.getDataSet());
         viewCache.accountType.setText(accountType.getDisplayLabel(mContext).toString());
         viewCache.accountName.setText(entry.getAccountName());
@@ -3,7 +3,6 @@ package com.android.contacts.group;
 import android.app.Activity;
 import android.app.LoaderManager.LoaderCallbacks;
 import android.content.Context;
-import android.content.CursorLoader;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
@@ -105,7 +104,7 @@ public class GroupBrowseListPresenter implements LoaderCallbacks<Cursor>{
     }
 	
 	 @Override
-     public CursorLoader onCreateLoader(int id, Bundle args) {
+     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
 		 view.resetEmptyView(true);
          return new GroupListLoader(mContext);
      }
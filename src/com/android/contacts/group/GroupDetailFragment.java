@@ -21,7 +21,6 @@ import android.app.Fragment;
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
 import android.content.ContentUris;
-import android.content.CursorLoader;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.res.Resources;
@@ -43,9 +42,9 @@ import android.widget.AbsListView.OnScrollListener;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import com.android.contacts.GroupMemberPageLoader;
 import com.android.contacts.R;
 import com.android.contacts.common.ContactPhotoManager;
-import com.android.contacts.common.list.ContactTileAdapter;
 import com.android.contacts.common.list.ContactTileView;
 import com.android.contacts.common.model.account.AccountType;
 import com.android.contacts.interactions.GroupDeletionDialogFragment;
@@ -89,6 +88,10 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
 
 	private static final int LOADER_METADATA = 0;
 	private static final int LOADER_MEMBERS = 1;
+	private static final int LOADER_PRESENCE = 2;
+
+	/** How many rows of tiles before the end of the list the next page is loaded. */
+	private static final int PAGE_PREFETCH_ROWS = 10;
 	
 	private View mRootView;
 	private ViewGroup mGroupSourceViewContainer;
@@ -100,7 +103,7 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
 
 	private Listener mListener;
 
-	private ContactTileAdapter mAdapter;
+	private GroupMemberTileAdapter mAdapter;
 	private ContactPhotoManager mPhotoManager;
 
 	private boolean mOptionsMenuGroupDeletable;
@@ -190,10 +193,25 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
 	 * Start the loader to retrieve the list of group members.
 	 */
 	void startGroupMembersLoader() {
+		// The presence overlay is started again once the first members show up
+		getLoaderManager().destroyLoader(LOADER_PRESENCE);
+		if (mAdapter != null) {
+			mAdapter.setPresenceCursor(null);
+		}
 		getLoaderManager().restartLoader(LOADER_MEMBERS, null,
 				mGroupMemberListLoaderListener);
 	}
 
+	/**
+	 * Start the loader to retrieve the presence of the group members, unless
+	 * it is already running. It observes changes on its own, so a presence
+	 * update only reloads the overlay and not the member list.
+	 */
+	void startGroupPresenceLoader() {
+		getLoaderManager().initLoader(LOADER_PRESENCE, null,
+				mGroupPresenceLoaderListener);
+	}
+
 	private final ContactTileView.Listener mContactTileListener = new ContactTileView.Listener() {
 
 		@Override
@@ -219,7 +237,7 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
 	private final LoaderManager.LoaderCallbacks<Cursor> mGroupMetadataLoaderListener = new LoaderCallbacks<Cursor>() {
 
 		@Override
-		public CursorLoader onCreateLoader(int id, Bundle args) {
+		public Loader<Cursor> onCreateLoader(int id, Bundle args) {
 			return groupDetailPresenter.createGroupMetadataLoader();
 		}
 
@@ -239,7 +257,7 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
 	private final LoaderManager.LoaderCallbacks<Cursor> mGroupMemberListLoaderListener = new LoaderCallbacks<Cursor>() {
 
 		@Override
-		public CursorLoader onCreateLoader(int id, Bundle args) {
+		public Loader<Cursor> onCreateLoader(int id, Bundle args) {
 			return groupDetailPresenter.creatGroupMemberListLoader();
 		}
 
@@ -254,9 +272,32 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
 		}
 	};
 
+	/**
+	 * The listener for the group members presence loader
+	 */
+	private final LoaderManager.LoaderCallbacks<Cursor> mGroupPresenceLoaderListener = new LoaderCallbacks<Cursor>() {
+
+		@Override
+		public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+			return groupDetailPresenter.createGroupMemberPresenceLoader();
+		}
+
+		@Override
+		public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+			mAdapter.setPresenceCursor(data);
+		}
+
+		@Override
+		public void onLoaderReset(Loader<Cursor> loader) {
+			mAdapter.setPresenceCursor(null);
+		}
+	};
+
 	void extracted(Cursor data) {
 		mAdapter.setContactCursor(data);
 		mMemberListView.setEmptyView(mEmptyView);
+		// The tiles are up; fill in presence and status behind them
+		startGroupPresenceLoader();
 	}
 
 	void rebindDataToGroupSourceView(final String accountTypeString,
@@ -326,6 +367,14 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
 	@Override
 	public void onScroll(AbsListView view, int firstVisibleItem,
 			int visibleItemCount, int totalItemCount) {
+		if (totalItemCount == 0
+				|| firstVisibleItem + visibleItemCount < totalItemCount - PAGE_PREFETCH_ROWS) {
+			return;
+		}
+		final Loader<Cursor> loader = getLoaderManager().getLoader(LOADER_MEMBERS);
+		if (loader instanceof GroupMemberPageLoader) {
+			((GroupMemberPageLoader) loader).loadNextPage();
+		}
 	}
 
 	@Override
@@ -1,12 +1,13 @@
 package com.android.contacts.group;
 
-import android.content.CursorLoader;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.text.TextUtils;
 
 import com.android.contacts.GroupMemberLoader;
+import com.android.contacts.GroupMemberPageLoader;
+import com.android.contacts.GroupMemberPageLoader.Pages;
 import com.android.contacts.GroupMetaDataLoader;
 import com.android.contacts.R;
 import com.android.contacts.common.model.AccountTypeManager;
@@ -37,7 +38,7 @@ public class GroupDetailPresenter {
 		view.buildContactAdapter();
 	}
 
-	public CursorLoader createGroupMetadataLoader() {
+	public Loader<Cursor> createGroupMetadataLoader() {
 		return new GroupMetaDataLoader(view.getActivity(), mGroupUri);
 	}
 
@@ -135,8 +136,14 @@ public class GroupDetailPresenter {
 		mShowGroupActionInActionBar = show;
 	}
 
-	public CursorLoader creatGroupMemberListLoader() {
-		return GroupMemberLoader.constructLoaderForGroupDetailQuery(
+	public Loader<Cursor> creatGroupMemberListLoader() {
+		return new GroupMemberPageLoader(view.getActivity(),
+				GroupMemberLoader.constructLoaderForGroupDetailQuery(
+						view.getActivity(), mGroupId), true /* observeChanges */);
+	}
+
+	public Loader<Cursor> createGroupMemberPresenceLoader() {
+		return GroupMemberLoader.constructLoaderForGroupDetailPresenceQuery(
 				view.getActivity(), mGroupId);
 	}
 
@@ -151,7 +158,9 @@ public class GroupDetailPresenter {
 	}
 
 	public void onMemberListLoadFinished(Cursor data) {
-		updateSize(data.getCount());
+		// The members come a page at a time, so count the whole group if it is known
+		final int totalCount = ((Pages) data).getTotalCount();
+		updateSize(totalCount >= 0 ? totalCount : data.getCount());
 		view.extracted(data);
 	}
 
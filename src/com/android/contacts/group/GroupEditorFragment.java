@@ -16,7 +16,6 @@
 
 package com.android.contacts.group;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import android.app.Activity;
@@ -58,6 +57,8 @@ import android.widget.QuickContactBadge;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.android.contacts.GroupMemberLoader;
+import com.android.contacts.GroupMemberLoader.GroupEditorQuery;
 import com.android.contacts.GroupMetaDataLoader;
 import com.android.contacts.R;
 import com.android.contacts.common.ContactPhotoManager;
@@ -69,6 +70,7 @@ import com.android.contacts.common.util.AccountsListAdapter.AccountListFilter;
 import com.android.contacts.common.util.ViewUtil;
 import com.android.contacts.group.GroupEditorPresenter.GroupEditorMemento;
 import com.android.contacts.group.SuggestedMemberListAdapter.SuggestedMember;
+import com.android.contacts.util.LongHashSet;
 import com.google.common.base.Objects;
 
 public class GroupEditorFragment extends Fragment implements SelectAccountDialogFragment.Listener {
@@ -106,38 +108,7 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     private static final int LOADER_GROUP_METADATA = 1;
     private static final int LOADER_NEW_GROUP_MEMBER = 3;
 
-    private static final String MEMBER_RAW_CONTACT_ID_KEY = "rawContactId";
-    private static final String MEMBER_LOOKUP_URI_KEY = "memberLookupUri";
-
-    protected static final String[] PROJECTION_CONTACT = new String[] {
-        Contacts._ID,                           // 0
-        Contacts.DISPLAY_NAME_PRIMARY,          // 1
-        Contacts.DISPLAY_NAME_ALTERNATIVE,      // 2
-        Contacts.SORT_KEY_PRIMARY,              // 3
-        Contacts.STARRED,                       // 4
-        Contacts.CONTACT_PRESENCE,              // 5
-        Contacts.CONTACT_CHAT_CAPABILITY,       // 6
-        Contacts.PHOTO_ID,                      // 7
-        Contacts.PHOTO_THUMBNAIL_URI,           // 8
-        Contacts.LOOKUP_KEY,                    // 9
-        Contacts.PHONETIC_NAME,                 // 10
-        Contacts.HAS_PHONE_NUMBER,              // 11
-        Contacts.IS_USER_PROFILE,               // 12
-    };
-
-    protected static final int CONTACT_ID_COLUMN_INDEX = 0;
-    protected static final int CONTACT_DISPLAY_NAME_PRIMARY_COLUMN_INDEX = 1;
-    protected static final int CONTACT_DISPLAY_NAME_ALTERNATIVE_COLUMN_INDEX = 2;
-    protected static final int CONTACT_SORT_KEY_PRIMARY_COLUMN_INDEX = 3;
-    protected static final int CONTACT_STARRED_COLUMN_INDEX = 4;
-    protected static final int CONTACT_PRESENCE_STATUS_COLUMN_INDEX = 5;
-    protected static final int CONTACT_CHAT_CAPABILITY_COLUMN_INDEX = 6;
-    protected static final int CONTACT_PHOTO_ID_COLUMN_INDEX = 7;
-    protected static final int CONTACT_PHOTO_URI_COLUMN_INDEX = 8;
-    protected static final int CONTACT_LOOKUP_KEY_COLUMN_INDEX = 9;
-    protected static final int CONTACT_PHONETIC_NAME_COLUMN_INDEX = 10;
-    protected static final int CONTACT_HAS_PHONE_COLUMN_INDEX = 11;
-    protected static final int CONTACT_IS_USER_PROFILE = 12;
+    private static final String MEMBER_RAW_CONTACT_IDS_KEY = "rawContactIds";
 
 	private static final String KEY_MEMENTO = "KEY_MEMENTO";
 
@@ -174,12 +145,14 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     private ContentResolver mContentResolver;
     private SuggestedMemberListAdapter mAutoCompleteAdapter;
 
-    private ArrayList<Member> mListMembersToAdd = new ArrayList<Member>();
-    private ArrayList<Member> mListMembersToRemove = new ArrayList<Member>();
-    private ArrayList<Member> mListToDisplay = new ArrayList<Member>();
-
 	private GroupEditorPresenter presenter;
 
+    /** Raw contacts to add that are waiting for the next batch. */
+    private final LongHashSet mPendingMemberIds = new LongHashSet();
+    /** Raw contacts to add that the current batch is loading. */
+    private final LongHashSet mRequestedMemberIds = new LongHashSet();
+    private boolean mMemberBatchScheduled;
+
     public GroupEditorFragment() {
     }
 
@@ -216,7 +189,7 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putSerializable(KEY_MEMENTO, presenter.getMemento());
+        outState.putParcelable(KEY_MEMENTO, presenter.getMemento());
 
         outState.putSerializable(KEY_STATUS, mStatus);
 
@@ -225,7 +198,7 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     }
 
     void onRestoreInstanceState(Bundle state) {
-    	presenter.setMemento( (GroupEditorMemento) state.getSerializable(KEY_MEMENTO));
+    	presenter.setMemento((GroupEditorMemento) state.getParcelable(KEY_MEMENTO));
 
         mStatus = (Status) state.getSerializable(KEY_STATUS);
         mGroupNameIsReadOnly = state.getBoolean(KEY_GROUP_NAME_IS_READ_ONLY);
@@ -369,8 +342,7 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
                     if (member == null) {
                         return; // just in case
                     }
-                    loadMemberToAddToGroup(member.getRawContactId(),
-                            String.valueOf(member.getContactId()));
+                    loadMemberToAddToGroup(member.getRawContactId());
 
                     // Update the autocomplete adapter so the contact doesn't get suggested again
                     mAutoCompleteAdapter.addNewMember(member.getContactId());
@@ -379,9 +351,9 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
                     mAutoCompleteTextView.setText("");
                 }
             });
-            // Update the exempt list.  (mListToDisplay might have been restored from the saved
-            // state.)
-            mAutoCompleteAdapter.updateExistingMembersList(mListToDisplay);
+            // Update the exempt list.  (The members to display might have been restored from the
+            // saved state.)
+            mAutoCompleteAdapter.updateExistingMembersList(presenter.getMemento().mListToDisplay);
         }
 
         // If the group name is ready only, don't let the user focus on the field.
@@ -414,13 +386,39 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
         mGroupNameView.setText(mOriginalGroupName);
     }
 
-    public void loadMemberToAddToGroup(long rawContactId, String contactId) {
-        Bundle args = new Bundle();
-        args.putLong(MEMBER_RAW_CONTACT_ID_KEY, rawContactId);
-        args.putString(MEMBER_LOOKUP_URI_KEY, contactId);
-        getLoaderManager().restartLoader(LOADER_NEW_GROUP_MEMBER, args, mContactLoaderListener);
+    /**
+     * Adds the given raw contact to the group once its contact details are loaded.  Raw contacts
+     * added within the same frame are loaded together with a single query.
+     */
+    public void loadMemberToAddToGroup(long rawContactId) {
+        mPendingMemberIds.add(rawContactId);
+        if (!mMemberBatchScheduled) {
+            mMemberBatchScheduled = true;
+            mRootView.postOnAnimation(mLoadMemberBatch);
+        }
     }
 
+    private final Runnable mLoadMemberBatch = new Runnable() {
+        @Override
+        public void run() {
+            mMemberBatchScheduled = false;
+            if (mPendingMemberIds.isEmpty() || !isAdded()) {
+                return;
+            }
+            // Restarting the loader drops a batch that is still loading, so load the raw
+            // contacts of that batch again along with the new ones
+            for (long rawContactId : mPendingMemberIds.toArray()) {
+                mRequestedMemberIds.add(rawContactId);
+            }
+            mPendingMemberIds.clear();
+
+            Bundle args = new Bundle();
+            args.putLongArray(MEMBER_RAW_CONTACT_IDS_KEY, mRequestedMemberIds.toArray());
+            getLoaderManager().restartLoader(LOADER_NEW_GROUP_MEMBER, args,
+                    mContactLoaderListener);
+        }
+    };
+
     public void setListener(Listener value) {
         mListener = value;
     }
@@ -546,7 +544,7 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     }
 
     boolean hasMembershipChange() {
-        return mListMembersToAdd.size() > 0 || mListMembersToRemove.size() > 0;
+        return presenter.getMemento().hasMembershipChange();
     }
 
     /**
@@ -570,9 +568,18 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
 	}
 
     private void addMember(Member member) {
+        final GroupEditorMemento memento = presenter.getMemento();
+        final long rawContactId = member.getRawContactId();
+        if (memento.mMembersToAdd.containsKey(rawContactId)) {
+            return;
+        }
+        // A member that was removed during this session just stays in the group
+        if (memento.mMembersToRemove.remove(rawContactId) == null) {
+            memento.mMembersToAdd.put(rawContactId, member);
+        }
+
         // Update the display list
-        mListMembersToAdd.add(member);
-        mListToDisplay.add(member);
+        memento.mListToDisplay.add(member);
         mMemberListAdapter.notifyDataSetChanged();
 
         // Update the autocomplete adapter so the contact doesn't get suggested again
@@ -582,16 +589,17 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     private void removeMember(Member member) {
         // If the contact was just added during this session, remove it from the list of
         // members to add
-        if (mListMembersToAdd.contains(member)) {
-            mListMembersToAdd.remove(member);
-        } else {
+        final GroupEditorMemento memento = presenter.getMemento();
+        final long rawContactId = member.getRawContactId();
+        if (memento.mMembersToAdd.remove(rawContactId) == null) {
             // Otherwise this contact was already part of the existing list of contacts,
             // so we need to do a content provider deletion operation
-            mListMembersToRemove.add(member);
+            memento.mMembersToRemove.put(rawContactId, member);
         }
         // In either case, update the UI so the contact is no longer in the list of
-        // members
-        mListToDisplay.remove(member);
+        // members.  This is the only step that is linear in the size of the group, since the
+        // adapter needs the display list by position.
+        memento.mListToDisplay.remove(member);
         mMemberListAdapter.notifyDataSetChanged();
 
         // Update the autocomplete adapter so the contact can get suggested again
@@ -600,37 +608,43 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
 
    
     /**
-     * The listener to load a summary of details for a contact.
+     * The listener to load a summary of details for a batch of contacts to add.
      */
     // TODO: Remove this step because showing the aggregate contact can be confusing when the user
     // just selected a raw contact
     private final LoaderManager.LoaderCallbacks<Cursor> mContactLoaderListener =
             new LoaderCallbacks<Cursor>() {
 
-        private long mRawContactId;
-
         @Override
         public CursorLoader onCreateLoader(int id, Bundle args) {
-            String memberId = args.getString(MEMBER_LOOKUP_URI_KEY);
-            mRawContactId = args.getLong(MEMBER_RAW_CONTACT_ID_KEY);
-            return new CursorLoader(mContext, Uri.withAppendedPath(Contacts.CONTENT_URI, memberId),
-                    PROJECTION_CONTACT, null, null, null);
+            return GroupMemberLoader.constructLoaderForGroupEditorQuery(mContext,
+                    args.getLongArray(MEMBER_RAW_CONTACT_IDS_KEY));
         }
 
         @Override
         public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-            if (!cursor.moveToFirst()) {
-                return;
+            // The cursor has a row per data item, so take each raw contact of the batch once
+            final LongHashSet batch = new LongHashSet();
+            for (long rawContactId : ((GroupMemberLoader) loader).getRawContactIds()) {
+                batch.add(rawContactId);
+            }
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                long rawContactId = cursor.getLong(GroupEditorQuery.RAW_CONTACT_ID);
+                if (!batch.remove(rawContactId)) {
+                    continue;
+                }
+                // Retrieve the contact data fields that will be sufficient to update the adapter
+                // with a new entry for this contact
+                long contactId = cursor.getLong(GroupEditorQuery.CONTACT_ID);
+                String displayName = cursor.getString(
+                        GroupEditorQuery.CONTACT_DISPLAY_NAME_PRIMARY);
+                String lookupKey = cursor.getString(GroupEditorQuery.CONTACT_LOOKUP_KEY);
+                String photoUri = cursor.getString(GroupEditorQuery.CONTACT_PHOTO_URI);
+                addMember(new Member(rawContactId, lookupKey, contactId, displayName, photoUri));
             }
-            // Retrieve the contact data fields that will be sufficient to update the adapter with
-            // a new entry for this contact
-            long contactId = cursor.getLong(CONTACT_ID_COLUMN_INDEX);
-            String displayName = cursor.getString(CONTACT_DISPLAY_NAME_PRIMARY_COLUMN_INDEX);
-            String lookupKey = cursor.getString(CONTACT_LOOKUP_KEY_COLUMN_INDEX);
-            String photoUri = cursor.getString(CONTACT_PHOTO_URI_COLUMN_INDEX);
+            mRequestedMemberIds.clear();
             getLoaderManager().destroyLoader(LOADER_NEW_GROUP_MEMBER);
-            Member member = new Member(mRawContactId, lookupKey, contactId, displayName, photoUri);
-            addMember(member);
         }
 
         @Override
@@ -733,10 +747,18 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
      */
     private final class MemberListAdapter extends BaseAdapter {
 
+        /** How many members before the end of the list the next page is loaded. */
+        private static final int PAGE_PREFETCH_DISTANCE = 20;
+
         private boolean mIsGroupMembershipEditable = true;
 
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
+            // Existing members are loaded a page at a time, so ask for more near the end
+            if (position >= getCount() - PAGE_PREFETCH_DISTANCE) {
+                presenter.loadMoreExistingMembers();
+            }
+
             View result;
             if (convertView == null) {
                 result = mLayoutInflater.inflate(mIsGroupMembershipEditable ?
@@ -770,12 +792,12 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
 
         @Override
         public int getCount() {
-            return mListToDisplay.size();
+            return presenter.getMemento().mListToDisplay.size();
         }
 
         @Override
         public Member getItem(int position) {
-            return mListToDisplay.get(position);
+            return presenter.getMemento().mListToDisplay.get(position);
         }
 
         @Override
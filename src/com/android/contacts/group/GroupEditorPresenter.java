@@ -1,7 +1,10 @@
 package com.android.contacts.group;
 
-import java.io.Serializable;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import android.accounts.Account;
@@ -9,22 +12,27 @@ import android.app.Activity;
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
 import android.content.ContentUris;
-import android.content.CursorLoader;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.provider.ContactsContract.Intents;
 
 import com.android.contacts.ContactSaveService;
 import com.android.contacts.GroupMemberLoader;
+import com.android.contacts.GroupMemberPageLoader;
+import com.android.contacts.GroupMemberPageLoader.Pages;
 import com.android.contacts.GroupMetaDataLoader;
 import com.android.contacts.GroupMemberLoader.GroupEditorQuery;
 import com.android.contacts.activities.GroupEditorActivity;
 import com.android.contacts.common.model.account.AccountWithDataSet;
 import com.android.contacts.group.GroupEditorFragment.Member;
 import com.android.contacts.group.GroupEditorFragment.Status;
+import com.android.contacts.util.LongHashSet;
+import com.google.common.collect.Maps;
 
 public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 
@@ -35,12 +43,19 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 	private Status mStatus;
 
 	private static final int LOADER_EXISTING_MEMBERS = 2;
+	private static final int LOADER_RESTORED_MEMBERS = 4;
+
+	/** Number of rows of the existing members' pages that are already in the display list. */
+	private int mExistingMemberRowCount;
+
+	/**
+	 * State of the editor. Only the group and the raw contact ids of the membership changes
+	 * are saved; the members themselves are loaded again after a restore, so that the saved
+	 * state stays small for groups with thousands of members.
+	 */
+	public static class GroupEditorMemento implements Parcelable {
+		private static final long[] EMPTY_IDS = new long[0];
 
-	static class GroupEditorMemento implements Serializable {
-		/**
-		 * 
-		 */
-		private static final long serialVersionUID = 104623013054768034L;
 		Uri mGroupUri;
 		public long mGroupId;
 		public String mAction;
@@ -48,9 +63,138 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 		public String mAccountType;
 		public String mDataSet;
 
-	    public ArrayList<Member> mListMembersToAdd = new ArrayList<Member>();
-	    public ArrayList<Member> mListMembersToRemove = new ArrayList<Member>();
+		/** Members to add to the group, by raw contact id. */
+		public final LinkedHashMap<Long, Member> mMembersToAdd = Maps.newLinkedHashMap();
+		/** Members to remove from the group, by raw contact id. */
+		public final LinkedHashMap<Long, Member> mMembersToRemove = Maps.newLinkedHashMap();
 	    public ArrayList<Member> mListToDisplay = new ArrayList<Member>();
+
+		/** Restored raw contact ids to add whose members are not loaded yet. */
+		long[] mPendingRawContactIdsToAdd = EMPTY_IDS;
+		/** Restored raw contact ids to remove whose members are not loaded yet. */
+		long[] mPendingRawContactIdsToRemove = EMPTY_IDS;
+
+		public GroupEditorMemento() {
+		}
+
+		public long[] getRawContactIdsToAdd() {
+			return concat(mMembersToAdd.keySet(), mPendingRawContactIdsToAdd);
+		}
+
+		public long[] getRawContactIdsToRemove() {
+			return concat(mMembersToRemove.keySet(), mPendingRawContactIdsToRemove);
+		}
+
+		public boolean hasMembershipChange() {
+			return mMembersToAdd.size() > 0 || mMembersToRemove.size() > 0
+					|| mPendingRawContactIdsToAdd.length > 0
+					|| mPendingRawContactIdsToRemove.length > 0;
+		}
+
+		private static long[] concat(Collection<Long> memberIds, long[] rawContactIds) {
+			final long[] result = Arrays.copyOf(rawContactIds,
+					rawContactIds.length + memberIds.size());
+			int i = rawContactIds.length;
+			for (long rawContactId : memberIds) {
+				result[i++] = rawContactId;
+			}
+			return result;
+		}
+
+		/**
+		 * Encodes raw contact ids as their count followed by the sorted ids, each stored as the
+		 * difference to the previous one in base 128 varints. Ids of one account are mostly
+		 * close to each other, so most entries take one or two bytes.
+		 */
+		static byte[] encodeRawContactIds(long[] rawContactIds) {
+			final long[] sorted = rawContactIds.clone();
+			Arrays.sort(sorted);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(sorted.length * 2 + 5);
+			writeVarLong(out, sorted.length);
+			long previous = 0;
+			for (long rawContactId : sorted) {
+				writeVarLong(out, rawContactId - previous);
+				previous = rawContactId;
+			}
+			return out.toByteArray();
+		}
+
+		static long[] decodeRawContactIds(byte[] encoded) {
+			if (encoded == null || encoded.length == 0) {
+				return EMPTY_IDS;
+			}
+			final int[] offset = new int[1];
+			final long[] rawContactIds = new long[(int) readVarLong(encoded, offset)];
+			long previous = 0;
+			for (int i = 0; i < rawContactIds.length; i++) {
+				previous += readVarLong(encoded, offset);
+				rawContactIds[i] = previous;
+			}
+			return rawContactIds;
+		}
+
+		private static void writeVarLong(ByteArrayOutputStream out, long value) {
+			// Raw contact ids are never negative, so the deltas between sorted ids aren't either
+			while ((value & ~0x7FL) != 0) {
+				out.write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.write((int) value);
+		}
+
+		private static long readVarLong(byte[] encoded, int[] offset) {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = encoded[offset[0]++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		// Parcelable
+		@Override
+		public int describeContents() {
+			return 0;
+		}
+
+		@Override
+		public void writeToParcel(Parcel dest, int flags) {
+			dest.writeParcelable(mGroupUri, flags);
+			dest.writeLong(mGroupId);
+			dest.writeString(mAction);
+			dest.writeString(mAccountName);
+			dest.writeString(mAccountType);
+			dest.writeString(mDataSet);
+			dest.writeByteArray(encodeRawContactIds(getRawContactIdsToAdd()));
+			dest.writeByteArray(encodeRawContactIds(getRawContactIdsToRemove()));
+		}
+
+		private GroupEditorMemento(Parcel in) {
+			mGroupUri = in.readParcelable(getClass().getClassLoader());
+			mGroupId = in.readLong();
+			mAction = in.readString();
+			mAccountName = in.readString();
+			mAccountType = in.readString();
+			mDataSet = in.readString();
+			mPendingRawContactIdsToAdd = decodeRawContactIds(in.createByteArray());
+			mPendingRawContactIdsToRemove = decodeRawContactIds(in.createByteArray());
+		}
+
+		public static final Parcelable.Creator<GroupEditorMemento> CREATOR =
+				new Parcelable.Creator<GroupEditorMemento>() {
+			@Override
+			public GroupEditorMemento createFromParcel(Parcel in) {
+				return new GroupEditorMemento(in);
+			}
+
+			@Override
+			public GroupEditorMemento[] newArray(int size) {
+				return new GroupEditorMemento[size];
+			}
+		};
 	}
 
 	public GroupEditorPresenter(GroupEditorFragment groupEditorFragment) {
@@ -61,7 +205,7 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 	}
 
 	@Override
-	public CursorLoader onCreateLoader(int id, Bundle args) {
+	public Loader<Cursor> onCreateLoader(int id, Bundle args) {
 		return new GroupMetaDataLoader(context, memento.mGroupUri);
 	}
 
@@ -80,15 +224,25 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 	private final LoaderManager.LoaderCallbacks<Cursor> mGroupMemberListLoaderListener = new LoaderCallbacks<Cursor>() {
 
 		@Override
-		public CursorLoader onCreateLoader(int id, Bundle args) {
-			return GroupMemberLoader.constructLoaderForGroupEditorQuery(
-					view.getActivity(), getMemento().mGroupId);
+		public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+			// Start the display list over with the members added in this session
+			mExistingMemberRowCount = 0;
+			memento.mListToDisplay.clear();
+			memento.mListToDisplay.addAll(memento.mMembersToAdd.values());
+			return new GroupMemberPageLoader(view.getActivity(),
+					GroupMemberLoader.constructLoaderForGroupEditorQuery(
+							view.getActivity(), getMemento().mGroupId),
+					false /* observeChanges */);
 		}
 
 		@Override
 		public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+			// Each delivery has the pages of the previous one plus the next page, so only the
+			// rows after the ones seen before are new
 			List<Member> listExistingMembers = new ArrayList<Member>();
-			data.moveToPosition(-1);
+			// Members removed before the editor was restored are resolved here
+			final LongHashSet pendingToRemove = toSet(memento.mPendingRawContactIdsToRemove);
+			data.moveToPosition(mExistingMemberRowCount - 1);
 			while (data.moveToNext()) {
 				long contactId = data.getLong(GroupEditorQuery.CONTACT_ID);
 				long rawContactId = data
@@ -99,16 +253,67 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 						.getString(GroupEditorQuery.CONTACT_DISPLAY_NAME_PRIMARY);
 				String photoUri = data
 						.getString(GroupEditorQuery.CONTACT_PHOTO_URI);
-				listExistingMembers.add(new Member(rawContactId, lookupKey,
-						contactId, displayName, photoUri));
+				Member member = new Member(rawContactId, lookupKey,
+						contactId, displayName, photoUri);
+				listExistingMembers.add(member);
+				if (pendingToRemove.remove(rawContactId)) {
+					memento.mMembersToRemove.put(rawContactId, member);
+				}
 			}
+			memento.mPendingRawContactIdsToRemove = pendingToRemove.toArray();
+			mExistingMemberRowCount = data.getCount();
 
 			// Update the display list
 			addExistingMembers(listExistingMembers);
 
-			// No more updates
+			// No more updates once all pages are there
 			// TODO: move to a runnable
-			view.getLoaderManager().destroyLoader(LOADER_EXISTING_MEMBERS);
+			if (!((Pages) data).hasMore()) {
+				view.getLoaderManager().destroyLoader(LOADER_EXISTING_MEMBERS);
+			}
+		}
+
+		@Override
+		public void onLoaderReset(Loader<Cursor> loader) {
+		}
+	};
+
+	/**
+	 * The loader listener for the members added before the editor was restored.
+	 */
+	private final LoaderManager.LoaderCallbacks<Cursor> mRestoredMemberListLoaderListener =
+			new LoaderCallbacks<Cursor>() {
+
+		@Override
+		public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+			return GroupMemberLoader.constructLoaderForGroupEditorQuery(
+					view.getActivity(), memento.mPendingRawContactIdsToAdd);
+		}
+
+		@Override
+		public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+			// The cursor has a row per data item, so take each raw contact once
+			final LongHashSet pendingToAdd = toSet(memento.mPendingRawContactIdsToAdd);
+			data.moveToPosition(-1);
+			while (data.moveToNext()) {
+				long rawContactId = data
+						.getLong(GroupEditorQuery.RAW_CONTACT_ID);
+				if (!pendingToAdd.remove(rawContactId)) {
+					continue;
+				}
+				Member member = new Member(rawContactId,
+						data.getString(GroupEditorQuery.CONTACT_LOOKUP_KEY),
+						data.getLong(GroupEditorQuery.CONTACT_ID),
+						data.getString(GroupEditorQuery.CONTACT_DISPLAY_NAME_PRIMARY),
+						data.getString(GroupEditorQuery.CONTACT_PHOTO_URI));
+				memento.mMembersToAdd.put(rawContactId, member);
+				memento.mListToDisplay.add(member);
+			}
+			// Raw contacts that were not found are still saved, just not displayed
+			memento.mPendingRawContactIdsToAdd = pendingToAdd.toArray();
+
+			view.updateAutoCompleteAdapter(memento.mListToDisplay);
+			view.getLoaderManager().destroyLoader(LOADER_RESTORED_MEMBERS);
 		}
 
 		@Override
@@ -116,6 +321,14 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 		}
 	};
 
+	private static LongHashSet toSet(long[] rawContactIds) {
+		final LongHashSet set = new LongHashSet(rawContactIds.length);
+		for (long rawContactId : rawContactIds) {
+			set.add(rawContactId);
+		}
+		return set;
+	}
+
 	@Override
 	public void onLoaderReset(Loader<Cursor> loader) {
 	}
@@ -137,17 +350,34 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 		mIntentExtras = intentExtras;
 	}
 
+	/**
+	 * Loads the next page of existing members, if there is one and it is not loading already.
+	 */
+	public void loadMoreExistingMembers() {
+		final Loader<Cursor> loader = view.getLoaderManager().getLoader(
+				LOADER_EXISTING_MEMBERS);
+		if (loader instanceof GroupMemberPageLoader) {
+			((GroupMemberPageLoader) loader).loadNextPage();
+		}
+	}
+
 	private void addExistingMembers(List<Member> listExistingMembers) {
 
-		// Re-create the list to display
-		memento.mListToDisplay.clear();
-		memento.mListToDisplay.addAll(listExistingMembers);
-		memento.mListToDisplay.addAll(memento.mListMembersToAdd);
-		memento.mListToDisplay.removeAll(memento.mListMembersToRemove);
+		// Existing members go before the members added in this session, which are at the end
+		// of the list to display
+		final int position = Math.max(0,
+				memento.mListToDisplay.size() - memento.mMembersToAdd.size());
+		final ArrayList<Member> newMembers = new ArrayList<Member>(listExistingMembers.size());
+		for (Member member : listExistingMembers) {
+			if (!memento.mMembersToRemove.containsKey(member.getRawContactId())) {
+				newMembers.add(member);
+			}
+		}
+		memento.mListToDisplay.addAll(position, newMembers);
 
 		// Update the autocomplete adapter (if there is one) so these contacts
 		// don't get suggested
-		view.updateAutoCompleteAdapter(listExistingMembers);
+		view.updateAutoCompleteAdapter(memento.mListToDisplay);
 	}
 
 	public boolean save() {
@@ -175,7 +405,7 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 		Intent saveIntent = null;
 		if (Intent.ACTION_INSERT.equals(memento.mAction)) {
 			// Create array of raw contact IDs for contacts to add to the group
-			long[] membersToAddArray = convertToArray(memento.mListMembersToAdd);
+			long[] membersToAddArray = memento.getRawContactIdsToAdd();
 
 			// Create the save intent to create the group and add members at the
 			// same time
@@ -187,10 +417,10 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 					GroupEditorActivity.ACTION_SAVE_COMPLETED);
 		} else if (Intent.ACTION_EDIT.equals(memento.mAction)) {
 			// Create array of raw contact IDs for contacts to add to the group
-			long[] membersToAddArray = convertToArray(memento.mListMembersToAdd);
+			long[] membersToAddArray = memento.getRawContactIdsToAdd();
 
 			// Create array of raw contact IDs for contacts to add to the group
-			long[] membersToRemoveArray = convertToArray(memento.mListMembersToRemove);
+			long[] membersToRemoveArray = memento.getRawContactIdsToRemove();
 
 			// Create the update intent (which includes the updated group name
 			// if necessary)
@@ -216,8 +446,14 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 				// Account select dialog is showing. Don't setup the editor yet.
 			} else if (mStatus == Status.LOADING) {
 				view.startGroupMetaDataLoader();
+				restoreMembersToAdd();
 			} else {
 				view.setupEditorForAccount();
+				if (Intent.ACTION_EDIT.equals(memento.mAction)) {
+					view.getLoaderManager().initLoader(LOADER_EXISTING_MEMBERS, null,
+							mGroupMemberListLoaderListener);
+				}
+				restoreMembersToAdd();
 			}
 		} else if (Intent.ACTION_EDIT.equals(memento.mAction)) {
 			view.startGroupMetaDataLoader();
@@ -247,12 +483,13 @@ public class GroupEditorPresenter implements LoaderCallbacks<Cursor> {
 		}
 	}
 
-	private static long[] convertToArray(List<Member> listMembers) {
-		int size = listMembers.size();
-		long[] membersArray = new long[size];
-		for (int i = 0; i < size; i++) {
-			membersArray[i] = listMembers.get(i).getRawContactId();
+	/**
+	 * Loads the members that were added before the editor was restored, if any.
+	 */
+	private void restoreMembersToAdd() {
+		if (memento.mPendingRawContactIdsToAdd.length > 0) {
+			view.getLoaderManager().initLoader(LOADER_RESTORED_MEMBERS, null,
+					mRestoredMemberListLoaderListener);
 		}
-		return membersArray;
 	}
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.interactions;
+
+import android.content.Context;
+import android.net.Uri;
+import android.provider.ContactsContract.Contacts;
+import android.util.LruCache;
+
+import com.android.contacts.R;
+import com.android.contacts.common.model.Contact;
+import com.android.contacts.common.model.RawContact;
+import com.android.contacts.common.model.account.AccountType;
+import com.android.contacts.util.AccountTypeSnapshot;
+
+import java.util.List;
+
+/**
+ * What deleting a contact would affect: how many of its raw contacts are read-only and how many
+ * are writable.  Summaries are computed ahead of time while the contact is being shown and are
+ * cached by lookup key, so that {@link ContactDeletionInteraction} can show its confirmation
+ * without querying the provider first.
+ */
+public final class ContactDeletionImpact {
+
+    /** Only the last few contacts shown are worth keeping around. */
+    private static final int MAX_CACHED_IMPACTS = 32;
+
+    private static final LruCache<String, ContactDeletionImpact> sCache =
+            new LruCache<String, ContactDeletionImpact>(MAX_CACHED_IMPACTS);
+
+    private final long mContactId;
+    private final String mLookupKey;
+    private final int mReadOnlyCount;
+    private final int mWritableCount;
+
+    ContactDeletionImpact(long contactId, String lookupKey, int readOnlyCount,
+            int writableCount) {
+        mContactId = contactId;
+        mLookupKey = lookupKey;
+        mReadOnlyCount = readOnlyCount;
+        mWritableCount = writableCount;
+    }
+
+    public long getContactId() {
+        return mContactId;
+    }
+
+    public String getLookupKey() {
+        return mLookupKey;
+    }
+
+    public int getReadOnlyCount() {
+        return mReadOnlyCount;
+    }
+
+    public int getWritableCount() {
+        return mWritableCount;
+    }
+
+    public Uri getLookupUri() {
+        return Contacts.getLookupUri(mContactId, mLookupKey);
+    }
+
+    /**
+     * Returns the resource id of the confirmation message to show before the deletion.
+     */
+    public int getMessageId() {
+        if (mReadOnlyCount > 0 && mWritableCount > 0) {
+            return R.string.readOnlyContactDeleteConfirmation;
+        } else if (mReadOnlyCount > 0 && mWritableCount == 0) {
+            return R.string.readOnlyContactWarning;
+        } else if (mReadOnlyCount == 0 && mWritableCount > 1) {
+            return R.string.multipleContactDeleteConfirmation;
+        } else {
+            return R.string.deleteConfirmation;
+        }
+    }
+
+    /**
+     * Computes the deletion impact of a loaded contact and caches it.  Does nothing for contacts
+     * that cannot be deleted from this device, such as directory entries.  Can be called from a
+     * loader thread.
+     */
+    public static void prefetch(Context context, Contact contact) {
+        if (contact == null || !contact.isLoaded() || contact.isDirectoryEntry()
+                || contact.getLookupKey() == null) {
+            return;
+        }
+
+        final AccountTypeSnapshot accountTypes = AccountTypeSnapshot.get(context);
+        int readOnlyCount = 0;
+        int writableCount = 0;
+        final List<RawContact> rawContacts = contact.getRawContacts();
+        for (int i = 0; i < rawContacts.size(); i++) {
+            final RawContact rawContact = rawContacts.get(i);
+            final AccountType type = accountTypes.getAccountType(
+                    rawContact.getAccountTypeString(), rawContact.getDataSet());
+            if (type == null || type.areContactsWritable()) {
+                writableCount++;
+            } else {
+                readOnlyCount++;
+            }
+        }
+        put(new ContactDeletionImpact(contact.getId(), contact.getLookupKey(), readOnlyCount,
+                writableCount));
+    }
+
+    /**
+     * Returns the cached deletion impact of the contact with the given lookup URI, or null if
+     * there is none or the URI is not a lookup URI.
+     */
+    public static ContactDeletionImpact getCached(Uri contactUri) {
+        final String lookupKey = getLookupKey(contactUri);
+        return lookupKey == null ? null : sCache.get(lookupKey);
+    }
+
+    static void put(ContactDeletionImpact impact) {
+        if (impact.mLookupKey != null) {
+            sCache.put(impact.mLookupKey, impact);
+        }
+    }
+
+    /**
+     * Drops the cached deletion impact of the contact with the given lookup URI, if any.
+     */
+    public static void invalidate(Uri contactUri) {
+        final String lookupKey = getLookupKey(contactUri);
+        if (lookupKey != null) {
+            sCache.remove(lookupKey);
+        }
+    }
+
+    /**
+     * Returns the lookup key of a URI of the form content://contacts/lookup/{key}[/{id}], or null
+     * if the URI has a different form.
+     */
+    private static String getLookupKey(Uri contactUri) {
+        if (contactUri == null) {
+            return null;
+        }
+        final List<String> segments = contactUri.getPathSegments();
+        if (segments.size() >= 3 && "lookup".equals(segments.get(1))) {
+            return segments.get(2);
+        }
+        return null;
+    }
+}
@@ -30,13 +30,12 @@ import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
-import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Contacts.Entity;
 
 import com.android.contacts.ContactSaveService;
 import com.android.contacts.R;
-import com.android.contacts.common.model.AccountTypeManager;
 import com.android.contacts.common.model.account.AccountType;
+import com.android.contacts.util.AccountTypeSnapshot;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
 
@@ -169,13 +168,34 @@ public class ContactDeletionInteraction extends Fragment
     public void setContactUri(Uri contactUri) {
         mContactUri = contactUri;
         mActive = true;
-        if (isStarted()) {
+        if (isStarted() && !showCachedImpact()) {
             Bundle args = new Bundle();
             args.putParcelable(ARG_CONTACT_URI, mContactUri);
             getLoaderManager().restartLoader(R.id.dialog_delete_contact_loader_id, args, this);
         }
     }
 
+    /**
+     * Shows the confirmation straight away if the deletion impact of the contact was computed
+     * while it was being displayed.
+     *
+     * @return whether the confirmation was shown
+     */
+    private boolean showCachedImpact() {
+        final ContactDeletionImpact impact = ContactDeletionImpact.getCached(mContactUri);
+        if (impact == null) {
+            return false;
+        }
+        if (mDialog != null) {
+            mDialog.dismiss();
+            mDialog = null;
+        }
+        getLoaderManager().destroyLoader(R.id.dialog_delete_contact_loader_id);
+        mMessageId = impact.getMessageId();
+        showDialog(mMessageId, impact.getLookupUri());
+        return true;
+    }
+
     private void setFinishActivityWhenDone(boolean finishActivityWhenDone) {
         this.mFinishActivityWhenDone = finishActivityWhenDone;
 
@@ -188,7 +208,7 @@ public class ContactDeletionInteraction extends Fragment
 
     @Override
     public void onStart() {
-        if (mActive) {
+        if (mActive && !showCachedImpact()) {
             Bundle args = new Bundle();
             args.putParcelable(ARG_CONTACT_URI, mContactUri);
             getLoaderManager().initLoader(R.id.dialog_delete_contact_loader_id, args, this);
@@ -230,7 +250,7 @@ public class ContactDeletionInteraction extends Fragment
         HashSet<Long>  readOnlyRawContacts = Sets.newHashSet();
         HashSet<Long>  writableRawContacts = Sets.newHashSet();
 
-        AccountTypeManager accountTypes = AccountTypeManager.getInstance(getActivity());
+        final AccountTypeSnapshot accountTypes = AccountTypeSnapshot.get(getActivity());
         cursor.moveToPosition(-1);
         while (cursor.moveToNext()) {
             final long rawContactId = cursor.getLong(COLUMN_INDEX_RAW_CONTACT_ID);
@@ -247,20 +267,12 @@ public class ContactDeletionInteraction extends Fragment
             }
         }
 
-        int readOnlyCount = readOnlyRawContacts.size();
-        int writableCount = writableRawContacts.size();
-        if (readOnlyCount > 0 && writableCount > 0) {
-            mMessageId = R.string.readOnlyContactDeleteConfirmation;
-        } else if (readOnlyCount > 0 && writableCount == 0) {
-            mMessageId = R.string.readOnlyContactWarning;
-        } else if (readOnlyCount == 0 && writableCount > 1) {
-            mMessageId = R.string.multipleContactDeleteConfirmation;
-        } else {
-            mMessageId = R.string.deleteConfirmation;
-        }
+        final ContactDeletionImpact impact = new ContactDeletionImpact(contactId, lookupKey,
+                readOnlyRawContacts.size(), writableRawContacts.size());
+        ContactDeletionImpact.put(impact);
 
-        final Uri contactUri = Contacts.getLookupUri(contactId, lookupKey);
-        showDialog(mMessageId, contactUri);
+        mMessageId = impact.getMessageId();
+        showDialog(mMessageId, impact.getLookupUri());
 
         // We don't want onLoadFinished() calls any more, which may come when the database is
         // updating.
@@ -315,6 +327,7 @@ public class ContactDeletionInteraction extends Fragment
     }
 
     protected void doDeleteContact(Uri contactUri) {
+        ContactDeletionImpact.invalidate(contactUri);
         mContext.startService(ContactSaveService.createDeleteContactIntent(mContext, contactUri));
         if (isAdded() && mFinishActivityWhenDone) {
             getActivity().finish();
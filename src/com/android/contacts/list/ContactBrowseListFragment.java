@@ -33,6 +33,7 @@ import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Directory;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.View;
 
 import com.android.common.widget.CompositeCursorAdapter.Partition;
 import com.android.contacts.common.list.AutoScrollListView;
@@ -41,6 +42,8 @@ import com.android.contacts.common.list.ContactListAdapter;
 import com.android.contacts.common.list.ContactListFilter;
 import com.android.contacts.common.list.DirectoryPartition;
 import com.android.contacts.common.util.ContactLoaderUtils;
+import com.android.contacts.util.SchedulingUtils;
+import com.android.contacts.util.StartupTrace;
 
 import java.util.List;
 
@@ -407,6 +410,19 @@ public abstract class ContactBrowseListFragment extends
         super.onLoadFinished(loader, data);
         mSelectionVerified = false;
 
+        if (StartupTrace.isEnabled()) {
+            StartupTrace.mark(StartupTrace.MARK_LIST_LOADED);
+            final View view = getView();
+            if (view != null) {
+                SchedulingUtils.doAfterDraw(view, new Runnable() {
+                    @Override
+                    public void run() {
+                        StartupTrace.mark(StartupTrace.MARK_LIST_DRAWN);
+                    }
+                });
+            }
+        }
+
         // Refresh the currently selected lookup in case it changed while we were sleeping
         refreshSelectedContactUri();
     }
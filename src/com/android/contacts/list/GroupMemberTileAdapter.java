@@ -18,6 +18,8 @@ package com.android.contacts.list;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.util.LongSparseArray;
 
 import com.android.contacts.GroupMemberLoader;
 import com.android.contacts.common.list.ContactEntry;
@@ -29,9 +31,17 @@ import java.util.ArrayList;
 
 /**
  * Tile adapter for groups.
+ *
+ * <p>The member cursor only carries what the tiles need to show up. Presence and status come
+ * from a separate cursor (see {@link GroupMemberLoader.GroupDetailPresenceQuery}) that is merged
+ * in by contact id, so the tiles can be shown before it arrives and a presence change only
+ * reloads the overlay.
  */
 public class GroupMemberTileAdapter extends ContactTileAdapter {
 
+    private final LongSparseArray<Integer> mPresence = new LongSparseArray<Integer>();
+    private final LongSparseArray<String> mStatus = new LongSparseArray<String>();
+
     public GroupMemberTileAdapter(Context context, ContactTileView.Listener listener, int numCols) {
         super(context, listener, numCols, DisplayType.GROUP_MEMBERS);
     }
@@ -42,8 +52,45 @@ public class GroupMemberTileAdapter extends ContactTileAdapter {
         mLookupIndex = GroupMemberLoader.GroupDetailQuery.CONTACT_LOOKUP_KEY;
         mPhotoUriIndex = GroupMemberLoader.GroupDetailQuery.CONTACT_PHOTO_URI;
         mNameIndex = GroupMemberLoader.GroupDetailQuery.CONTACT_DISPLAY_NAME_PRIMARY;
-        mPresenceIndex = GroupMemberLoader.GroupDetailQuery.CONTACT_PRESENCE_STATUS;
-        mStatusIndex = GroupMemberLoader.GroupDetailQuery.CONTACT_STATUS;
+        // mPresenceIndex and mStatusIndex point at the overlay columns, which are appended after
+        // whatever the member cursor has; see setContactCursor().
+    }
+
+    @Override
+    public void setContactCursor(Cursor cursor) {
+        if (cursor != null) {
+            mPresenceIndex = cursor.getColumnCount();
+            mStatusIndex = mPresenceIndex + 1;
+            cursor = new PresenceOverlayCursor(cursor);
+        }
+        super.setContactCursor(cursor);
+    }
+
+    /**
+     * Replaces the presence overlay with the rows of a
+     * {@link GroupMemberLoader.GroupDetailPresenceQuery} cursor, or clears it if null.
+     */
+    public void setPresenceCursor(Cursor cursor) {
+        mPresence.clear();
+        mStatus.clear();
+        if (cursor != null && !cursor.isClosed()) {
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                final long contactId = cursor.getLong(
+                        GroupMemberLoader.GroupDetailPresenceQuery.CONTACT_ID);
+                if (!cursor.isNull(GroupMemberLoader.GroupDetailPresenceQuery
+                        .CONTACT_PRESENCE_STATUS)) {
+                    mPresence.put(contactId, cursor.getInt(
+                            GroupMemberLoader.GroupDetailPresenceQuery.CONTACT_PRESENCE_STATUS));
+                }
+                final String status = cursor.getString(
+                        GroupMemberLoader.GroupDetailPresenceQuery.CONTACT_STATUS);
+                if (status != null) {
+                    mStatus.put(contactId, status);
+                }
+            }
+        }
+        notifyDataSetChanged();
     }
 
     @Override
@@ -82,4 +129,58 @@ public class GroupMemberTileAdapter extends ContactTileAdapter {
         }
         return resultList;
     }
+
+    /**
+     * Appends the presence and status of the current row's contact, taken from the overlay, as
+     * two extra columns to the member cursor.
+     */
+    private class PresenceOverlayCursor extends CursorWrapper {
+        private final int mPresenceColumn;
+        private final int mStatusColumn;
+
+        public PresenceOverlayCursor(Cursor cursor) {
+            super(cursor);
+            mPresenceColumn = cursor.getColumnCount();
+            mStatusColumn = mPresenceColumn + 1;
+        }
+
+        private long getContactId() {
+            return super.getLong(GroupMemberLoader.GroupDetailQuery.CONTACT_ID);
+        }
+
+        @Override
+        public int getColumnCount() {
+            return mStatusColumn + 1;
+        }
+
+        @Override
+        public boolean isNull(int columnIndex) {
+            if (columnIndex == mPresenceColumn) {
+                return mPresence.get(getContactId()) == null;
+            } else if (columnIndex == mStatusColumn) {
+                return mStatus.get(getContactId()) == null;
+            }
+            return super.isNull(columnIndex);
+        }
+
+        @Override
+        public int getInt(int columnIndex) {
+            if (columnIndex == mPresenceColumn) {
+                final Integer presence = mPresence.get(getContactId());
+                return presence == null ? 0 : presence;
+            }
+            return super.getInt(columnIndex);
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            if (columnIndex == mPresenceColumn) {
+                final Integer presence = mPresence.get(getContactId());
+                return presence == null ? null : String.valueOf(presence);
+            } else if (columnIndex == mStatusColumn) {
+                return mStatus.get(getContactId());
+            }
+            return super.getString(columnIndex);
+        }
+    }
 }
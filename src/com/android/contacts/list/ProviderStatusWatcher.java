@@ -17,14 +17,18 @@ package com.android.contacts.list;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Handler;
+import android.preference.PreferenceManager;
 import android.provider.ContactsContract.ProviderStatus;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.android.contacts.common.util.Constants;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
@@ -65,24 +69,27 @@ public class ProviderStatusWatcher extends ContentObserver {
         ProviderStatus.DATA1
     };
 
-    /**
-     * We'll wait for this amount of time on the UI thread if the load hasn't finished.
-     */
-    private static final int LOAD_WAIT_TIMEOUT_MS = 1000;
+    /** {@link SharedPreferences} keys for the last status loaded by any process start. */
+    private static final String KEY_LAST_STATUS = "providerStatus.lastStatus";
+    private static final String KEY_LAST_STATUS_DATA = "providerStatus.lastStatusData";
 
     private static ProviderStatusWatcher sInstance;
 
     private final Context mContext;
     private final Handler mHandler = new Handler();
 
-    private final Object mSignal = new Object();
-
     private int mStartRequestedCount;
 
     private LoaderTask mLoaderTask;
 
     /** Last known provider status.  This can be changed on a worker thread. */
-    private Status mProviderStatus;
+    private volatile Status mProviderStatus;
+
+    /**
+     * Status persisted by an earlier process, used until {@link #mProviderStatus} is loaded.
+     * This can be changed on a worker thread.
+     */
+    private volatile Status mPersistedStatus;
 
     private final ArrayList<ProviderStatusListener> mListeners = Lists.newArrayList();
 
@@ -171,43 +178,83 @@ public class ProviderStatusWatcher extends ContentObserver {
     /**
      * @return last known provider status.
      *
-     * If this method is called when we haven't started the status query or the query is still in
-     * progress, it will start a query in a worker thread if necessary, and *wait for the result*.
-     *
-     * This means this method is essentially a blocking {@link ProviderStatus#CONTENT_URI} query.
-     * This URI is not backed by the file system, so is usually fast enough to perform on the main
-     * thread, but in extreme cases (when the system takes a while to bring up the contacts
-     * provider?) this may still cause ANRs.
+     * This method never waits for the {@link ProviderStatus#CONTENT_URI} query.  If the status
+     * hasn't been loaded yet, it starts a query in a worker thread if necessary and returns a
+     * provisional status right away: the status persisted when it was last loaded, or
+     * {@link ProviderStatus#STATUS_NORMAL} if it has never been loaded.  The actual result will
+     * be delivered later via {@link ProviderStatusListener}.
      *
-     * In order to avoid that, if we can't load the status within {@link #LOAD_WAIT_TIMEOUT_MS},
-     * we'll give up and just returns {@link ProviderStatus#STATUS_UPGRADING} in order to unblock
-     * the UI thread.  The actual result will be delivered later via {@link ProviderStatusListener}.
-     * (If {@link ProviderStatus#STATUS_UPGRADING} is returned, the app (should) shows an according
-     * message, like "contacts are being updated".)
+     * The persisted status is read from the shared preferences, which are usually already
+     * loaded by {@link #preloadPersistedStatus} at this point.
      */
     public Status getProviderStatus() {
-        waitForLoaded();
+        final Status status = mProviderStatus;
+        if (status != null) {
+            return status;
+        }
 
-        if (mProviderStatus == null) {
-            return new Status(ProviderStatus.STATUS_UPGRADING, null);
+        if (mLoaderTask == null) {
+            // For some reason the loader couldn't load the status.  Let's start it again.
+            startLoading();
         }
+        final Status provisional = getPersistedStatus();
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, "ProviderStatusWatcher: provisional status "
+                    + provisional.status);
+        }
+        return provisional;
+    }
 
-        return mProviderStatus;
+    /**
+     * Reads the persisted status ahead of {@link #getProviderStatus}, so that the first
+     * provisional status doesn't wait for the shared preferences to be read from disk.
+     *
+     * This can be called on any thread.
+     */
+    public void preloadPersistedStatus() {
+        getPersistedStatus();
     }
 
-    private void waitForLoaded() {
-        if (mProviderStatus == null) {
-            if (mLoaderTask == null) {
-                // For some reason the loader couldn't load the status.  Let's start it again.
-                startLoading();
-            }
-            synchronized (mSignal) {
-                try {
-                    mSignal.wait(LOAD_WAIT_TIMEOUT_MS);
-                } catch (InterruptedException ignore) {
-                }
-            }
+    /**
+     * Returns the persisted status, reading it from the shared preferences the first time.
+     * Called on any thread.
+     */
+    private synchronized Status getPersistedStatus() {
+        Status persisted = mPersistedStatus;
+        if (persisted == null) {
+            persisted = loadPersistedStatus();
+            mPersistedStatus = persisted;
         }
+        return persisted;
+    }
+
+    private SharedPreferences getSharedPreferences() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    /**
+     * Reads the persisted status from the shared preferences.
+     */
+    private Status loadPersistedStatus() {
+        final SharedPreferences prefs = getSharedPreferences();
+        return new Status(prefs.getInt(KEY_LAST_STATUS, ProviderStatus.STATUS_NORMAL),
+                prefs.getString(KEY_LAST_STATUS_DATA, null));
+    }
+
+    /**
+     * Persists the loaded status if it changed.  Called on the loader thread.
+     */
+    private synchronized void persistStatus(Status status) {
+        final Status persisted = mPersistedStatus;
+        if (persisted != null && persisted.status == status.status
+                && TextUtils.equals(persisted.data, status.data)) {
+            return;
+        }
+        mPersistedStatus = status;
+        getSharedPreferences().edit()
+                .putInt(KEY_LAST_STATUS, status.status)
+                .putString(KEY_LAST_STATUS_DATA, status.data)
+                .apply();
     }
 
     private void startLoading() {
@@ -226,28 +273,26 @@ public class ProviderStatusWatcher extends ContentObserver {
     private class LoaderTask extends AsyncTask<Void, Void, Boolean> {
         @Override
         protected Boolean doInBackground(Void... params) {
-            try {
-                Cursor cursor = mContext.getContentResolver().query(ProviderStatus.CONTENT_URI,
-                        PROJECTION, null, null, null);
-                if (cursor != null) {
-                    try {
-                        if (cursor.moveToFirst()) {
-                            // Note here we can't just say "Status", as AsyncTask has the "Status"
-                            // enum too.
-                            mProviderStatus = new ProviderStatusWatcher.Status(
-                                    cursor.getInt(0), cursor.getString(1));
-                            return true;
-                        }
-                    } finally {
-                        cursor.close();
+            getPersistedStatus();
+            Cursor cursor = mContext.getContentResolver().query(ProviderStatus.CONTENT_URI,
+                    PROJECTION, null, null, null);
+            if (cursor != null) {
+                try {
+                    if (cursor.moveToFirst()) {
+                        // Note here we can't just say "Status", as AsyncTask has the "Status"
+                        // enum too.
+                        final ProviderStatusWatcher.Status status =
+                                new ProviderStatusWatcher.Status(
+                                        cursor.getInt(0), cursor.getString(1));
+                        mProviderStatus = status;
+                        persistStatus(status);
+                        return true;
                     }
-                }
-                return false;
-            } finally {
-                synchronized (mSignal) {
-                    mSignal.notifyAll();
+                } finally {
+                    cursor.close();
                 }
             }
+            return false;
         }
 
         @Override
@@ -16,14 +16,26 @@
 
 package com.android.contacts.quickcontact;
 
+import com.android.contacts.util.KeyedCollapser;
+import com.google.common.annotations.VisibleForTesting;
+
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Provide a simple way of collecting one or more {@link Action} objects
  * under a MIME-type key.
  */
 public class ActionMultiMap extends HashMap<String, ArrayList<Action>> {
+    private static final KeyedCollapser.KeyFunction<Action> COLLAPSE_KEY_FUNCTION =
+            new KeyedCollapser.KeyFunction<Action>() {
+        @Override
+        public String getCollapseKey(Action action) {
+            return ActionMultiMap.getCollapseKey(action);
+        }
+    };
+
     public void put(String mimeType, Action info) {
        put(mimeType, info, false);
     }
@@ -47,4 +59,31 @@ public class ActionMultiMap extends HashMap<String, ArrayList<Action>> {
             collectList.add(info);
         }
     }
+
+    /**
+     * Collapses duplicate actions (e.g. the same e-mail address from different sources) in
+     * every MIME-type list. Like {@link com.android.contacts.common.Collapser#collapseList},
+     * the first of two collapsible actions is kept and absorbs the later one, but actions are
+     * only compared with each other if they share the same {@link #getCollapseKey}, see
+     * {@link KeyedCollapser}.
+     */
+    public void collapse() {
+        for (ArrayList<Action> actions : values()) {
+            collapseList(actions);
+        }
+    }
+
+    @VisibleForTesting
+    static void collapseList(List<Action> actions) {
+        KeyedCollapser.collapseList(actions, COLLAPSE_KEY_FUNCTION);
+    }
+
+    /**
+     * Returns a key that is equal for any two actions that may collapse with each other. Actions
+     * with different keys are never compared.
+     */
+    @VisibleForTesting
+    static String getCollapseKey(Action action) {
+        return KeyedCollapser.getDataCollapseKey(action.getMimeType(), action.getBody());
+    }
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.quickcontact;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.CommonDataKinds.SipAddress;
+import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
+import android.provider.ContactsContract.CommonDataKinds.Website;
+import android.text.TextUtils;
+
+import com.android.contacts.common.model.AccountTypeManager;
+import com.android.contacts.common.model.Contact;
+import com.android.contacts.common.model.RawContact;
+import com.android.contacts.common.model.account.AccountType;
+import com.android.contacts.common.model.dataitem.DataItem;
+import com.android.contacts.common.model.dataitem.DataKind;
+import com.android.contacts.common.model.dataitem.EmailDataItem;
+import com.android.contacts.common.model.dataitem.ImDataItem;
+import com.android.contacts.common.util.DataStatus;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable set of {@link Action}s shown by {@link QuickContactActivity} for one
+ * {@link Contact}. Building it creates the actions, resolves them against the
+ * {@link PackageManager}, collapses duplicates and sorts the MIME-types, so it is
+ * meant to be done on a background thread; binding the result only inflates views.
+ */
+public final class QuickContactActionModel {
+    /**
+     * {@link #LEADING_MIMETYPES} and {@link #TRAILING_MIMETYPES} are used to sort MIME-types.
+     *
+     * <p>The MIME-types in {@link #LEADING_MIMETYPES} appear in the front of the dialog,
+     * in the order specified here.</p>
+     *
+     * <p>The ones in {@link #TRAILING_MIMETYPES} appear in the end of the dialog, in the order
+     * specified here.</p>
+     *
+     * <p>The rest go between them, in the order in the array.</p>
+     */
+    private static final List<String> LEADING_MIMETYPES = Lists.newArrayList(
+            Phone.CONTENT_ITEM_TYPE, SipAddress.CONTENT_ITEM_TYPE, Email.CONTENT_ITEM_TYPE);
+
+    /** See {@link #LEADING_MIMETYPES}. */
+    private static final List<String> TRAILING_MIMETYPES = Lists.newArrayList(
+            StructuredPostal.CONTENT_ITEM_TYPE, Website.CONTENT_ITEM_TYPE);
+
+    private final List<String> mSortedMimeTypes;
+    private final Map<String, List<Action>> mActions;
+    private final Map<String, CharSequence> mDescriptions;
+    private final Map<String, Drawable> mIcons;
+
+    private QuickContactActionModel(List<String> sortedMimeTypes,
+            Map<String, List<Action>> actions, Map<String, CharSequence> descriptions,
+            Map<String, Drawable> icons) {
+        mSortedMimeTypes = Collections.unmodifiableList(sortedMimeTypes);
+        mActions = Collections.unmodifiableMap(actions);
+        mDescriptions = Collections.unmodifiableMap(descriptions);
+        mIcons = Collections.unmodifiableMap(icons);
+    }
+
+    /** Returns the MIME-types that have at least one action, in display order. */
+    public List<String> getSortedMimeTypes() {
+        return mSortedMimeTypes;
+    }
+
+    /** Returns the collapsed actions for the given MIME-type, or null if there are none. */
+    public List<Action> getActions(String mimeType) {
+        return mActions.get(mimeType);
+    }
+
+    /** Returns the content description of the track button for the given MIME-type. */
+    public CharSequence getDescription(String mimeType) {
+        return mDescriptions.get(mimeType);
+    }
+
+    /** Returns the icon of the track button for the given MIME-type. */
+    public Drawable getIcon(String mimeType) {
+        return mIcons.get(mimeType);
+    }
+
+    public boolean isEmpty() {
+        return mSortedMimeTypes.isEmpty();
+    }
+
+    /**
+     * Check if the given MIME-type appears in the list of excluded MIME-types.
+     */
+    public static boolean isMimeExcluded(String[] excludeMimes, String mimeType) {
+        if (excludeMimes == null) return false;
+        for (String excludedMime : excludeMimes) {
+            if (TextUtils.equals(excludedMime, mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the action model for the given contact. This queries the {@link PackageManager}
+     * and must not be called on the UI thread.
+     */
+    public static QuickContactActionModel build(Context context, Contact data,
+            String[] excludeMimes) {
+        final ResolveCache cache = ResolveCache.getInstance(context);
+        final AccountTypeManager accountTypeManager = AccountTypeManager.getInstance(context);
+        final ActionMultiMap actions = new ActionMultiMap();
+
+        for (RawContact rawContact : data.getRawContacts()) {
+            final AccountType accountType = rawContact.getAccountType(context);
+            for (DataItem dataItem : rawContact.getDataItems()) {
+                final String mimeType = dataItem.getMimeType();
+
+                // Skip this data item if MIME-type excluded
+                if (isMimeExcluded(excludeMimes, mimeType)) continue;
+
+                final DataKind dataKind = accountTypeManager.getKindOrFallback(accountType,
+                        mimeType);
+                final long dataId = dataItem.getId();
+                final boolean isSuperPrimary = dataItem.isSuperPrimary();
+
+                if (dataKind != null) {
+                    // Build an action for this data entry, find a mapping to a UI
+                    // element, build its summary from the cursor, and collect it
+                    // along with all others of this MIME-type.
+                    final Action action = new DataAction(context, dataItem, dataKind);
+                    considerAdd(actions, action, cache, isSuperPrimary);
+                }
+
+                // Handle Email rows with presence data as Im entry
+                final DataStatus status = data.getStatuses().get(dataId);
+                if (status != null && dataItem instanceof EmailDataItem) {
+                    final EmailDataItem email = (EmailDataItem) dataItem;
+                    final ImDataItem im = ImDataItem.createFromEmail(email);
+                    if (dataKind != null) {
+                        final DataAction action = new DataAction(context, im, dataKind);
+                        action.setPresence(status.getPresence());
+                        considerAdd(actions, action, cache, isSuperPrimary);
+                    }
+                }
+            }
+        }
+
+        // Collapse Action Lists (remove e.g. duplicate e-mail addresses from different sources)
+        actions.collapse();
+        final HashMap<String, List<Action>> collapsed = Maps.newHashMap();
+        for (Map.Entry<String, ArrayList<Action>> entry : actions.entrySet()) {
+            collapsed.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+
+        final List<String> sortedMimeTypes = sortMimeTypes(collapsed.keySet());
+
+        // Resolve the track buttons up front so that binding doesn't touch the PackageManager
+        final String name = data.getDisplayName();
+        final HashMap<String, CharSequence> descriptions = Maps.newHashMap();
+        final HashMap<String, Drawable> icons = Maps.newHashMap();
+        for (String mimeType : sortedMimeTypes) {
+            final Action firstInfo = collapsed.get(mimeType).get(0);
+            descriptions.put(mimeType, cache.getDescription(firstInfo, name));
+            icons.put(mimeType, cache.getIcon(firstInfo));
+        }
+
+        return new QuickContactActionModel(sortedMimeTypes, collapsed, descriptions, icons);
+    }
+
+    /**
+     * Consider adding the given {@link Action}, which will only happen if
+     * {@link PackageManager} finds an application to handle
+     * {@link Action#getIntent()}.
+     * @param actions the map to add the action to
+     * @param action the action to handle
+     * @param resolveCache cache of applications that can handle actions
+     * @param front indicates whether to add the action to the front of the list
+     * @return true if action has been added
+     */
+    private static boolean considerAdd(ActionMultiMap actions, Action action,
+            ResolveCache resolveCache, boolean front) {
+        if (resolveCache.hasResolve(action)) {
+            actions.put(action.getMimeType(), action, front);
+            return true;
+        }
+        return false;
+    }
+
+    private static List<String> sortMimeTypes(Set<String> mimeTypes) {
+        // All the mime-types to add.
+        final Set<String> containedTypes = new HashSet<String>(mimeTypes);
+        final List<String> sortedMimeTypes = Lists.newArrayList();
+        // First, add LEADING_MIMETYPES, which are most common.
+        for (String mimeType : LEADING_MIMETYPES) {
+            if (containedTypes.contains(mimeType)) {
+                sortedMimeTypes.add(mimeType);
+                containedTypes.remove(mimeType);
+            }
+        }
+
+        // Add all the remaining ones that are not TRAILING
+        for (String mimeType : containedTypes.toArray(new String[containedTypes.size()])) {
+            if (!TRAILING_MIMETYPES.contains(mimeType)) {
+                sortedMimeTypes.add(mimeType);
+                containedTypes.remove(mimeType);
+            }
+        }
+
+        // Then, add TRAILING_MIMETYPES, which are least common.
+        for (String mimeType : TRAILING_MIMETYPES) {
+            if (containedTypes.contains(mimeType)) {
+                containedTypes.remove(mimeType);
+                sortedMimeTypes.add(mimeType);
+            }
+        }
+        return sortedMimeTypes;
+    }
+}
@@ -25,17 +25,12 @@ import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
-import android.content.pm.PackageManager;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
-import android.provider.ContactsContract.CommonDataKinds.Email;
-import android.provider.ContactsContract.CommonDataKinds.Phone;
-import android.provider.ContactsContract.CommonDataKinds.SipAddress;
-import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
-import android.provider.ContactsContract.CommonDataKinds.Website;
+import android.os.SystemClock;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.DisplayNameSources;
 import android.provider.ContactsContract.Intents.Insert;
@@ -60,30 +55,18 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.android.contacts.ContactSaveService;
-import com.android.contacts.common.Collapser;
 import com.android.contacts.R;
-import com.android.contacts.common.model.AccountTypeManager;
 import com.android.contacts.common.model.Contact;
 import com.android.contacts.common.model.ContactLoader;
-import com.android.contacts.common.model.RawContact;
-import com.android.contacts.common.model.account.AccountType;
-import com.android.contacts.common.model.dataitem.DataItem;
-import com.android.contacts.common.model.dataitem.DataKind;
-import com.android.contacts.common.model.dataitem.EmailDataItem;
-import com.android.contacts.common.model.dataitem.ImDataItem;
 import com.android.contacts.common.util.Constants;
-import com.android.contacts.common.util.DataStatus;
 import com.android.contacts.common.util.UriUtils;
 import com.android.contacts.util.ImageViewDrawableSetter;
 import com.android.contacts.util.SchedulingUtils;
 import com.android.contacts.common.util.StopWatch;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 // TODO: Save selected tab index during rotation
 
@@ -100,13 +83,19 @@ public class QuickContactActivity extends Activity {
     private static final int POST_DRAW_WAIT_DURATION = 60;
     private static final boolean ENABLE_STOPWATCH = false;
 
+    /**
+     * Time budget for {@link #bindData}, which should only inflate and bind views. Binds that
+     * take longer are reported under {@link Constants#PERFORMANCE_TAG}.
+     */
+    private static final long BIND_TIME_BUDGET_MS = 16;
+
 
     @SuppressWarnings("deprecation")
     private static final String LEGACY_AUTHORITY = android.provider.Contacts.AUTHORITY;
 
     private Uri mLookupUri;
     private String[] mExcludeMimes;
-    private List<String> mSortedActionMimeTypes = Lists.newArrayList();
+    private List<String> mSortedActionMimeTypes = Collections.emptyList();
 
     private FloatingChildLayout mFloatingLayout;
 
@@ -123,39 +112,15 @@ public class QuickContactActivity extends Activity {
     private ViewPagerAdapter mPagerAdapter;
 
     private Contact mContactData;
-    private ContactLoader mContactLoader;
+    private QuickContactLoader mContactLoader;
 
     private final ImageViewDrawableSetter mPhotoSetter = new ImageViewDrawableSetter();
 
     /**
-     * Keeps the default action per mimetype. Empty if no default actions are set
-     */
-    private HashMap<String, Action> mDefaultsMap = new HashMap<String, Action>();
-
-    /**
-     * Set of {@link Action} that are associated with the aggregate currently
-     * displayed by this dialog, represented as a map from {@link String}
-     * MIME-type to a list of {@link Action}.
-     */
-    private ActionMultiMap mActions = new ActionMultiMap();
-
-    /**
-     * {@link #LEADING_MIMETYPES} and {@link #TRAILING_MIMETYPES} are used to sort MIME-types.
-     *
-     * <p>The MIME-types in {@link #LEADING_MIMETYPES} appear in the front of the dialog,
-     * in the order specified here.</p>
-     *
-     * <p>The ones in {@link #TRAILING_MIMETYPES} appear in the end of the dialog, in the order
-     * specified here.</p>
-     *
-     * <p>The rest go between them, in the order in the array.</p>
+     * Actions associated with the aggregate currently displayed by this dialog,
+     * built by {@link QuickContactLoader} on its background thread.
      */
-    private static final List<String> LEADING_MIMETYPES = Lists.newArrayList(
-            Phone.CONTENT_ITEM_TYPE, SipAddress.CONTENT_ITEM_TYPE, Email.CONTENT_ITEM_TYPE);
-
-    /** See {@link #LEADING_MIMETYPES}. */
-    private static final List<String> TRAILING_MIMETYPES = Lists.newArrayList(
-            StructuredPostal.CONTENT_ITEM_TYPE, Website.CONTENT_ITEM_TYPE);
+    private QuickContactActionModel mActionModel;
 
     /** Id for the background loader */
     private static final int LOADER_ID = 0;
@@ -221,7 +186,7 @@ public class QuickContactActivity extends Activity {
 
         mStopWatch.lap("i"); // intent parsed
 
-        mContactLoader = (ContactLoader) getLoaderManager().initLoader(
+        mContactLoader = (QuickContactLoader) getLoaderManager().initLoader(
                 LOADER_ID, null, mLoaderCallbacks);
 
         mStopWatch.lap("ld"); // loader started
@@ -353,21 +318,15 @@ public class QuickContactActivity extends Activity {
      * that the most-recent caller requested.
      */
     private boolean isMimeExcluded(String mimeType) {
-        if (mExcludeMimes == null) return false;
-        for (String excludedMime : mExcludeMimes) {
-            if (TextUtils.equals(excludedMime, mimeType)) {
-                return true;
-            }
-        }
-        return false;
+        return QuickContactActionModel.isMimeExcluded(mExcludeMimes, mimeType);
     }
 
     /**
      * Handle the result from the ContactLoader
      */
-    private void bindData(Contact data) {
+    private void bindData(Contact data, QuickContactActionModel actionModel) {
         mContactData = data;
-        final ResolveCache cache = ResolveCache.getInstance(this);
+        mActionModel = actionModel;
         final Context context = this;
 
         mOpenDetailsOrAddContactImage.setVisibility(isMimeExcluded(Contacts.CONTENT_ITEM_TYPE) ?
@@ -421,93 +380,15 @@ public class QuickContactActivity extends Activity {
             });
         }
 
-        mDefaultsMap.clear();
-
         mStopWatch.lap("sph"); // Start photo setting
 
         mPhotoSetter.setupContactPhoto(data, mPhotoView);
 
         mStopWatch.lap("ph"); // Photo set
 
-        for (RawContact rawContact : data.getRawContacts()) {
-            for (DataItem dataItem : rawContact.getDataItems()) {
-                final String mimeType = dataItem.getMimeType();
-                final AccountType accountType = rawContact.getAccountType(this);
-                final DataKind dataKind = AccountTypeManager.getInstance(this)
-                        .getKindOrFallback(accountType, mimeType);
-
-                // Skip this data item if MIME-type excluded
-                if (isMimeExcluded(mimeType)) continue;
-
-                final long dataId = dataItem.getId();
-                final boolean isPrimary = dataItem.isPrimary();
-                final boolean isSuperPrimary = dataItem.isSuperPrimary();
-
-                if (dataKind != null) {
-                    // Build an action for this data entry, find a mapping to a UI
-                    // element, build its summary from the cursor, and collect it
-                    // along with all others of this MIME-type.
-                    final Action action = new DataAction(context, dataItem, dataKind);
-                    final boolean wasAdded = considerAdd(action, cache, isSuperPrimary);
-                    if (wasAdded) {
-                        // Remember the default
-                        if (isSuperPrimary || (isPrimary && (mDefaultsMap.get(mimeType) == null))) {
-                            mDefaultsMap.put(mimeType, action);
-                        }
-                    }
-                }
-
-                // Handle Email rows with presence data as Im entry
-                final DataStatus status = data.getStatuses().get(dataId);
-                if (status != null && dataItem instanceof EmailDataItem) {
-                    final EmailDataItem email = (EmailDataItem) dataItem;
-                    final ImDataItem im = ImDataItem.createFromEmail(email);
-                    if (dataKind != null) {
-                        final DataAction action = new DataAction(context, im, dataKind);
-                        action.setPresence(status.getPresence());
-                        considerAdd(action, cache, isSuperPrimary);
-                    }
-                }
-            }
-        }
-
-        mStopWatch.lap("e"); // Entities inflated
-
-        // Collapse Action Lists (remove e.g. duplicate e-mail addresses from different sources)
-        for (List<Action> actionChildren : mActions.values()) {
-            Collapser.collapseList(actionChildren);
-        }
-
-        mStopWatch.lap("c"); // List collapsed
-
         setHeaderNameText(R.id.name, data.getDisplayName());
 
-        // All the mime-types to add.
-        final Set<String> containedTypes = new HashSet<String>(mActions.keySet());
-        mSortedActionMimeTypes.clear();
-        // First, add LEADING_MIMETYPES, which are most common.
-        for (String mimeType : LEADING_MIMETYPES) {
-            if (containedTypes.contains(mimeType)) {
-                mSortedActionMimeTypes.add(mimeType);
-                containedTypes.remove(mimeType);
-            }
-        }
-
-        // Add all the remaining ones that are not TRAILING
-        for (String mimeType : containedTypes.toArray(new String[containedTypes.size()])) {
-            if (!TRAILING_MIMETYPES.contains(mimeType)) {
-                mSortedActionMimeTypes.add(mimeType);
-                containedTypes.remove(mimeType);
-            }
-        }
-
-        // Then, add TRAILING_MIMETYPES, which are least common.
-        for (String mimeType : TRAILING_MIMETYPES) {
-            if (containedTypes.contains(mimeType)) {
-                containedTypes.remove(mimeType);
-                mSortedActionMimeTypes.add(mimeType);
-            }
-        }
+        mSortedActionMimeTypes = actionModel.getSortedMimeTypes();
         mPagerAdapter.notifyDataSetChanged();
 
         mStopWatch.lap("mt"); // Mime types initialized
@@ -515,36 +396,19 @@ public class QuickContactActivity extends Activity {
         // Add buttons for each mimetype
         mTrack.removeAllViews();
         for (String mimeType : mSortedActionMimeTypes) {
-            final View actionView = inflateAction(mimeType, cache, mTrack, data.getDisplayName());
+            final View actionView = inflateAction(mimeType, mTrack);
             mTrack.addView(actionView);
         }
 
         mStopWatch.lap("mt"); // Buttons added
 
-        final boolean hasData = !mSortedActionMimeTypes.isEmpty();
+        final boolean hasData = !actionModel.isEmpty();
         mTrackScroller.setVisibility(hasData ? View.VISIBLE : View.GONE);
         mSelectedTabRectangle.setVisibility(hasData ? View.VISIBLE : View.GONE);
         mLineAfterTrack.setVisibility(hasData ? View.VISIBLE : View.GONE);
         mListPager.setVisibility(hasData ? View.VISIBLE : View.GONE);
     }
 
-    /**
-     * Consider adding the given {@link Action}, which will only happen if
-     * {@link PackageManager} finds an application to handle
-     * {@link Action#getIntent()}.
-     * @param action the action to handle
-     * @param resolveCache cache of applications that can handle actions
-     * @param front indicates whether to add the action to the front of the list
-     * @return true if action has been added
-     */
-    private boolean considerAdd(Action action, ResolveCache resolveCache, boolean front) {
-        if (resolveCache.hasResolve(action)) {
-            mActions.put(action.getMimeType(), action, front);
-            return true;
-        }
-        return false;
-    }
-
     /**
      * Bind the correct image resource and click handlers to the header views
      *
@@ -564,21 +428,18 @@ public class QuickContactActivity extends Activity {
     }
 
     /**
-     * Inflate the in-track view for the action of the given MIME-type, collapsing duplicate values.
-     * Will use the icon provided by the {@link DataKind}.
+     * Inflate the in-track view for the action of the given MIME-type. The icon and description
+     * were already resolved by the {@link QuickContactActionModel}.
      */
-    private View inflateAction(String mimeType, ResolveCache resolveCache,
-                               ViewGroup root, String name) {
+    private View inflateAction(String mimeType, ViewGroup root) {
         final CheckableImageView typeView = (CheckableImageView) getLayoutInflater().inflate(
                 R.layout.quickcontact_track_button, root, false);
 
-        List<Action> children = mActions.get(mimeType);
         typeView.setTag(mimeType);
-        final Action firstInfo = children.get(0);
 
         // Set icon and listen for clicks
-        final CharSequence descrip = resolveCache.getDescription(firstInfo, name);
-        final Drawable icon = resolveCache.getIcon(firstInfo);
+        final CharSequence descrip = mActionModel.getDescription(mimeType);
+        final Drawable icon = mActionModel.getIcon(mimeType);
         typeView.setChecked(false);
         typeView.setContentDescription(descrip);
         typeView.setImageDrawable(icon);
@@ -623,10 +484,21 @@ public class QuickContactActivity extends Activity {
                 return;
             }
 
-            bindData(data);
+            final QuickContactActionModel actionModel =
+                    ((QuickContactLoader) loader).getActionModel(data);
+
+            final long bindStart = SystemClock.uptimeMillis();
+            bindData(data, actionModel);
+            final long bindTime = SystemClock.uptimeMillis() - bindStart;
 
             mStopWatch.lap("bd"); // bindData finished
 
+            if (bindTime > BIND_TIME_BUDGET_MS
+                    && Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+                Log.d(Constants.PERFORMANCE_TAG, "QuickContact bindData took " + bindTime
+                        + "ms, budget is " + BIND_TIME_BUDGET_MS + "ms");
+            }
+
             if (TRACE_LAUNCH) android.os.Debug.stopMethodTracing();
             if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
                 Log.d(Constants.PERFORMANCE_TAG, "QuickContact shown");
@@ -654,9 +526,7 @@ public class QuickContactActivity extends Activity {
             if (mLookupUri == null) {
                 Log.wtf(TAG, "Lookup uri wasn't initialized. Loader was started too early");
             }
-            return new ContactLoader(getApplicationContext(), mLookupUri,
-                    false /*loadGroupMetaData*/, false /*loadInvitableAccountTypes*/,
-                    false /*postViewNotification*/, true /*computeFormattedPhoneNumber*/);
+            return new QuickContactLoader(getApplicationContext(), mLookupUri, mExcludeMimes);
         }
     };
 
@@ -680,7 +550,7 @@ public class QuickContactActivity extends Activity {
         public Fragment getItem(int position) {
             final String mimeType = mSortedActionMimeTypes.get(position);
             QuickContactListFragment fragment = new QuickContactListFragment(mimeType);
-            final List<Action> actions = mActions.get(mimeType);
+            final List<Action> actions = mActionModel.getActions(mimeType);
             fragment.setActions(actions);
             return fragment;
         }
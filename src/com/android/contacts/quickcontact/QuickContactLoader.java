@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.quickcontact;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.android.contacts.common.model.Contact;
+import com.android.contacts.common.model.ContactLoader;
+
+/**
+ * {@link ContactLoader} that also builds the {@link QuickContactActionModel} for the loaded
+ * contact on the loader thread, so that {@link QuickContactActivity} only has to bind views.
+ */
+public class QuickContactLoader extends ContactLoader {
+    private final String[] mExcludeMimes;
+
+    private volatile Contact mModelContact;
+    private volatile QuickContactActionModel mActionModel;
+
+    public QuickContactLoader(Context context, Uri lookupUri, String[] excludeMimes) {
+        super(context, lookupUri, false /*loadGroupMetaData*/,
+                false /*loadInvitableAccountTypes*/, false /*postViewNotification*/,
+                true /*computeFormattedPhoneNumber*/);
+        mExcludeMimes = excludeMimes;
+    }
+
+    @Override
+    public Contact loadInBackground() {
+        final Contact result = super.loadInBackground();
+        if (result != null && result.isLoaded()) {
+            final QuickContactActionModel model = QuickContactActionModel.build(getContext(),
+                    result, mExcludeMimes);
+            mActionModel = model;
+            mModelContact = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the action model built for the given result of this loader. Falls back to
+     * building it on the calling thread if the result did not come from
+     * {@link #loadInBackground()}.
+     */
+    public QuickContactActionModel getActionModel(Contact contact) {
+        final QuickContactActionModel model = mActionModel;
+        if (model != null && mModelContact == contact) {
+            return model;
+        }
+        return QuickContactActionModel.build(getContext(), contact, mExcludeMimes);
+    }
+}
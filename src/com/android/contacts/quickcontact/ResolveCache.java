@@ -37,7 +37,8 @@ import java.util.List;
 
 /**
  * Internally hold a cache of scaled icons based on {@link PackageManager}
- * queries, keyed internally on MIME-type.
+ * queries, keyed internally on MIME-type. Entries may be resolved from a
+ * background thread, see {@link QuickContactActionModel}.
  */
 public class ResolveCache {
     /**
@@ -120,7 +121,7 @@ public class ResolveCache {
      * Get the {@link Entry} best associated with the given {@link Action},
      * or create and populate a new one if it doesn't exist.
      */
-    protected Entry getEntry(Action action) {
+    protected synchronized Entry getEntry(Action action) {
         final String mimeType = action.getMimeType();
         Entry entry = mCache.get(mimeType);
         if (entry != null) return entry;
@@ -229,7 +230,7 @@ public class ResolveCache {
         return getEntry(action).icon;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         mCache.clear();
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.accounts.AccountManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.contacts.common.model.AccountTypeManager;
+import com.android.contacts.common.model.RawContactDelta;
+import com.android.contacts.common.model.account.AccountType;
+import com.android.contacts.common.model.account.AccountWithDataSet;
+import com.google.common.collect.Maps;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An immutable view of the {@link AccountType}s of the accounts on the device, for binders that
+ * resolve the account type of every row they bind.
+ *
+ * Unlike {@link AccountTypeManager#getAccountType(String, String)}, looking up an account type
+ * in a snapshot neither allocates a key nor takes a lock.  The snapshot is invalidated by the
+ * same broadcasts that make {@link AccountTypeManager} reload its accounts (account, package and
+ * locale changes), and a new one is built the next time it is needed, so a binder should get the
+ * snapshot once per bind pass and use it for all the rows of that pass.
+ */
+public final class AccountTypeSnapshot {
+
+    private static volatile AccountTypeSnapshot sSnapshot;
+
+    /** Incremented by every broadcast that may change the accounts or their types. */
+    private static volatile int sGeneration;
+
+    /**
+     * {@link AccountTypeManager} reloads its accounts in the background when it receives the
+     * same broadcasts, so a snapshot built right after a broadcast may still see the old
+     * accounts.  The snapshot is invalidated once more after this delay to pick up the reload.
+     */
+    private static final long RELOAD_DELAY_MS = 2000;
+
+    private static boolean sReceiverRegistered;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private static final Runnable sInvalidateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sGeneration++;
+        }
+    };
+
+    private static final BroadcastReceiver sChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            sGeneration++;
+            sHandler.removeCallbacks(sInvalidateRunnable);
+            sHandler.postDelayed(sInvalidateRunnable, RELOAD_DELAY_MS);
+        }
+    };
+
+    private final AccountTypeManager mAccountTypeManager;
+
+    /** The value of {@link #sGeneration} when the snapshot was built. */
+    private final int mGeneration;
+
+    /** Account types, keyed by account type and then data set. */
+    private final HashMap<String, HashMap<String, AccountType>> mAccountTypes =
+            Maps.newHashMap();
+
+    private AccountTypeSnapshot(AccountTypeManager accountTypeManager, int generation) {
+        mAccountTypeManager = accountTypeManager;
+        mGeneration = generation;
+        final List<AccountWithDataSet> accounts = accountTypeManager.getAccounts(false);
+        if (accounts == null) {
+            return;
+        }
+        for (AccountWithDataSet account : accounts) {
+            HashMap<String, AccountType> dataSets = mAccountTypes.get(account.type);
+            if (dataSets == null) {
+                dataSets = Maps.newHashMap();
+                mAccountTypes.put(account.type, dataSets);
+            }
+            if (!dataSets.containsKey(account.dataSet)) {
+                dataSets.put(account.dataSet,
+                        accountTypeManager.getAccountType(account.type, account.dataSet));
+            }
+        }
+    }
+
+    /**
+     * Returns the current snapshot, building a new one if the accounts may have changed since
+     * the current one was built.
+     */
+    public static AccountTypeSnapshot get(Context context) {
+        registerChangeReceiver(context);
+        final AccountTypeManager accountTypeManager = AccountTypeManager.getInstance(context);
+        final int generation = sGeneration;
+        AccountTypeSnapshot snapshot = sSnapshot;
+        if (snapshot == null || snapshot.mAccountTypeManager != accountTypeManager
+                || snapshot.mGeneration != generation) {
+            snapshot = new AccountTypeSnapshot(accountTypeManager, generation);
+            sSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    private static synchronized void registerChangeReceiver(Context context) {
+        if (sReceiverRegistered) {
+            return;
+        }
+        final Context applicationContext = context.getApplicationContext();
+        final IntentFilter packageFilter = new IntentFilter(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        applicationContext.registerReceiver(sChangeReceiver, packageFilter, null, sHandler);
+        final IntentFilter accountFilter =
+                new IntentFilter(AccountManager.LOGIN_ACCOUNTS_CHANGED_ACTION);
+        accountFilter.addAction(Intent.ACTION_EXTERNAL_APPLICATIONS_AVAILABLE);
+        accountFilter.addAction(Intent.ACTION_EXTERNAL_APPLICATIONS_UNAVAILABLE);
+        accountFilter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        applicationContext.registerReceiver(sChangeReceiver, accountFilter, null, sHandler);
+        sReceiverRegistered = true;
+    }
+
+    /**
+     * Returns the account type for the given account type and data set.  Account types with no
+     * account on the device are looked up in {@link AccountTypeManager}, which falls back to a
+     * generic account type if the type is unknown.
+     */
+    public AccountType getAccountType(String accountType, String dataSet) {
+        final HashMap<String, AccountType> dataSets = mAccountTypes.get(accountType);
+        if (dataSets != null) {
+            final AccountType type = dataSets.get(dataSet);
+            if (type != null) {
+                return type;
+            }
+        }
+        return mAccountTypeManager.getAccountType(accountType, dataSet);
+    }
+
+    /**
+     * Returns the account type of the given raw contact.
+     */
+    public AccountType getAccountType(RawContactDelta state) {
+        return getAccountType(state.getAccountType(), state.getDataSet());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.util.LruCache;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Caches the collation keys of the {@link PhonebookCollatorFactory} collator, so that in-memory
+ * sorts of names and titles compare the bytes of precomputed keys instead of calling
+ * {@link Collator#compare} for every pair.
+ *
+ * The keys are for the default locale; all of them are dropped when it changes, either when
+ * {@link #onLocaleChanged} is called or when the next key is requested.  Thread safe.
+ */
+public final class CollationKeyCache {
+    private static final int MAX_KEYS = 2048;
+
+    private static final byte[] EMPTY_KEY = new byte[0];
+
+    private static final CollationKeyCache sInstance = new CollationKeyCache();
+
+    /**
+     * Compares strings in the order of the default locale, using the cached keys.  Nulls come
+     * first.
+     */
+    public static final Comparator<String> COMPARATOR = new Comparator<String>() {
+        @Override
+        public int compare(String lhs, String rhs) {
+            return compareKeys(sInstance.getKey(lhs), sInstance.getKey(rhs));
+        }
+    };
+
+    private final LruCache<String, byte[]> mKeys = new LruCache<String, byte[]>(MAX_KEYS);
+
+    // Guarded by this
+    private Locale mLocale;
+    private Collator mCollator;
+
+    public static CollationKeyCache getInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    CollationKeyCache() {
+    }
+
+    /**
+     * Returns the collation key of {@code source} for the default locale, as the bytes of a
+     * {@link java.text.CollationKey}.  A null string gets an empty key, which sorts first.
+     */
+    public byte[] getKey(String source) {
+        if (source == null) {
+            return EMPTY_KEY;
+        }
+        final Locale locale = Locale.getDefault();
+        synchronized (this) {
+            if (!locale.equals(mLocale)) {
+                mKeys.evictAll();
+                mLocale = locale;
+                mCollator = PhonebookCollatorFactory.getCollator();
+            }
+            byte[] key = mKeys.get(source);
+            if (key == null) {
+                key = mCollator.getCollationKey(source).toByteArray();
+                mKeys.put(source, key);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Drops all the keys unless they were made for {@code locale}.  Called when the configuration
+     * changes, so that the keys of the old locale don't stay around until the next sort.
+     */
+    public synchronized void onLocaleChanged(Locale locale) {
+        if (mLocale != null && !mLocale.equals(locale)) {
+            mKeys.evictAll();
+            mLocale = null;
+            mCollator = null;
+        }
+    }
+
+    /**
+     * Compares two keys returned by {@link #getKey} as unsigned bytes, which gives the same order
+     * as comparing the strings with the collator.
+     */
+    public static int compareKeys(byte[] lhs, byte[] rhs) {
+        final int length = Math.min(lhs.length, rhs.length);
+        for (int i = 0; i < length; i++) {
+            final int difference = (lhs[i] & 0xff) - (rhs[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return lhs.length - rhs.length;
+    }
+}
@@ -23,7 +23,10 @@ import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
+import android.os.AsyncTask;
 import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
 import android.widget.ImageView;
 
 import com.android.contacts.common.ContactPhotoManager;
@@ -34,14 +37,27 @@ import java.util.Arrays;
 /**
  * Initialized with a target ImageView. When provided with a compressed image
  * (i.e. a byte[]), it appropriately updates the ImageView's Drawable.
+ *
+ * Images are identified by their length and a hash of a sample of their bytes,
+ * and the whole images are compared only when those match. They are decoded
+ * off the UI thread at roughly the size of the target view. Recently decoded
+ * photos are kept in a small cache shared by all setters, so that switching
+ * back and forth between contacts does not decode the same photo again.
  */
 public class ImageViewDrawableSetter {
     private ImageView mTarget;
     private byte[] mCompressed;
+    private PhotoKey mCompressedKey;
     private Drawable mPreviousDrawable;
+    private DecodeTask mDecodeTask;
     private int mDurationInMillis = 0;
     private static final String TAG = "ImageViewDrawableSetter";
 
+    /** Upper bound on the memory used by {@link #sBitmapCache}. */
+    private static final int MAX_CACHE_SIZE_BYTES = 8 * 1024 * 1024;
+
+    private static LruCache<PhotoKey, Bitmap> sBitmapCache;
+
     public ImageViewDrawableSetter() {
     }
 
@@ -69,8 +85,10 @@ public class ImageViewDrawableSetter {
      */
     protected void setTarget(ImageView target) {
         if (mTarget != target) {
+            cancelDecode();
             mTarget = target;
             mCompressed = null;
+            mCompressedKey = null;
             mPreviousDrawable = null;
         }
     }
@@ -79,27 +97,67 @@ public class ImageViewDrawableSetter {
         return mCompressed;
     }
 
+    /**
+     * Returns the bitmap currently displayed for the given compressed image, or null if that
+     * image is still being decoded or is no longer the one displayed.
+     */
+    protected Bitmap getBitmapFor(byte[] compressed) {
+        if (compressed == null || mDecodeTask != null) return null;
+        if (compressed != mCompressed && !PhotoKey.of(compressed).equals(mCompressedKey)) {
+            return null;
+        }
+        return previousBitmap();
+    }
+
+    /**
+     * Updates the target with the given compressed image. If the image is already decoded (or
+     * cached) it is applied immediately and its bitmap is returned; otherwise it is decoded in
+     * the background and null is returned.
+     */
     protected Bitmap setCompressedImage(byte[] compressed) {
-        if (mPreviousDrawable == null) {
+        PhotoKey key = null;
+        if (mPreviousDrawable == null && mDecodeTask == null) {
             // If we don't already have a drawable, skip the exit-early test
             // below; otherwise we might not end up setting the default image.
-        } else if (mPreviousDrawable != null && Arrays.equals(mCompressed, compressed)) {
-            // TODO: the worst case is when the arrays are equal but not
-            // identical. This takes about 1ms (more with high-res photos). A
-            // possible optimization is to sparsely sample chunks of the arrays
-            // to compare.
-            return previousBitmap();
+        } else if (compressed == mCompressed) {
+            return mDecodeTask == null ? previousBitmap() : null;
+        } else if (compressed != null) {
+            key = PhotoKey.of(compressed);
+            if (key.equals(mCompressedKey)) {
+                mCompressed = compressed;
+                return mDecodeTask == null ? previousBitmap() : null;
+            }
         }
 
-        final Drawable newDrawable = (compressed == null)
-                ? defaultDrawable()
-                : decodedBitmapDrawable(compressed);
+        cancelDecode();
+        if (key == null && compressed != null) {
+            key = PhotoKey.of(compressed);
+        }
 
         // Remember this for next time, so that we can check if it changed.
         mCompressed = compressed;
+        mCompressedKey = key;
 
+        if (compressed == null) {
+            applyDrawable(defaultDrawable());
+            return previousBitmap();
+        }
+
+        final int targetSize = getTargetSize();
+        final Bitmap cached = getBitmapCache().get(key);
+        if (cached != null && Math.max(cached.getWidth(), cached.getHeight()) >= targetSize) {
+            applyDrawable(new BitmapDrawable(mTarget.getResources(), cached));
+            return previousBitmap();
+        }
+
+        mDecodeTask = new DecodeTask(compressed, key, targetSize);
+        mDecodeTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        return null;
+    }
+
+    private void applyDrawable(Drawable newDrawable) {
         // If we don't have a new Drawable, something went wrong... bail out.
-        if (newDrawable == null) return previousBitmap();
+        if (newDrawable == null) return;
 
         if (mPreviousDrawable == null || mDurationInMillis == 0) {
             // Set the new one immediately.
@@ -117,14 +175,35 @@ public class ImageViewDrawableSetter {
         // Remember this for next time, so that we can transition from it to the
         // new one.
         mPreviousDrawable = newDrawable;
+    }
 
-        return previousBitmap();
+    private void cancelDecode() {
+        if (mDecodeTask != null) {
+            mDecodeTask.cancel(false);
+            mDecodeTask = null;
+        }
     }
 
     private Bitmap previousBitmap() {
-        return (mPreviousDrawable == null)
-                ? null
-                : ((BitmapDrawable) mPreviousDrawable).getBitmap();
+        return (mPreviousDrawable instanceof BitmapDrawable)
+                ? ((BitmapDrawable) mPreviousDrawable).getBitmap()
+                : null;
+    }
+
+    /**
+     * Returns the larger dimension of the target view in pixels, or 0 if the view has not been
+     * measured yet and its layout params do not specify a fixed size.
+     */
+    private int getTargetSize() {
+        int width = mTarget.getWidth();
+        int height = mTarget.getHeight();
+        if (width <= 0 || height <= 0) {
+            final ViewGroup.LayoutParams params = mTarget.getLayoutParams();
+            if (params == null) return 0;
+            width = params.width;
+            height = params.height;
+        }
+        return Math.max(Math.max(width, height), 0);
     }
 
     /**
@@ -141,10 +220,108 @@ public class ImageViewDrawableSetter {
         }
     }
 
-    private BitmapDrawable decodedBitmapDrawable(byte[] compressed) {
-        Resources rsrc = mTarget.getResources();
-        Bitmap bitmap = BitmapFactory.decodeByteArray(compressed, 0, compressed.length);
-        return new BitmapDrawable(rsrc, bitmap);
+    /**
+     * Decodes the compressed image, subsampling it by the largest power of two that keeps it at
+     * least {@code targetSize} pixels in its larger dimension. A {@code targetSize} of 0 decodes
+     * the image at full size.
+     */
+    private static Bitmap decodeBitmap(byte[] compressed, int targetSize) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        if (targetSize > 0) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(compressed, 0, compressed.length, options);
+            final int size = Math.max(options.outWidth, options.outHeight);
+            int sampleSize = 1;
+            while (size / (sampleSize * 2) >= targetSize) {
+                sampleSize *= 2;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+        }
+        return BitmapFactory.decodeByteArray(compressed, 0, compressed.length, options);
+    }
+
+    private static synchronized LruCache<PhotoKey, Bitmap> getBitmapCache() {
+        if (sBitmapCache == null) {
+            final int maxSize = (int) Math.min(MAX_CACHE_SIZE_BYTES,
+                    Runtime.getRuntime().maxMemory() / 16);
+            sBitmapCache = new LruCache<PhotoKey, Bitmap>(maxSize) {
+                @Override
+                protected int sizeOf(PhotoKey key, Bitmap value) {
+                    // The key holds on to the compressed image as well
+                    return value.getByteCount() + key.mBytes.length;
+                }
+            };
+        }
+        return sBitmapCache;
+    }
+
+    private class DecodeTask extends AsyncTask<Void, Void, Bitmap> {
+        private final byte[] mBytes;
+        private final PhotoKey mKey;
+        private final int mTargetSize;
+
+        public DecodeTask(byte[] bytes, PhotoKey key, int targetSize) {
+            mBytes = bytes;
+            mKey = key;
+            mTargetSize = targetSize;
+        }
+
+        @Override
+        protected Bitmap doInBackground(Void... params) {
+            return decodeBitmap(mBytes, mTargetSize);
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap bitmap) {
+            if (mDecodeTask != this) return;
+            mDecodeTask = null;
+            if (bitmap == null) {
+                Log.w(TAG, "Unable to decode contact photo");
+                return;
+            }
+            getBitmapCache().put(mKey, bitmap);
+            applyDrawable(new BitmapDrawable(mTarget.getResources(), bitmap));
+        }
     }
 
+    /**
+     * Identifies a compressed image by its content. The hash only covers the length and
+     * {@link #HASH_SAMPLE_COUNT} bytes spread over the image, so it is cheap to compute on the UI
+     * thread; the whole images are only compared when the hashes match.
+     */
+    private static final class PhotoKey {
+        private static final int HASH_SAMPLE_COUNT = 32;
+
+        private final byte[] mBytes;
+        private final int mHash;
+
+        private PhotoKey(byte[] bytes) {
+            mBytes = bytes;
+            int hash = bytes.length;
+            final int step = Math.max(1, bytes.length / HASH_SAMPLE_COUNT);
+            for (int i = bytes.length - 1; i >= 0; i -= step) {
+                hash = 31 * hash + bytes[i];
+            }
+            mHash = hash;
+        }
+
+        public static PhotoKey of(byte[] compressed) {
+            return new PhotoKey(compressed);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PhotoKey)) return false;
+            final PhotoKey other = (PhotoKey) o;
+            return mHash == other.mHash
+                    && (mBytes == other.mBytes || Arrays.equals(mBytes, other.mBytes));
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.telephony.PhoneNumberUtils;
+
+import com.android.contacts.common.Collapser;
+import com.android.contacts.common.Collapser.Collapsible;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Linear time alternative to {@link Collapser#collapseList}. Each item is normalized to a
+ * collapse key once, and {@link Collapsible#shouldCollapseWith} is only called for items that
+ * share the same key.
+ */
+public final class KeyedCollapser {
+    /**
+     * Number of trailing digits used as the collapse key of a phone number. Phone numbers that
+     * {@link com.android.contacts.common.MoreContactUtils#shouldCollapse} matches always end
+     * with the same digits once keypad letters are converted, even when they are formatted
+     * differently or only one of them has a country code.
+     */
+    private static final int PHONE_KEY_DIGITS = 4;
+
+    /**
+     * Computes the collapse key of an item. Two items that may collapse with each other must
+     * have equal keys; items with different keys are never compared.
+     */
+    public interface KeyFunction<T> {
+        public String getCollapseKey(T item);
+    }
+
+    private KeyedCollapser() {
+    }
+
+    /**
+     * Collapses the given list in place. As with {@link Collapser#collapseList}, the first of
+     * two collapsible items is kept and absorbs the later one, so the order of the remaining
+     * items is unchanged.
+     *
+     * Unlike {@link Collapser#collapseList}, which leaves lists of more than 20 items alone,
+     * lists of any length are collapsed.
+     */
+    public static <T extends Collapsible<T>> void collapseList(List<T> list,
+            KeyFunction<? super T> keyFunction) {
+        final int size = list.size();
+        if (size < 2) return;
+
+        final HashMap<String, ArrayList<T>> buckets = new HashMap<String, ArrayList<T>>(size * 2);
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            final T item = list.get(i);
+            final String key = keyFunction.getCollapseKey(item);
+            ArrayList<T> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<T>(1);
+                buckets.put(key, bucket);
+            }
+
+            boolean collapsed = false;
+            for (int j = 0; j < bucket.size(); j++) {
+                final T candidate = bucket.get(j);
+                if (candidate.shouldCollapseWith(item)) {
+                    candidate.collapseWith(item);
+                    collapsed = true;
+                    break;
+                }
+            }
+            if (!collapsed) {
+                bucket.add(item);
+                list.set(kept++, item);
+            }
+        }
+
+        // Drop the collapsed items, which are now at the end of the list
+        list.subList(kept, size).clear();
+    }
+
+    /**
+     * Returns a collapse key for a data item of the given MIME-type, consistent with
+     * {@link com.android.contacts.common.MoreContactUtils#shouldCollapse}: the data itself,
+     * or for phone numbers the trailing digits of the number, since numbers may collapse even
+     * if they are formatted differently.
+     */
+    public static String getDataCollapseKey(String mimeType, CharSequence data) {
+        if (data == null) return mimeType;
+        if (!Phone.CONTENT_ITEM_TYPE.equals(mimeType)) {
+            return mimeType + '/' + data;
+        }
+
+        // Normalize like MoreContactUtils.shouldCollapse, which converts keypad letters and
+        // matches the numbers with PhoneNumberUtil.isNumberMatch. Digits after a pause or wait
+        // are ignored: those are compared separately or are extensions, which isNumberMatch
+        // ignores when only one of the numbers has one.
+        final String number = PhoneNumberUtils.convertKeypadLettersToDigits(data.toString());
+        int end = number.length();
+        for (int i = 0; i < number.length(); i++) {
+            final char c = number.charAt(i);
+            if (c == PhoneNumberUtils.PAUSE || c == PhoneNumberUtils.WAIT) {
+                end = i;
+                break;
+            }
+        }
+        final StringBuilder key = new StringBuilder(PHONE_KEY_DIGITS);
+        for (int i = end - 1; i >= 0 && key.length() < PHONE_KEY_DIGITS; i--) {
+            final char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                key.append(c);
+            }
+        }
+        return mimeType + '/' + key;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive longs, such as row IDs, that doesn't box its elements.
+ *
+ * Elements are kept in an open-addressed table with linear probing, so {@link #add},
+ * {@link #remove} and {@link #contains} take constant time on average.  Not thread safe.
+ */
+public final class LongHashSet {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /** Marks an empty slot; the element 0 is tracked by {@link #mHasZero} instead. */
+    private static final long EMPTY = 0;
+
+    private long[] mTable;
+    private int mSize;
+    private boolean mHasZero;
+
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a set that can hold {@code expectedSize} elements without growing.
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        mTable = new long[capacity];
+    }
+
+    public int size() {
+        return mHasZero ? mSize + 1 : mSize;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return mHasZero;
+        }
+        final long[] table = mTable;
+        final int mask = table.length - 1;
+        for (int i = indexOf(value, mask); ; i = (i + 1) & mask) {
+            final long element = table[i];
+            if (element == value) {
+                return true;
+            }
+            if (element == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds the value to the set.
+     *
+     * @return true if the set did not already contain the value.
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            final boolean added = !mHasZero;
+            mHasZero = true;
+            return added;
+        }
+        final int mask = mTable.length - 1;
+        int i = indexOf(value, mask);
+        while (mTable[i] != EMPTY) {
+            if (mTable[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        mTable[i] = value;
+        if (++mSize * 2 > mTable.length) {
+            rehash(mTable.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the value from the set.
+     *
+     * @return true if the set contained the value.
+     */
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            final boolean removed = mHasZero;
+            mHasZero = false;
+            return removed;
+        }
+        final long[] table = mTable;
+        final int mask = table.length - 1;
+        int i = indexOf(value, mask);
+        while (table[i] != value) {
+            if (table[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        // Shift the following elements of the probe sequence back, so that lookups never stop
+        // at the slot that was just freed.
+        int gap = i;
+        for (int j = (gap + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+            final int home = indexOf(table[j], mask);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                table[gap] = table[j];
+                gap = j;
+            }
+        }
+        table[gap] = EMPTY;
+        mSize--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(mTable, EMPTY);
+        mSize = 0;
+        mHasZero = false;
+    }
+
+    /**
+     * Returns the elements of the set, in no particular order.
+     */
+    public long[] toArray() {
+        final long[] result = new long[size()];
+        int count = 0;
+        if (mHasZero) {
+            result[count++] = EMPTY;
+        }
+        for (long element : mTable) {
+            if (element != EMPTY) {
+                result[count++] = element;
+            }
+        }
+        return result;
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldTable = mTable;
+        mTable = new long[capacity];
+        final int mask = capacity - 1;
+        for (long element : oldTable) {
+            if (element != EMPTY) {
+                int i = indexOf(element, mask);
+                while (mTable[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                mTable[i] = element;
+            }
+        }
+    }
+
+    private static int indexOf(long value, int mask) {
+        // Row IDs are mostly sequential; mix the bits so that they don't cluster.
+        final long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
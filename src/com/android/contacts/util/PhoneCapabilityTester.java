@@ -16,70 +16,200 @@
 
 package com.android.contacts.util;
 
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.net.sip.SipManager;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.provider.Telephony;
 import android.telephony.TelephonyManager;
+import android.util.LruCache;
 
 import com.android.contacts.common.CallUtil;
 import com.android.contacts.R;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Provides static functions to quickly test the capabilities of this device. The static
- * members are not safe for threading
+ * Provides static functions to quickly test the capabilities of this device.
+ *
+ * The capabilities are computed once, preferably in the background with
+ * {@link #initializeInBackground}, and kept until a package is added, removed or changed or the
+ * default SMS app changes; they are then computed again in the background and the registered
+ * {@link Listener}s are told.  In between, none of the functions below query the
+ * {@link PackageManager} more than once for the same intent.  Thread safe.
  */
 public final class PhoneCapabilityTester {
-    private static boolean sIsInitialized;
-    private static boolean sIsPhone;
-    private static boolean sIsSipPhone;
+    /**
+     * Notified on the main thread when the capabilities have changed.
+     */
+    public interface Listener {
+        void onCapabilitiesChanged();
+    }
+
+    /**
+     * An immutable snapshot of the capabilities.
+     */
+    private static final class Capabilities {
+        final boolean isPhone;
+        final boolean isSipPhone;
+        final ComponentName smsComponent;
+
+        Capabilities(boolean isPhone, boolean isSipPhone, ComponentName smsComponent) {
+            this.isPhone = isPhone;
+            this.isSipPhone = isSipPhone;
+            this.smsComponent = smsComponent;
+        }
+    }
+
+    private static final int MAX_REGISTERED_INTENTS = 64;
+
+    private static volatile Capabilities sCapabilities;
+    private static boolean sReceiverRegistered;
+
+    /** Whether an intent has a receiver, by {@link Intent#filterEquals}. */
+    private static final LruCache<Intent.FilterComparison, Boolean> sRegisteredIntents =
+            new LruCache<Intent.FilterComparison, Boolean>(MAX_REGISTERED_INTENTS);
+
+    // Only used on the main thread
+    private static final ArrayList<Listener> sListeners = new ArrayList<Listener>();
+
+    private static final BroadcastReceiver sChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(final Context context, Intent intent) {
+            sRegisteredIntents.evictAll();
+            new AsyncTask<Void, Void, Void>() {
+                @Override
+                protected Void doInBackground(Void... params) {
+                    sCapabilities = computeCapabilities(context);
+                    return null;
+                }
+
+                @Override
+                protected void onPostExecute(Void result) {
+                    for (int i = sListeners.size() - 1; i >= 0; i--) {
+                        sListeners.get(i).onCapabilitiesChanged();
+                    }
+                }
+            }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    };
+
+    /**
+     * Computes the capabilities, unless they are known already.  Meant to be called at startup
+     * on a background thread, so that the first bind doesn't have to.
+     */
+    public static void initializeInBackground(Context context) {
+        getCapabilities(context);
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    public static void registerListener(Listener listener) {
+        if (!sListeners.contains(listener)) {
+            sListeners.add(listener);
+        }
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    public static void unregisterListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    private static Capabilities getCapabilities(Context context) {
+        Capabilities capabilities = sCapabilities;
+        if (capabilities == null) {
+            synchronized (PhoneCapabilityTester.class) {
+                capabilities = sCapabilities;
+                if (capabilities == null) {
+                    final Context applicationContext = context.getApplicationContext();
+                    registerChangeReceiver(applicationContext);
+                    capabilities = computeCapabilities(applicationContext);
+                    sCapabilities = capabilities;
+                }
+            }
+        }
+        return capabilities;
+    }
+
+    private static void registerChangeReceiver(Context context) {
+        if (sReceiverRegistered) {
+            return;
+        }
+        final IntentFilter packageFilter = new IntentFilter(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        context.registerReceiver(sChangeReceiver, packageFilter, null, mainHandler);
+        context.registerReceiver(sChangeReceiver,
+                new IntentFilter(Telephony.Sms.Intents.ACTION_DEFAULT_SMS_PACKAGE_CHANGED),
+                null, mainHandler);
+        sReceiverRegistered = true;
+    }
+
+    private static Capabilities computeCapabilities(Context context) {
+        final TelephonyManager telephonyManager = new TelephonyManager(context);
+        // Is the device physically capabable of making phone calls?
+        final boolean isPhone = telephonyManager.isVoiceCapable();
+        final boolean isSipPhone = isPhone && SipManager.isVoipSupported(context);
+        return new Capabilities(isPhone, isSipPhone, findSmsComponent(context));
+    }
 
     /**
      * Tests whether the Intent has a receiver registered. This can be used to show/hide
      * functionality (like Phone, SMS)
      */
     public static boolean isIntentRegistered(Context context, Intent intent) {
-        final PackageManager packageManager = context.getPackageManager();
-        final List<ResolveInfo> receiverList = packageManager.queryIntentActivities(intent,
-                PackageManager.MATCH_DEFAULT_ONLY);
-        return receiverList.size() > 0;
+        // Make sure the cache is flushed when packages change
+        getCapabilities(context);
+        final Intent.FilterComparison key = new Intent.FilterComparison(intent);
+        Boolean registered = sRegisteredIntents.get(key);
+        if (registered == null) {
+            final PackageManager packageManager = context.getPackageManager();
+            final List<ResolveInfo> receiverList = packageManager.queryIntentActivities(intent,
+                    PackageManager.MATCH_DEFAULT_ONLY);
+            registered = receiverList.size() > 0;
+            sRegisteredIntents.put(key, registered);
+        }
+        return registered;
     }
 
     /**
      * Returns true if this device can be used to make phone calls
      */
     public static boolean isPhone(Context context) {
-        if (!sIsInitialized) initialize(context);
-        // Is the device physically capabable of making phone calls?
-        return sIsPhone;
-    }
-
-    private static void initialize(Context context) {
-        final TelephonyManager telephonyManager = new TelephonyManager(context);
-        sIsPhone = telephonyManager.isVoiceCapable();
-        sIsSipPhone = sIsPhone && SipManager.isVoipSupported(context);
-        sIsInitialized = true;
+        return getCapabilities(context).isPhone;
     }
 
     /**
      * Returns true if this device can be used to make sip calls
      */
     public static boolean isSipPhone(Context context) {
-        if (!sIsInitialized) initialize(context);
-        return sIsSipPhone;
+        return getCapabilities(context).isSipPhone;
     }
 
     /**
      * Returns the component name to use for sending to sms or null.
      */
     public static ComponentName getSmsComponent(Context context) {
+        return getCapabilities(context).smsComponent;
+    }
+
+    private static ComponentName findSmsComponent(Context context) {
         String smsPackage = Telephony.Sms.getDefaultSmsPackage(context);
         if (smsPackage != null) {
             final PackageManager packageManager = context.getPackageManager();
@@ -22,9 +22,24 @@ import java.util.Locale;
 /**
  * Returns the collator that can be used to sort contact list entries. This
  * collator is the same as the one that is used in sqlite.
+ *
+ * To sort many strings, or the same strings repeatedly, use the keys of
+ * {@link CollationKeyCache} instead.
  */
 public final class PhonebookCollatorFactory {
-    public static final Collator getCollator() {
-        return Collator.getInstance(Locale.getDefault());
+    private static Locale sLocale;
+    private static Collator sCollator;
+
+    /**
+     * Returns a collator for the default locale.  Collators aren't thread safe, so each caller
+     * gets its own copy of the one created for the locale.
+     */
+    public static final synchronized Collator getCollator() {
+        final Locale locale = Locale.getDefault();
+        if (sCollator == null || !locale.equals(sLocale)) {
+            sCollator = Collator.getInstance(locale);
+            sLocale = locale;
+        }
+        return (Collator) sCollator.clone();
     }
 }
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.contacts.common.util.Constants;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the work done when the app starts, in an order given by explicit dependencies and
+ * priorities.
+ *
+ * {@link #PRIORITY_FIRST_FRAME} tasks start as soon as their dependencies are done.
+ * {@link #PRIORITY_IDLE} tasks wait until the first activity has drawn its first frame, the main
+ * thread has gone idle after that and all first frame tasks are done, unless a first frame task
+ * depends on them.  The host reports the first frame with {@link #onFirstFrameDrawn}; until then,
+ * for instance in a process started only for a service, idle tasks don't run.  Tasks run on the
+ * thread pool unless they are created to run on the main thread.  Each task is timed and logged
+ * under {@link Constants#PERFORMANCE_TAG}.
+ *
+ * Tasks can be scheduled from any thread.
+ */
+public final class StartupScheduler {
+    private static final String TAG = "StartupScheduler";
+
+    /** Needed for the first frame of the first activity. */
+    public static final int PRIORITY_FIRST_FRAME = 0;
+
+    /** Can wait until the first activity is up. */
+    public static final int PRIORITY_IDLE = 1;
+
+    /**
+     * A piece of startup work.
+     */
+    public static final class Task {
+        private final String mName;
+        private final int mPriority;
+        private final boolean mOnMainThread;
+        private final Runnable mRunnable;
+        private final String[] mDependencies;
+
+        private long mScheduledTime;
+
+        /**
+         * @param name unique name of the task, which other tasks use to depend on it
+         * @param priority {@link #PRIORITY_FIRST_FRAME} or {@link #PRIORITY_IDLE}
+         * @param onMainThread whether the task must run on the main thread
+         * @param runnable the work
+         * @param dependencies names of the tasks that must be done before this one starts
+         */
+        public Task(String name, int priority, boolean onMainThread, Runnable runnable,
+                String... dependencies) {
+            mName = name;
+            mPriority = priority;
+            mOnMainThread = onMainThread;
+            mRunnable = runnable;
+            mDependencies = dependencies;
+        }
+
+        public String getName() {
+            return mName;
+        }
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mExecutor;
+
+    // Only used on the main thread
+    private final ArrayList<Task> mPending = new ArrayList<Task>();
+    private final HashSet<String> mDone = new HashSet<String>();
+    private int mRunningCount;
+    private int mRunningFirstFrameCount;
+    private boolean mFirstFrameDrawn;
+    private boolean mIdle;
+    private final long mStartTime = SystemClock.uptimeMillis();
+
+    public StartupScheduler() {
+        this(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    public StartupScheduler(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Called once the first activity has drawn its first frame, which lets the idle tasks start
+     * the next time the main thread goes idle.  Must be called on the main thread.
+     */
+    public void onFirstFrameDrawn() {
+        if (mFirstFrameDrawn) {
+            return;
+        }
+        mFirstFrameDrawn = true;
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, TAG + ": first frame drawn "
+                    + (SystemClock.uptimeMillis() - mStartTime) + "ms after startup");
+        }
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                mIdle = true;
+                dispatch();
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Returns whether {@link #onFirstFrameDrawn} was called.  Must be called on the main thread.
+     */
+    public boolean isFirstFrameDrawn() {
+        return mFirstFrameDrawn;
+    }
+
+    /**
+     * Adds a task, which starts once its dependencies are done and its priority allows it.
+     */
+    public void schedule(final Task task) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    schedule(task);
+                }
+            });
+            return;
+        }
+        task.mScheduledTime = SystemClock.uptimeMillis();
+        mPending.add(task);
+        dispatch();
+    }
+
+    /**
+     * Returns whether the named task has finished.  Must be called on the main thread.
+     */
+    public boolean isDone(String name) {
+        return mDone.contains(name);
+    }
+
+    /**
+     * Starts the pending tasks that can start now, first frame tasks first.
+     */
+    private void dispatch() {
+        final boolean idleAllowed = mIdle && !hasPendingFirstFrameWork();
+        for (int priority = PRIORITY_FIRST_FRAME; priority <= PRIORITY_IDLE; priority++) {
+            for (int i = 0; i < mPending.size(); i++) {
+                final Task task = mPending.get(i);
+                if (task.mPriority != priority || !dependenciesDone(task)) {
+                    continue;
+                }
+                if (priority == PRIORITY_IDLE && !idleAllowed && !isNeededForFirstFrame(task)) {
+                    continue;
+                }
+                mPending.remove(i--);
+                start(task);
+            }
+        }
+    }
+
+    private boolean hasPendingFirstFrameWork() {
+        if (mRunningFirstFrameCount > 0) {
+            return true;
+        }
+        for (Task task : mPending) {
+            if (task.mPriority == PRIORITY_FIRST_FRAME) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean dependenciesDone(Task task) {
+        for (String dependency : task.mDependencies) {
+            if (!mDone.contains(dependency)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a pending first frame task depends on the given task, directly or not.
+     */
+    private boolean isNeededForFirstFrame(Task task) {
+        for (Task pending : mPending) {
+            if (pending.mPriority == PRIORITY_FIRST_FRAME
+                    && dependsOn(pending, task.mName, new HashSet<String>())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean dependsOn(Task task, String name, HashSet<String> visited) {
+        if (!visited.add(task.mName)) {
+            return false;
+        }
+        for (String dependency : task.mDependencies) {
+            if (dependency.equals(name)) {
+                return true;
+            }
+            final Task dependencyTask = findPending(dependency);
+            if (dependencyTask != null && dependsOn(dependencyTask, name, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Task findPending(String name) {
+        for (Task task : mPending) {
+            if (task.mName.equals(name)) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private void start(final Task task) {
+        mRunningCount++;
+        if (task.mPriority == PRIORITY_FIRST_FRAME) {
+            mRunningFirstFrameCount++;
+        }
+        final Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                final long start = SystemClock.uptimeMillis();
+                try {
+                    task.mRunnable.run();
+                } finally {
+                    final long end = SystemClock.uptimeMillis();
+                    if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+                        Log.d(Constants.PERFORMANCE_TAG, TAG + ": " + task.mName + " took "
+                                + (end - start) + "ms after waiting "
+                                + (start - task.mScheduledTime) + "ms ("
+                                + (task.mOnMainThread ? "main thread" : "background") + ")");
+                    }
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onTaskDone(task);
+                        }
+                    });
+                }
+            }
+        };
+        if (task.mOnMainThread) {
+            mMainHandler.post(runnable);
+        } else {
+            mExecutor.execute(runnable);
+        }
+    }
+
+    private void onTaskDone(Task task) {
+        mRunningCount--;
+        if (task.mPriority == PRIORITY_FIRST_FRAME) {
+            mRunningFirstFrameCount--;
+        }
+        mDone.add(task.mName);
+        dispatch();
+        if (mRunningCount == 0 && mPending.isEmpty()
+                && Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, TAG + ": all " + mDone.size() + " tasks done "
+                    + (SystemClock.uptimeMillis() - mStartTime) + "ms after startup");
+        }
+    }
+}
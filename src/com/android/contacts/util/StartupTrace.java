@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import com.android.contacts.common.util.Constants;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Phases and milestones of the startup of the people screen.  Phases show up as sections in
+ * systrace, and both are logged under {@link Constants#PERFORMANCE_TAG} and reported to the
+ * {@link Listener} set by the startup benchmark.  All methods must be called on the main thread.
+ */
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+
+    public static final String PHASE_ON_CREATE = "PeopleActivity.onCreate";
+    public static final String PHASE_INFLATE = "PeopleActivity.inflate";
+    public static final String PHASE_TAB_PAGER = "PeopleActivity.tabPager";
+    public static final String PHASE_FRAGMENTS = "PeopleActivity.fragments";
+    public static final String PHASE_ACTION_BAR = "ActionBarAdapter.initialize";
+    public static final String PHASE_PROVIDER_STATUS = "ProviderStatusWatcher.start";
+
+    /** Milestone: the contact list loader delivered a result. */
+    public static final String MARK_LIST_LOADED = "ContactBrowseListFragment.onLoadFinished";
+
+    /** Milestone: the contact list was drawn with the result of its loader. */
+    public static final String MARK_LIST_DRAWN = "ContactBrowseListFragment.drawn";
+
+    /**
+     * Receives the phases and milestones, with times from {@link SystemClock#uptimeMillis}.
+     */
+    @VisibleForTesting
+    public interface Listener {
+        void onPhase(String phase, long startMillis, long endMillis);
+        void onMark(String mark, long timeMillis);
+    }
+
+    private static Listener sListener;
+
+    private StartupTrace() {
+    }
+
+    @VisibleForTesting
+    public static void setListener(Listener listener) {
+        sListener = listener;
+    }
+
+    /**
+     * Returns whether the milestones are reported anywhere, so that callers can skip the work
+     * needed to detect them.
+     */
+    public static boolean isEnabled() {
+        return sListener != null || Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG);
+    }
+
+    /**
+     * Starts a phase, which must be ended with {@link #end} on the same thread.
+     *
+     * @return the start time to pass to {@link #end}
+     */
+    public static long begin(String phase) {
+        Trace.beginSection(phase);
+        return SystemClock.uptimeMillis();
+    }
+
+    public static void end(String phase, long startMillis) {
+        Trace.endSection();
+        final long endMillis = SystemClock.uptimeMillis();
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, TAG + ": " + phase + " took "
+                    + (endMillis - startMillis) + "ms");
+        }
+        if (sListener != null) {
+            sListener.onPhase(phase, startMillis, endMillis);
+        }
+    }
+
+    public static void mark(String mark) {
+        final long timeMillis = SystemClock.uptimeMillis();
+        if (Log.isLoggable(Constants.PERFORMANCE_TAG, Log.DEBUG)) {
+            Log.d(Constants.PERFORMANCE_TAG, TAG + ": " + mark + " at " + timeMillis);
+        }
+        if (sListener != null) {
+            sListener.onMark(mark, timeMillis);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.activities;
+
+import android.app.Instrumentation;
+import android.content.ContentValues;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.ContactCounts;
+import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Directory;
+import android.provider.ContactsContract.Groups;
+import android.provider.ContactsContract.ProviderStatus;
+import android.provider.Settings;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.InstrumentationTestRunner;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.android.contacts.ContactsApplication;
+import com.android.contacts.common.ContactPhotoManager;
+import com.android.contacts.common.model.AccountTypeManager;
+import com.android.contacts.common.model.account.AccountType;
+import com.android.contacts.common.model.account.AccountWithDataSet;
+import com.android.contacts.common.model.account.BaseAccountType;
+import com.android.contacts.common.test.InjectedServices;
+import com.android.contacts.common.test.mocks.ContactsMockContext;
+import com.android.contacts.common.test.mocks.MockAccountTypeManager;
+import com.android.contacts.common.test.mocks.MockContactPhotoManager;
+import com.android.contacts.common.test.mocks.MockContentProvider;
+import com.android.contacts.common.test.mocks.MockContentProvider.Query;
+import com.android.contacts.common.test.mocks.MockSharedPreferences;
+import com.android.contacts.util.StartupTrace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long {@link PeopleActivity} takes to show its contact list, against an in-process
+ * fake provider.  The first launch in the test process is reported as the cold start, and the
+ * following ones as warm starts.
+ *
+ * Running the benchmark:
+ *
+ *   adb shell am instrument \
+ *     -e class com.android.contacts.activities.PeopleActivityStartupBenchmark \
+ *     -e contacts 2000 -e groups 20 -e iterations 5 \
+ *     -w com.android.contacts.tests/android.test.InstrumentationTestRunner
+ *
+ * The times, in milliseconds from the launch, are logged under {@link #TAG} and reported as
+ * instrumentation status.
+ */
+@LargeTest
+public class PeopleActivityStartupBenchmark
+        extends ActivityInstrumentationTestCase2<PeopleActivity> {
+    static {
+        // AsyncTask class needs to be initialized on the main thread.
+        AsyncTask.init();
+    }
+
+    private static final String TAG = "PeopleActivityStartupBenchmark";
+
+    private static final String ARG_CONTACTS = "contacts";
+    private static final String ARG_GROUPS = "groups";
+    private static final String ARG_ITERATIONS = "iterations";
+
+    private static final int DEFAULT_CONTACTS = 500;
+    private static final int DEFAULT_GROUPS = 10;
+    private static final int DEFAULT_ITERATIONS = 5;
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private static final String TEST_ACCOUNT = "testAccount";
+    private static final String TEST_ACCOUNT_TYPE = "testAccountType";
+
+    private static final String KEY_ON_CREATE = "onCreate";
+    private static final String KEY_LIST_LOADED = "firstLoaderResult";
+    private static final String KEY_LIST_DRAWN = "firstFrame";
+
+    private ContactsMockContext mContext;
+    private MockContentProvider mContactsProvider;
+    private MockContentProvider mSettingsProvider;
+
+    private int mContactCount;
+    private int mGroupCount;
+    private int mIterations;
+
+    public PeopleActivityStartupBenchmark() {
+        super(PeopleActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContactCount = getIntArgument(ARG_CONTACTS, DEFAULT_CONTACTS);
+        mGroupCount = getIntArgument(ARG_GROUPS, DEFAULT_GROUPS);
+        mIterations = getIntArgument(ARG_ITERATIONS, DEFAULT_ITERATIONS);
+
+        mContext = new ContactsMockContext(getInstrumentation().getTargetContext());
+        mContactsProvider = mContext.getContactsProvider();
+        mSettingsProvider = mContext.getSettingsProvider();
+        InjectedServices services = new InjectedServices();
+        services.setContentResolver(mContext.getContentResolver());
+        services.setSharedPreferences(new MockSharedPreferences());
+        services.setSystemService(ContactPhotoManager.CONTACT_PHOTO_SERVICE,
+                new MockContactPhotoManager());
+        ContactsApplication.injectServices(services);
+
+        AccountType accountType = new BaseAccountType() {
+            @Override
+            public boolean areContactsWritable() {
+                return true;
+            }
+        };
+        accountType.accountType = TEST_ACCOUNT_TYPE;
+        AccountWithDataSet account = new AccountWithDataSet(TEST_ACCOUNT, TEST_ACCOUNT_TYPE, null);
+        AccountTypeManager.setInstanceForTest(new MockAccountTypeManager(
+                new AccountType[] { accountType }, new AccountWithDataSet[] { account }));
+
+        expectSettingsQueries();
+        expectProviderStatusQuery();
+        expectGroupsQuery(mGroupCount);
+        expectContactListQuery(mContactCount);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        StartupTrace.setListener(null);
+        ContactsApplication.injectServices(null);
+        super.tearDown();
+    }
+
+    public void testStartup() throws Exception {
+        for (int i = 0; i < mIterations; i++) {
+            final Map<String, Long> times = launchAndWaitForList();
+            report(i == 0 ? "cold" : "warm" + i, times);
+        }
+    }
+
+    /**
+     * Launches the activity, waits until the contact list is drawn and finishes the activity.
+     *
+     * @return the times of the milestones and the durations of the phases, in milliseconds
+     */
+    private Map<String, Long> launchAndWaitForList() throws InterruptedException {
+        final Map<String, Long> times = new LinkedHashMap<String, Long>();
+        final CountDownLatch drawn = new CountDownLatch(1);
+        final long launchTime = SystemClock.uptimeMillis();
+        StartupTrace.setListener(new StartupTrace.Listener() {
+            @Override
+            public void onPhase(String phase, long startMillis, long endMillis) {
+                if (StartupTrace.PHASE_ON_CREATE.equals(phase)) {
+                    times.put(KEY_ON_CREATE, endMillis - launchTime);
+                }
+                if (!times.containsKey(phase)) {
+                    times.put(phase, endMillis - startMillis);
+                }
+            }
+
+            @Override
+            public void onMark(String mark, long timeMillis) {
+                if (StartupTrace.MARK_LIST_LOADED.equals(mark)
+                        && !times.containsKey(KEY_LIST_LOADED)) {
+                    times.put(KEY_LIST_LOADED, timeMillis - launchTime);
+                } else if (StartupTrace.MARK_LIST_DRAWN.equals(mark)
+                        && !times.containsKey(KEY_LIST_DRAWN)) {
+                    times.put(KEY_LIST_DRAWN, timeMillis - launchTime);
+                    drawn.countDown();
+                }
+            }
+        });
+
+        setActivityIntent(new Intent(Intent.ACTION_DEFAULT));
+        final PeopleActivity activity = getActivity();
+        try {
+            assertTrue("Contact list not drawn in " + TIMEOUT_SECONDS + "s",
+                    drawn.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            getInstrumentation().waitForIdleSync();
+        } finally {
+            StartupTrace.setListener(null);
+            activity.finish();
+            setActivity(null);
+            getInstrumentation().waitForIdleSync();
+        }
+        return times;
+    }
+
+    private void report(String run, Map<String, Long> times) {
+        final Bundle results = new Bundle();
+        final StringBuilder sb = new StringBuilder();
+        sb.append(run).append(" (").append(mContactCount).append(" contacts, ")
+                .append(mGroupCount).append(" groups):");
+        for (Map.Entry<String, Long> entry : times.entrySet()) {
+            results.putLong(run + "." + entry.getKey(), entry.getValue());
+            sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        Log.i(TAG, sb.toString());
+        getInstrumentation().sendStatus(0, results);
+    }
+
+    private int getIntArgument(String name, int defaultValue) {
+        final Instrumentation instrumentation = getInstrumentation();
+        if (!(instrumentation instanceof InstrumentationTestRunner)) {
+            return defaultValue;
+        }
+        final Bundle arguments = ((InstrumentationTestRunner) instrumentation).getArguments();
+        final String value = arguments == null ? null : arguments.getString(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Ignoring invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    private void expectSettingsQueries() {
+        mSettingsProvider
+                .expectQuery(Settings.System.CONTENT_URI)
+                .withProjection(Settings.System.VALUE)
+                .withSelection(Settings.System.NAME + "=?",
+                        ContactsContract.Preferences.DISPLAY_ORDER)
+                .returnRow(ContactsContract.Preferences.DISPLAY_ORDER_PRIMARY)
+                .anyNumberOfTimes();
+        mSettingsProvider
+                .expectQuery(Settings.System.CONTENT_URI)
+                .withProjection(Settings.System.VALUE)
+                .withSelection(Settings.System.NAME + "=?",
+                        ContactsContract.Preferences.SORT_ORDER)
+                .returnRow(ContactsContract.Preferences.SORT_ORDER_PRIMARY)
+                .anyNumberOfTimes();
+    }
+
+    private void expectProviderStatusQuery() {
+        mContactsProvider
+                .expectQuery(ProviderStatus.CONTENT_URI)
+                .withProjection(ProviderStatus.STATUS, ProviderStatus.DATA1)
+                .returnRow(ProviderStatus.STATUS_NORMAL, null)
+                .anyNumberOfTimes();
+    }
+
+    private void expectGroupsQuery(int count) {
+        final ArrayList<ContentValues> rows = new ArrayList<ContentValues>();
+        for (int i = 1; i <= count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(Groups._ID, i);
+            values.put(Groups.ACCOUNT_NAME, TEST_ACCOUNT);
+            values.put(Groups.ACCOUNT_TYPE, TEST_ACCOUNT_TYPE);
+            values.putNull(Groups.DATA_SET);
+            values.put(Groups.TITLE, "Group " + i);
+            values.put(Groups.VERSION, 1);
+            values.put(Groups.GROUP_VISIBLE, 1);
+            values.put(Groups.AUTO_ADD, 0);
+            values.put(Groups.FAVORITES, 0);
+            values.put(Groups.GROUP_IS_READ_ONLY, 0);
+            values.put(Groups.DELETED, 0);
+            values.put(Groups.SUMMARY_COUNT, 0);
+            rows.add(values);
+        }
+        // The group list, with the member counts of the groups tab
+        Query query = mContactsProvider
+                .expectQuery(Groups.CONTENT_SUMMARY_URI)
+                .withAnyProjection()
+                .withAnySelection()
+                .withAnySortOrder()
+                .anyNumberOfTimes();
+        for (ContentValues values : rows) {
+            query.returnRow(values);
+        }
+    }
+
+    private void expectContactListQuery(int count) {
+        Uri uri = Contacts.CONTENT_URI.buildUpon()
+                .appendQueryParameter(ContactCounts.ADDRESS_BOOK_INDEX_EXTRAS, "true")
+                .appendQueryParameter(ContactsContract.DIRECTORY_PARAM_KEY,
+                        String.valueOf(Directory.DEFAULT))
+                .build();
+
+        Query query = mContactsProvider
+                .expectQuery(uri)
+                .withAnyProjection()
+                .withAnySelection()
+                .withSortOrder(Contacts.SORT_KEY_PRIMARY)
+                .anyNumberOfTimes();
+        for (int i = 1; i <= count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(Contacts._ID, i);
+            values.put(Contacts.DISPLAY_NAME, "Contact " + i);
+            values.put(Contacts.SORT_KEY_PRIMARY, "contact " + i);
+            values.put(Contacts.LOOKUP_KEY, "lu" + i);
+            query.returnRow(values);
+        }
+    }
+}
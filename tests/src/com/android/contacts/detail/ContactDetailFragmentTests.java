@@ -138,4 +138,25 @@ public class ContactDetailFragmentTests extends AndroidTestCase {
         assertEquals(Intent.ACTION_SENDTO, entry.secondaryIntent.getAction());
         assertEquals("xmpp:" + TEST_ADDRESS + "?call", entry.secondaryIntent.getData().toString());
     }
+
+    public void testCopyIsNotAffectedByCollapse() throws Exception {
+        DetailViewEntry entry = new ContactDetailFragment.DetailViewEntry();
+        entry.mimetype = Email.CONTENT_ITEM_TYPE;
+        entry.data = TEST_ADDRESS;
+
+        DetailViewEntry other = new ContactDetailFragment.DetailViewEntry();
+        other.mimetype = Email.CONTENT_ITEM_TYPE;
+        other.data = TEST_ADDRESS;
+        other.isPrimary = true;
+
+        DetailViewEntry copy = entry.copy();
+        copy.collapseWith(other);
+
+        assertTrue(copy.isPrimary);
+        assertEquals(1, copy.collapseCount);
+        assertEquals(1, copy.ids.size());
+        assertFalse(entry.isPrimary);
+        assertEquals(0, entry.collapseCount);
+        assertTrue(entry.ids.isEmpty());
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.editor;
+
+import android.content.ContentValues;
+import android.os.Parcel;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.Data;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.android.contacts.common.model.RawContactDelta;
+import com.android.contacts.common.model.ValuesDelta;
+import com.android.contacts.common.model.dataitem.DataKind;
+
+import java.util.HashSet;
+
+/**
+ * Tests for {@link ViewIdGenerator}.
+ */
+@SmallTest
+public class ViewIdGeneratorTest extends AndroidTestCase {
+    private static final String TAG = "ViewIdGeneratorTest";
+
+    /** Number of fields of the editor used by {@link #testGetIdBenchmark}. */
+    private static final int BENCHMARK_FIELDS = 300;
+    private static final int BENCHMARK_ITERATIONS = 50;
+
+    private final DataKind mPhoneKind = new DataKind(Phone.CONTENT_ITEM_TYPE, 0, 10, true);
+    private final DataKind mEmailKind = new DataKind(Email.CONTENT_ITEM_TYPE, 0, 15, true);
+
+    public void testIdsAreStableAndUnique() {
+        final ViewIdGenerator vig = new ViewIdGenerator();
+        final RawContactDelta state = createState();
+        final ValuesDelta phone = addEntry(state, Phone.CONTENT_ITEM_TYPE);
+        final ValuesDelta email = addEntry(state, Email.CONTENT_ITEM_TYPE);
+
+        final int[] ids = getIds(vig, state, phone, email);
+        final HashSet<Integer> uniqueIds = new HashSet<Integer>();
+        for (int id : ids) {
+            assertTrue(id != 0);
+            assertTrue(uniqueIds.add(id));
+        }
+
+        // Asking again returns the same ids
+        final int[] idsAgain = getIds(vig, state, phone, email);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], idsAgain[i]);
+        }
+    }
+
+    public void testIdsSurviveParceling() {
+        final ViewIdGenerator vig = new ViewIdGenerator();
+        final RawContactDelta state = createState();
+        final ValuesDelta phone = addEntry(state, Phone.CONTENT_ITEM_TYPE);
+        final ValuesDelta email = addEntry(state, Email.CONTENT_ITEM_TYPE);
+        final int[] ids = getIds(vig, state, phone, email);
+
+        final Parcel parcel = Parcel.obtain();
+        try {
+            vig.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            final ViewIdGenerator restored = ViewIdGenerator.CREATOR.createFromParcel(parcel);
+
+            final int[] restoredIds = getIds(restored, state, phone, email);
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(ids[i], restoredIds[i]);
+            }
+
+            // New ids don't collide with the restored ones
+            final int newId = restored.getId(state, mPhoneKind,
+                    addEntry(state, Phone.CONTENT_ITEM_TYPE), ViewIdGenerator.NO_VIEW_INDEX);
+            for (int id : ids) {
+                assertTrue(newId != id);
+            }
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Measures assigning and then looking up the ids of an editor with
+     * {@link #BENCHMARK_FIELDS} fields, the way a rebind of the editor does.
+     */
+    @LargeTest
+    public void testGetIdBenchmark() {
+        final RawContactDelta state = createState();
+        final ValuesDelta[] entries = new ValuesDelta[BENCHMARK_FIELDS];
+        for (int i = 0; i < BENCHMARK_FIELDS; i++) {
+            entries[i] = addEntry(state, (i % 2 == 0) ? Phone.CONTENT_ITEM_TYPE
+                    : Email.CONTENT_ITEM_TYPE);
+        }
+
+        long allocateNanos = 0;
+        long lookupNanos = 0;
+        for (int iteration = 0; iteration < BENCHMARK_ITERATIONS; iteration++) {
+            final ViewIdGenerator vig = new ViewIdGenerator();
+            long start = System.nanoTime();
+            getAllIds(vig, state, entries);
+            allocateNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            getAllIds(vig, state, entries);
+            lookupNanos += System.nanoTime() - start;
+        }
+
+        Log.i(TAG, BENCHMARK_FIELDS + " fields: allocate "
+                + allocateNanos / BENCHMARK_ITERATIONS / 1000 + "us, look up "
+                + lookupNanos / BENCHMARK_ITERATIONS / 1000 + "us per editor bind");
+    }
+
+    private void getAllIds(ViewIdGenerator vig, RawContactDelta state, ValuesDelta[] entries) {
+        vig.getId(state, null, null, ViewIdGenerator.NO_VIEW_INDEX);
+        vig.getId(state, mPhoneKind, null, ViewIdGenerator.NO_VIEW_INDEX);
+        vig.getId(state, mEmailKind, null, ViewIdGenerator.NO_VIEW_INDEX);
+        for (int i = 0; i < entries.length; i++) {
+            final DataKind kind = (i % 2 == 0) ? mPhoneKind : mEmailKind;
+            vig.getId(state, kind, entries[i], ViewIdGenerator.NO_VIEW_INDEX);
+            vig.getId(state, kind, entries[i], 0);
+        }
+    }
+
+    private int[] getIds(ViewIdGenerator vig, RawContactDelta state, ValuesDelta phone,
+            ValuesDelta email) {
+        return new int[] {
+            vig.getId(state, null, null, ViewIdGenerator.NO_VIEW_INDEX),
+            vig.getId(state, mPhoneKind, null, ViewIdGenerator.NO_VIEW_INDEX),
+            vig.getId(state, mPhoneKind, phone, ViewIdGenerator.NO_VIEW_INDEX),
+            vig.getId(state, mPhoneKind, phone, 0),
+            vig.getId(state, mPhoneKind, phone, 1),
+            vig.getId(state, mEmailKind, null, ViewIdGenerator.NO_VIEW_INDEX),
+            vig.getId(state, mEmailKind, email, ViewIdGenerator.NO_VIEW_INDEX),
+            vig.getId(state, mEmailKind, email, 0),
+        };
+    }
+
+    private RawContactDelta createState() {
+        return new RawContactDelta(ValuesDelta.fromAfter(new ContentValues()));
+    }
+
+    private ValuesDelta addEntry(RawContactDelta state, String mimeType) {
+        final ContentValues values = new ContentValues();
+        values.put(Data.MIMETYPE, mimeType);
+        final ValuesDelta entry = ValuesDelta.fromAfter(values);
+        state.addEntry(entry);
+        return entry;
+    }
+}
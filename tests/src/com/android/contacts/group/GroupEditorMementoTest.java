@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.group;
+
+import android.content.ContentUris;
+import android.os.Parcel;
+import android.provider.ContactsContract.Groups;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.contacts.group.GroupEditorFragment.Member;
+import com.android.contacts.group.GroupEditorPresenter.GroupEditorMemento;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests for {@link GroupEditorMemento}.
+ */
+@SmallTest
+public class GroupEditorMementoTest extends TestCase {
+
+    public void testEncodeDecodeRawContactIds() {
+        final long[] rawContactIds = new long[] { 300, 1, 127, 128, 1L << 40, 1, 0 };
+        final long[] decoded = GroupEditorMemento.decodeRawContactIds(
+                GroupEditorMemento.encodeRawContactIds(rawContactIds));
+
+        final long[] expected = rawContactIds.clone();
+        Arrays.sort(expected);
+        assertTrue(Arrays.equals(expected, decoded));
+    }
+
+    public void testEncodeDecodeEmpty() {
+        final byte[] encoded = GroupEditorMemento.encodeRawContactIds(new long[0]);
+        assertEquals(1, encoded.length);
+        assertEquals(0, GroupEditorMemento.decodeRawContactIds(encoded).length);
+        assertEquals(0, GroupEditorMemento.decodeRawContactIds(null).length);
+    }
+
+    public void testEncodingIsCompactForCloseIds() {
+        final long[] rawContactIds = new long[5000];
+        for (int i = 0; i < rawContactIds.length; i++) {
+            rawContactIds[i] = 100000 + i * 3;
+        }
+        final byte[] encoded = GroupEditorMemento.encodeRawContactIds(rawContactIds);
+
+        // Count, first id, then one byte per delta
+        assertEquals(2 + 3 + (rawContactIds.length - 1), encoded.length);
+        assertTrue(Arrays.equals(rawContactIds,
+                GroupEditorMemento.decodeRawContactIds(encoded)));
+    }
+
+    public void testParcelKeepsGroupAndMembershipChanges() {
+        final GroupEditorMemento memento = new GroupEditorMemento();
+        memento.mGroupUri = ContentUris.withAppendedId(Groups.CONTENT_URI, 7);
+        memento.mGroupId = 7;
+        memento.mAction = "edit";
+        memento.mAccountName = "name";
+        memento.mAccountType = "type";
+        memento.mMembersToAdd.put(12L, new Member(12, "lookup12", 2, "Twelve", null));
+        memento.mMembersToAdd.put(11L, new Member(11, "lookup11", 1, "Eleven", null));
+        memento.mMembersToRemove.put(40L, new Member(40, "lookup40", 4, "Forty", null));
+        memento.mListToDisplay.addAll(memento.mMembersToAdd.values());
+
+        final Parcel parcel = Parcel.obtain();
+        try {
+            memento.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            final GroupEditorMemento restored = GroupEditorMemento.CREATOR.createFromParcel(parcel);
+
+            assertEquals(memento.mGroupUri, restored.mGroupUri);
+            assertEquals(7, restored.mGroupId);
+            assertEquals("edit", restored.mAction);
+            assertEquals("name", restored.mAccountName);
+            assertEquals("type", restored.mAccountType);
+            assertNull(restored.mDataSet);
+
+            // Members are loaded again after a restore, only their raw contact ids are kept
+            assertTrue(restored.mListToDisplay.isEmpty());
+            assertTrue(restored.hasMembershipChange());
+            assertTrue(Arrays.equals(new long[] { 11, 12 }, restored.getRawContactIdsToAdd()));
+            assertTrue(Arrays.equals(new long[] { 40 }, restored.getRawContactIdsToRemove()));
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.quickcontact;
+
+import android.content.Intent;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.android.contacts.common.Collapser;
+import com.android.contacts.common.MoreContactUtils;
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link ActionMultiMap}.
+ */
+@SmallTest
+public class ActionMultiMapTest extends AndroidTestCase {
+    private static final String TAG = "ActionMultiMapTest";
+
+    /** Number of data items in the contact used by {@link #testCollapseBenchmark}. */
+    private static final int BENCHMARK_DATA_ITEMS = 200;
+    private static final int BENCHMARK_ITERATIONS = 50;
+
+    public void testCollapseListRemovesDuplicatesInOrder() {
+        final List<Action> actions = Lists.<Action>newArrayList(
+                new TestAction(Email.CONTENT_ITEM_TYPE, "a@example.com"),
+                new TestAction(Email.CONTENT_ITEM_TYPE, "b@example.com"),
+                new TestAction(Email.CONTENT_ITEM_TYPE, "a@example.com"),
+                new TestAction(Email.CONTENT_ITEM_TYPE, "c@example.com"),
+                new TestAction(Email.CONTENT_ITEM_TYPE, "b@example.com"));
+
+        ActionMultiMap.collapseList(actions);
+
+        assertEquals(3, actions.size());
+        assertEquals("a@example.com", actions.get(0).getBody());
+        assertEquals("b@example.com", actions.get(1).getBody());
+        assertEquals("c@example.com", actions.get(2).getBody());
+        assertEquals(1, ((TestAction) actions.get(0)).mCollapsedCount);
+        assertEquals(1, ((TestAction) actions.get(1)).mCollapsedCount);
+    }
+
+    public void testCollapseListMatchesFormattedPhoneNumbers() {
+        final List<Action> actions = Lists.<Action>newArrayList(
+                new TestAction(Phone.CONTENT_ITEM_TYPE, "(650) 555-1234"),
+                new TestAction(Phone.CONTENT_ITEM_TYPE, "650-555-1234"),
+                new TestAction(Phone.CONTENT_ITEM_TYPE, "650-555-4321"));
+
+        ActionMultiMap.collapseList(actions);
+
+        assertEquals(2, actions.size());
+        assertEquals("(650) 555-1234", actions.get(0).getBody());
+        assertEquals("650-555-4321", actions.get(1).getBody());
+    }
+
+    public void testCollapseListMatchesVanityPhoneNumbers() {
+        final List<Action> actions = Lists.<Action>newArrayList(
+                new TestAction(Phone.CONTENT_ITEM_TYPE, "1-800-FLOWERS"),
+                new TestAction(Phone.CONTENT_ITEM_TYPE, "18003569377"));
+
+        ActionMultiMap.collapseList(actions);
+
+        assertEquals(1, actions.size());
+        assertEquals("1-800-FLOWERS", actions.get(0).getBody());
+    }
+
+    public void testGetCollapseKey() {
+        assertFalse(ActionMultiMap.getCollapseKey(
+                        new TestAction(Email.CONTENT_ITEM_TYPE, "a@example.com")).equals(
+                ActionMultiMap.getCollapseKey(
+                        new TestAction(Phone.CONTENT_ITEM_TYPE, "a@example.com"))));
+    }
+
+    public void testPhoneCollapseKeyMatchesShouldCollapse() {
+        final String[] numbers = new String[] {
+            "+1 650 555 1234", "(650) 555-1234", "6505551234", "6505551234,99", "6505551234;99",
+            "1234,5678", "12345678", "1234", "1-800-FLOWERS", "1800flowers", "18003569377",
+            "*86", "#86", "+44 20 7946 0018", "020 7946 0018", "1-800-356-9377",
+        };
+        for (String lhs : numbers) {
+            for (String rhs : numbers) {
+                if (MoreContactUtils.shouldCollapse(
+                        Phone.CONTENT_ITEM_TYPE, lhs, Phone.CONTENT_ITEM_TYPE, rhs)) {
+                    assertEquals(lhs + " vs " + rhs,
+                            ActionMultiMap.getCollapseKey(
+                                    new TestAction(Phone.CONTENT_ITEM_TYPE, lhs)),
+                            ActionMultiMap.getCollapseKey(
+                                    new TestAction(Phone.CONTENT_ITEM_TYPE, rhs)));
+                }
+            }
+        }
+    }
+
+    public void testCollapseListCollapsesLongLists() {
+        // Collapser leaves lists of more than 20 items alone, but these are still collapsed
+        final List<Action> actions = new ArrayList<Action>();
+        for (int i = 1000; i < 1025; i++) {
+            actions.add(new TestAction(Phone.CONTENT_ITEM_TYPE, "(650) 555-" + i));
+            actions.add(new TestAction(Phone.CONTENT_ITEM_TYPE, "650555" + i));
+        }
+
+        ActionMultiMap.collapseList(actions);
+
+        assertEquals(25, actions.size());
+        assertEquals("(650) 555-1000", actions.get(0).getBody());
+    }
+
+    public void testCollapseMatchesCollapser() {
+        // Collapser skips long lists, so compare on a list it still collapses
+        final List<Action> expected = createContactActions(16);
+        final List<Action> actual = new ArrayList<Action>(expected);
+
+        Collapser.collapseList(expected);
+        ActionMultiMap.collapseList(actual);
+
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Compares collapsing the actions of a heavily merged contact with
+     * {@link Collapser#collapseList}. Results are logged rather than asserted.
+     */
+    @LargeTest
+    public void testCollapseBenchmark() {
+        long collapserNanos = 0;
+        long multiMapNanos = 0;
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            final List<Action> pairwise = createContactActions(BENCHMARK_DATA_ITEMS);
+            long start = System.nanoTime();
+            Collapser.collapseList(pairwise);
+            collapserNanos += System.nanoTime() - start;
+
+            final List<Action> hashed = createContactActions(BENCHMARK_DATA_ITEMS);
+            start = System.nanoTime();
+            ActionMultiMap.collapseList(hashed);
+            multiMapNanos += System.nanoTime() - start;
+        }
+        Log.i(TAG, "Collapsing " + BENCHMARK_DATA_ITEMS + " actions: Collapser "
+                + (collapserNanos / BENCHMARK_ITERATIONS / 1000) + "us, ActionMultiMap "
+                + (multiMapNanos / BENCHMARK_ITERATIONS / 1000) + "us");
+    }
+
+    /**
+     * Creates the phone actions of a contact merged from several accounts: every number is
+     * present twice, once formatted and once as plain digits.
+     */
+    private static List<Action> createContactActions(int count) {
+        final ArrayList<Action> actions = new ArrayList<Action>(count);
+        for (int i = 0; i < count; i++) {
+            final int number = 5550000 + (i / 2);
+            final String body = (i % 2 == 0)
+                    ? "650-" + (number / 10000) + "-" + (number % 10000)
+                    : "650" + number;
+            actions.add(new TestAction(Phone.CONTENT_ITEM_TYPE, body));
+        }
+        return actions;
+    }
+
+    private static class TestAction implements Action {
+        private final String mMimeType;
+        private final String mBody;
+        private int mCollapsedCount;
+
+        public TestAction(String mimeType, String body) {
+            mMimeType = mimeType;
+            mBody = body;
+        }
+
+        @Override
+        public CharSequence getBody() {
+            return mBody;
+        }
+
+        @Override
+        public CharSequence getSubtitle() {
+            return null;
+        }
+
+        @Override
+        public String getMimeType() {
+            return mMimeType;
+        }
+
+        @Override
+        public Drawable getAlternateIcon() {
+            return null;
+        }
+
+        @Override
+        public String getAlternateIconDescription() {
+            return null;
+        }
+
+        @Override
+        public Intent getIntent() {
+            return null;
+        }
+
+        @Override
+        public Intent getAlternateIntent() {
+            return null;
+        }
+
+        @Override
+        public Boolean isPrimary() {
+            return false;
+        }
+
+        @Override
+        public Uri getDataUri() {
+            return null;
+        }
+
+        @Override
+        public long getDataId() {
+            return -1;
+        }
+
+        @Override
+        public int getPresence() {
+            return -1;
+        }
+
+        @Override
+        public void collapseWith(Action other) {
+            mCollapsedCount++;
+        }
+
+        @Override
+        public boolean shouldCollapseWith(Action other) {
+            return MoreContactUtils.shouldCollapse(
+                    mMimeType, mBody, other.getMimeType(), other.getBody());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * Tests for {@link CollationKeyCache}.
+ */
+@SmallTest
+public class CollationKeyCacheTest extends TestCase {
+    private static final String[] NAMES = new String[] {
+        "Zoe", "zoe", "\u00c9mile", "Emile", "emma", "\u00c4rger", "Ansel", "", "10", "9",
+        "\u00d8yvind",
+    };
+
+    private Locale mDefaultLocale;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultLocale = Locale.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mDefaultLocale);
+        super.tearDown();
+    }
+
+    public void testKeysSortLikeTheCollator() {
+        final CollationKeyCache cache = new CollationKeyCache();
+        final Collator collator = PhonebookCollatorFactory.getCollator();
+        for (String lhs : NAMES) {
+            for (String rhs : NAMES) {
+                assertEquals(lhs + " vs " + rhs,
+                        Integer.signum(collator.compare(lhs, rhs)),
+                        Integer.signum(CollationKeyCache.compareKeys(
+                                cache.getKey(lhs), cache.getKey(rhs))));
+            }
+        }
+    }
+
+    public void testNullSortsFirst() {
+        final CollationKeyCache cache = new CollationKeyCache();
+        assertEquals(0, CollationKeyCache.compareKeys(cache.getKey(null), cache.getKey(null)));
+        assertTrue(CollationKeyCache.compareKeys(cache.getKey(null), cache.getKey("a")) < 0);
+        assertTrue(CollationKeyCache.compareKeys(cache.getKey("a"), cache.getKey(null)) > 0);
+    }
+
+    public void testKeysAreCached() {
+        final CollationKeyCache cache = new CollationKeyCache();
+        assertSame(cache.getKey("Ansel"), cache.getKey("Ansel"));
+    }
+
+    public void testLocaleChangeDropsKeys() {
+        final CollationKeyCache cache = new CollationKeyCache();
+        Locale.setDefault(Locale.US);
+        final byte[] key = cache.getKey("Ansel");
+
+        cache.onLocaleChanged(Locale.US);
+        assertSame(key, cache.getKey("Ansel"));
+
+        cache.onLocaleChanged(Locale.GERMANY);
+        Locale.setDefault(Locale.GERMANY);
+        assertNotSame(key, cache.getKey("Ansel"));
+    }
+
+    public void testDefaultLocaleChangeDropsKeys() {
+        final CollationKeyCache cache = new CollationKeyCache();
+        Locale.setDefault(Locale.US);
+        final byte[] key = cache.getKey("Ansel");
+
+        Locale.setDefault(Locale.GERMANY);
+        assertNotSame(key, cache.getKey("Ansel"));
+    }
+}
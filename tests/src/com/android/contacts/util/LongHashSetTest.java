@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Tests for {@link LongHashSet}.
+ */
+@SmallTest
+public class LongHashSetTest extends TestCase {
+
+    public void testAddContainsRemove() {
+        final LongHashSet set = new LongHashSet();
+        assertTrue(set.isEmpty());
+
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+        assertTrue(set.add(0));
+        assertTrue(set.add(-7));
+        assertEquals(3, set.size());
+
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(-7));
+        assertFalse(set.contains(6));
+
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertFalse(set.contains(0));
+        assertTrue(set.remove(5));
+        assertEquals(1, set.size());
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(-7));
+    }
+
+    public void testToArray() {
+        final LongHashSet set = new LongHashSet();
+        set.add(3);
+        set.add(0);
+        set.add(1000);
+        final long[] values = set.toArray();
+        Arrays.sort(values);
+        assertTrue(Arrays.equals(new long[] {0, 3, 1000}, values));
+    }
+
+    /**
+     * Checks the set against {@link HashSet} with enough colliding additions and removals to
+     * exercise growing and the shifting done on removal.
+     */
+    public void testMatchesHashSet() {
+        final Random random = new Random(42);
+        final LongHashSet set = new LongHashSet(4);
+        final HashSet<Long> expected = new HashSet<Long>();
+        for (int i = 0; i < 5000; i++) {
+            final long value = random.nextInt(300);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (long value = 0; value < 300; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Tests for {@link StartupScheduler}.  Background tasks run on the main thread through a direct
+ * executor, so that the order of all tasks is deterministic.
+ */
+@SmallTest
+public class StartupSchedulerTest extends InstrumentationTestCase {
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private StartupScheduler mScheduler;
+    private final List<String> mRunOrder = new ArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mScheduler = new StartupScheduler(DIRECT_EXECUTOR);
+    }
+
+    public void testDependenciesRunFirst() {
+        schedule("b", StartupScheduler.PRIORITY_FIRST_FRAME, "a");
+        schedule("c", StartupScheduler.PRIORITY_FIRST_FRAME, "a", "b");
+        schedule("a", StartupScheduler.PRIORITY_FIRST_FRAME);
+        waitForTasks();
+
+        assertEquals(Lists.newArrayList("a", "b", "c"), getRunOrder());
+        assertTrue(isDone("c"));
+    }
+
+    public void testTaskWaitsForMissingDependency() {
+        schedule("b", StartupScheduler.PRIORITY_FIRST_FRAME, "a");
+        waitForTasks();
+
+        assertTrue(getRunOrder().isEmpty());
+        assertFalse(isDone("b"));
+    }
+
+    public void testIdleTaskWaitsForFirstFrame() {
+        schedule("idle", StartupScheduler.PRIORITY_IDLE);
+        waitForTasks();
+        assertTrue(getRunOrder().isEmpty());
+
+        drawFirstFrame();
+        waitForTasks();
+        assertEquals(Lists.newArrayList("idle"), getRunOrder());
+    }
+
+    public void testIdleTaskWaitsForFirstFrameTasks() {
+        drawFirstFrame();
+        schedule("first", StartupScheduler.PRIORITY_FIRST_FRAME, "missing");
+        schedule("idle", StartupScheduler.PRIORITY_IDLE);
+        waitForTasks();
+        assertTrue(getRunOrder().isEmpty());
+
+        schedule("missing", StartupScheduler.PRIORITY_FIRST_FRAME);
+        waitForTasks();
+        assertEquals(Lists.newArrayList("missing", "first", "idle"), getRunOrder());
+    }
+
+    public void testIdleDependencyOfFirstFrameTaskIsPromoted() {
+        schedule("first", StartupScheduler.PRIORITY_FIRST_FRAME, "idle-dependency");
+        schedule("idle-dependency", StartupScheduler.PRIORITY_IDLE);
+        schedule("idle", StartupScheduler.PRIORITY_IDLE);
+        waitForTasks();
+
+        // The first frame hasn't been drawn, so only the promoted task may run
+        assertEquals(Lists.newArrayList("idle-dependency", "first"), getRunOrder());
+    }
+
+    public void testMainThreadTasksRunInOrder() {
+        drawFirstFrame();
+        scheduleOnMainThread("a", StartupScheduler.PRIORITY_FIRST_FRAME);
+        scheduleOnMainThread("b", StartupScheduler.PRIORITY_IDLE, "a");
+        waitForTasks();
+
+        assertEquals(Lists.newArrayList("a", "b"), getRunOrder());
+    }
+
+    private void schedule(String name, int priority, String... dependencies) {
+        mScheduler.schedule(new StartupScheduler.Task(name, priority, false,
+                newRecorder(name), dependencies));
+    }
+
+    private void scheduleOnMainThread(String name, int priority, String... dependencies) {
+        mScheduler.schedule(new StartupScheduler.Task(name, priority, true,
+                newRecorder(name), dependencies));
+    }
+
+    private Runnable newRecorder(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRunOrder) {
+                    mRunOrder.add(name);
+                }
+            }
+        };
+    }
+
+    private List<String> getRunOrder() {
+        synchronized (mRunOrder) {
+            return new ArrayList<String>(mRunOrder);
+        }
+    }
+
+    private void drawFirstFrame() {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.onFirstFrameDrawn();
+            }
+        });
+    }
+
+    private boolean isDone(final String name) {
+        final boolean[] done = new boolean[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                done[0] = mScheduler.isDone(name);
+            }
+        });
+        return done[0];
+    }
+
+    /**
+     * Waits until the main thread has run the tasks and their completions.  Idle tasks start
+     * from an idle handler that may run after the one of {@link #waitForIdleSync}, so this
+     * waits a few times.
+     */
+    private void waitForTasks() {
+        for (int i = 0; i < 3; i++) {
+            getInstrumentation().waitForIdleSync();
+        }
+    }
+}